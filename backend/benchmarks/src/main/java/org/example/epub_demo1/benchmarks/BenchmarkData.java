@@ -0,0 +1,184 @@
+package org.example.epub_demo1.benchmarks;
+
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.entity.enums.BookCategory;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 基准测试数据：固定随机种子生成，各次运行结果可比。
+ */
+final class BenchmarkData {
+
+    private static final String[] SURNAMES = {"刘", "余", "王", "张", "李", "陈", "杨", "赵", "黄", "周"};
+    private static final String[] WORDS = {"三体", "活着", "黑暗", "森林", "平凡", "世界", "红楼", "长夜",
+            "星空", "故乡", "时间", "简史", "Java", "Spring", "Redis", "算法", "设计", "模式"};
+    private static final String PARAGRAPH = "这是用于基准测试的正文段落，包含中文与 English words，"
+            + "长度接近真实小说的一个自然段。他站在窗前，看着远处的灯火一盏一盏熄灭。";
+
+    private static final Map<Integer, byte[]> COVERS = new ConcurrentHashMap<>();
+
+    private BenchmarkData() {
+    }
+
+    static List<Book> library(int size) {
+        Random random = new Random(42);
+        BookCategory[] categories = BookCategory.values();
+        List<Book> books = new ArrayList<>(size);
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < size; i++) {
+            Book book = new Book();
+            book.setId((long) i + 1);
+            book.setTitle(WORDS[random.nextInt(WORDS.length)] + WORDS[random.nextInt(WORDS.length)] + " " + i);
+            book.setAuthor(SURNAMES[random.nextInt(SURNAMES.length)] + WORDS[random.nextInt(WORDS.length)]);
+            book.setDescription(PARAGRAPH.repeat(1 + random.nextInt(3)));
+            book.setCategory(categories[random.nextInt(categories.length)]);
+            String hash = String.format("%064x", (long) i * 0x9E3779B97F4A7C15L);
+            book.setCoverImagePath(hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ".jpg");
+            book.setCoverColor(String.format("#%06x", random.nextInt(0x1000000)));
+            book.setEpubFileName(hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ".epub");
+            book.setUploadUserId(1L);
+            book.setUploadTime(base.plusMinutes(i));
+            books.add(book);
+        }
+        return books;
+    }
+
+    /**
+     * 生成 EPUB3 样本：chapters 个章节，每章 paragraphs 段，封面为 coverWidth 宽的 JPEG。
+     */
+    static Path sampleEpub(Path dir, String name, int chapters, int paragraphs, int coverWidth) throws IOException {
+        Path file = dir.resolve(name + ".epub");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            writeEpub(out, name, chapters, paragraphs, coverWidth);
+        }
+        return file;
+    }
+
+    // 内存中的 EPUB，name 不同则内容（哈希）不同
+    static byte[] sampleEpubBytes(String name, int chapters, int paragraphs, int coverWidth) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeEpub(out, name, chapters, paragraphs, coverWidth);
+        return out.toByteArray();
+    }
+
+    private static void writeEpub(OutputStream out, String name, int chapters, int paragraphs, int coverWidth)
+            throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            // mimetype 必须是第一个且不压缩
+            byte[] mimetype = "application/epub+zip".getBytes(StandardCharsets.US_ASCII);
+            ZipEntry entry = new ZipEntry("mimetype");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(mimetype.length);
+            CRC32 crc = new CRC32();
+            crc.update(mimetype);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(mimetype);
+            zip.closeEntry();
+
+            put(zip, "META-INF/container.xml", """
+                    <?xml version="1.0" encoding="UTF-8"?>
+                    <container version="1.0" xmlns="urn:oasis:names:tc:opendocument:xmlns:container">
+                      <rootfiles>
+                        <rootfile full-path="OEBPS/content.opf" media-type="application/oebps-package+xml"/>
+                      </rootfiles>
+                    </container>
+                    """);
+
+            StringBuilder manifest = new StringBuilder();
+            StringBuilder spine = new StringBuilder();
+            for (int i = 1; i <= chapters; i++) {
+                manifest.append("<item id=\"c").append(i).append("\" href=\"text/c").append(i)
+                        .append(".xhtml\" media-type=\"application/xhtml+xml\"/>\n");
+                spine.append("<itemref idref=\"c").append(i).append("\"/>\n");
+                StringBuilder body = new StringBuilder();
+                for (int p = 0; p < paragraphs; p++) {
+                    body.append("<p>").append(PARAGRAPH).append("</p>\n");
+                }
+                put(zip, "OEBPS/text/c" + i + ".xhtml", """
+                        <?xml version="1.0" encoding="UTF-8"?>
+                        <html xmlns="http://www.w3.org/1999/xhtml"><head><title>第%d章</title></head>
+                        <body><h1>第%d章</h1>
+                        %s</body></html>
+                        """.formatted(i, i, body));
+            }
+            put(zip, "OEBPS/content.opf", """
+                    <?xml version="1.0" encoding="UTF-8"?>
+                    <package xmlns="http://www.idpf.org/2007/opf" version="3.0" unique-identifier="id">
+                      <metadata xmlns:dc="http://purl.org/dc/elements/1.1/">
+                        <dc:identifier id="id">%s</dc:identifier>
+                        <dc:title>基准测试样本 %s</dc:title>
+                        <dc:creator>基准作者</dc:creator>
+                        <dc:description>%s</dc:description>
+                      </metadata>
+                      <manifest>
+                        <item id="cover" href="images/cover.jpg" media-type="image/jpeg" properties="cover-image"/>
+                        %s
+                      </manifest>
+                      <spine>
+                        %s
+                      </spine>
+                    </package>
+                    """.formatted(name, name, PARAGRAPH, manifest, spine));
+
+            zip.putNextEntry(new ZipEntry("OEBPS/images/cover.jpg"));
+            zip.write(cover(coverWidth));
+            zip.closeEntry();
+        }
+    }
+
+    private static void put(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    // 带噪点的渐变图，JPEG 体积接近真实封面；同一宽度只生成一次
+    private static byte[] cover(int width) throws IOException {
+        byte[] cached = COVERS.get(width);
+        if (cached == null) {
+            cached = renderCover(width);
+            COVERS.put(width, cached);
+        }
+        return cached;
+    }
+
+    private static byte[] renderCover(int width) throws IOException {
+        int height = width * 3 / 2;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(width);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + random.nextInt(32)) & 0xFF;
+                int g = (y * 255 / height + random.nextInt(32)) & 0xFF;
+                image.setRGB(x, y, r << 16 | g << 8 | 0x80);
+            }
+        }
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.drawString("BENCHMARK", width / 4, height / 2);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", (OutputStream) out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.epub_demo1.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.entity.BookCard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /getall 返回整表 List&lt;Book&gt;，/books/page 返回 List&lt;BookCard&gt;；
+ * 两者的 JSON 序列化开销随书库规模的变化。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CatalogJsonBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int books;
+
+    private ObjectWriter writer;
+    private List<Book> catalog;
+    private List<BookCard> cards;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // 与 Spring Boot 默认的 Jackson 配置一致（注册 JavaTimeModule）
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        writer = mapper.writer();
+        catalog = BenchmarkData.library(books);
+        cards = new ArrayList<>(catalog.size());
+        for (Book book : catalog) {
+            BookCard card = new BookCard();
+            card.setId(book.getId());
+            card.setTitle(book.getTitle());
+            card.setAuthor(book.getAuthor());
+            card.setCategory(book.getCategory());
+            card.setCoverImagePath(book.getCoverImagePath());
+            card.setCoverColor(book.getCoverColor());
+            card.setUploadTime(book.getUploadTime());
+            cards.add(card);
+        }
+    }
+
+    @Benchmark
+    public byte[] getAll() throws JsonProcessingException {
+        return writer.writeValueAsBytes(catalog);
+    }
+
+    @Benchmark
+    public byte[] cards() throws JsonProcessingException {
+        return writer.writeValueAsBytes(cards);
+    }
+}
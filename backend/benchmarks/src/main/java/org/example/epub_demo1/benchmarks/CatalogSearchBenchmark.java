@@ -0,0 +1,94 @@
+package org.example.epub_demo1.benchmarks;
+
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.example.epub_demo1.search.CatalogSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 书名检索（CatalogSearchIndex）的内存索引查询。
+ * 查询缓存只有 2000 条，这里轮换 4096 个不同的查询词，测的是未命中缓存的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogSearchBenchmark {
+
+    private static final int QUERIES = 4096;
+
+    @Param({"10000", "100000"})
+    private int books;
+
+    private CatalogSearchIndex index;
+    private String[] titles;
+    private String[] prefixes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Book> library = BenchmarkData.library(books);
+        // 只需要加载索引时的整表查询，其他方法不会被调用
+        BookMapper mapper = (BookMapper) Proxy.newProxyInstance(
+                BookMapper.class.getClassLoader(),
+                new Class<?>[]{BookMapper.class},
+                (proxy, method, args) -> {
+                    if ("selectSearchFields".equals(method.getName())) {
+                        return library;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        index = new CatalogSearchIndex();
+        ReflectionTestUtils.setField(index, "bookMapper", mapper);
+
+        // 书名子串 + 序号，保证互不相同
+        titles = new String[QUERIES];
+        prefixes = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String title = library.get(i % library.size()).getTitle();
+            titles[i] = title.substring(0, Math.min(2, title.length())) + " " + i;
+            prefixes[i] = i % 2 == 0 ? title.substring(0, 1) + i : "s" + Integer.toString(i, 36);
+        }
+        // 触发加载
+        index.search("", "", "");
+    }
+
+    private int nextQuery() {
+        next = (next + 1) & (QUERIES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public List<Long> search() {
+        return index.search(titles[nextQuery()], null, null);
+    }
+
+    @Benchmark
+    public List<CatalogSearchIndex.Suggestion> suggest() {
+        return index.suggest(prefixes[nextQuery()], 10);
+    }
+
+    // 命中查询缓存的情况作为对照
+    @Benchmark
+    public List<Long> searchCached() {
+        return index.search(titles[0], null, null);
+    }
+}
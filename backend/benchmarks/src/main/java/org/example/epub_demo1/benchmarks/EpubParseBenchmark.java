@@ -0,0 +1,92 @@
+package org.example.epub_demo1.benchmarks;
+
+import org.example.epub_demo1.epub.EpubArchive;
+import org.example.epub_demo1.epub.HtmlText;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * EPUB 入库的解析阶段（EpubIngestService 的 parse/index 所用的 EpubArchive 和 HtmlText）。
+ * small：10 章、400px 封面；large：300 章、1600px 封面。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EpubParseBenchmark {
+
+    @Param({"small", "large"})
+    private String sample;
+
+    private Path dir;
+    private Path epub;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("epub-bench");
+        epub = "small".equals(sample)
+                ? BenchmarkData.sampleEpub(dir, sample, 10, 20, 400)
+                : BenchmarkData.sampleEpub(dir, sample, 300, 40, 1600);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    // 元数据 + 读取封面（入库请求中同步完成的部分）
+    @Benchmark
+    public long metadataAndCover(Blackhole blackhole) throws IOException {
+        try (EpubArchive archive = EpubArchive.open(epub)) {
+            blackhole.consume(archive.getTitle());
+            blackhole.consume(archive.getCreator());
+            blackhole.consume(archive.getDescription());
+            EpubArchive.ManifestItem cover = archive.getCoverItem();
+            long bytes = 0;
+            try (InputStream in = archive.openEntry(cover.getHref())) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    bytes += read;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    // 全文索引前的正文提取（按阅读顺序逐章）
+    @Benchmark
+    public long extractText() throws IOException {
+        long chars = 0;
+        try (EpubArchive archive = EpubArchive.open(epub)) {
+            for (EpubArchive.ManifestItem item : archive.getSpine()) {
+                chars += HtmlText.extract(archive.readEntry(item.getHref())).length();
+            }
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,225 @@
+package org.example.epub_demo1.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对运行中的服务做闭环压测（每个并发用户收到响应后立即发下一个请求），结果写成 JSON。
+ * 用于比较平台线程和虚拟线程（spring.threads.virtual.enabled）两种模式：
+ * 同一份数据分别以两种配置启动服务，用相同参数各跑一次，对比两个结果文件。
+ * <pre>
+ * java -cp target/benchmarks.jar org.example.epub_demo1.benchmarks.HttpLoadTest \
+ *     --url http://localhost:8080 --endpoint getall --concurrency 1000 --duration 60 \
+ *     --label virtual --out getall-virtual.json
+ * </pre>
+ * endpoint=upload 时预先生成 --files 个内容不同的小 EPUB 轮流上传，用完后重复的文件会走去重快速路径
+ * （结果中 uniqueFiles 与 requests 可据此判断）。
+ * <p>
+ * 注意：两种模式的对比结果尚未测得（需要带 MySQL 和 Redis 的完整环境），虚拟线程模式目前没有压测数据支撑，
+ * 默认仍为平台线程。
+ */
+public class HttpLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        String url = options.getOrDefault("url", "http://localhost:8080");
+        String endpoint = options.getOrDefault("endpoint", "getall");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "200"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "60"));
+        int files = Integer.parseInt(options.getOrDefault("files", "2000"));
+        String label = options.getOrDefault("label", endpoint);
+        Path out = Paths.get(options.getOrDefault("out", "load-" + label + "-" + endpoint + ".json"));
+
+        RequestSource source = "upload".equals(endpoint)
+                ? new UploadSource(URI.create(url + "/upload"), files)
+                : () -> HttpRequest.newBuilder(URI.create(url + "/getall")).GET().build();
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        System.out.printf("预热 %d 秒 ...%n", warmupSeconds);
+        run(client, source, concurrency, warmupSeconds);
+        System.out.printf("压测 %s %s，并发 %d，%d 秒 ...%n", label, endpoint, concurrency, durationSeconds);
+        Result result = run(client, source, concurrency, durationSeconds);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("label", label);
+        report.put("endpoint", endpoint);
+        report.put("concurrency", concurrency);
+        report.put("durationSeconds", durationSeconds);
+        report.putAll(result.toMap(durationSeconds));
+        if (source instanceof UploadSource upload) {
+            report.put("uniqueFiles", upload.size());
+        }
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        mapper.writeValue(out.toFile(), report);
+        System.out.println(mapper.writeValueAsString(report));
+        System.out.println("结果已写入 " + out.toAbsolutePath());
+    }
+
+    private static Result run(HttpClient client, RequestSource source, int concurrency, int seconds) {
+        Result result = new Result();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        List<CompletableFuture<Void>> users = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            next(client, source, deadline, result, new long[1024], done);
+            users.add(done);
+        }
+        CompletableFuture.allOf(users.toArray(new CompletableFuture[0])).join();
+        return result;
+    }
+
+    // 每个并发用户串行发请求，延迟先记在自己的数组里，结束时再合并
+    private static void next(HttpClient client, RequestSource source, long deadline, Result result,
+                             long[] latencies, CompletableFuture<Void> done) {
+        int count = (int) latencies[0];
+        if (System.nanoTime() >= deadline) {
+            result.merge(latencies);
+            done.complete(null);
+            return;
+        }
+        long start = System.nanoTime();
+        client.sendAsync(source.next(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    long elapsed = System.nanoTime() - start;
+                    long[] buffer = latencies;
+                    if (error != null) {
+                        result.errors.increment();
+                    } else {
+                        result.status.computeIfAbsent(response.statusCode(), code -> new LongAdder()).increment();
+                        if (count + 2 > buffer.length) {
+                            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                        }
+                        buffer[count + 1] = elapsed;
+                        buffer[0] = count + 1;
+                    }
+                    next(client, source, deadline, result, buffer, done);
+                });
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("参数格式：--name value，无法识别 " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    @FunctionalInterface
+    private interface RequestSource {
+        HttpRequest next();
+    }
+
+    private static class UploadSource implements RequestSource {
+
+        private final URI uri;
+        private final String boundary = "----load-" + UUID.randomUUID();
+        private final List<byte[]> bodies = new ArrayList<>();
+        private final AtomicInteger next = new AtomicInteger();
+
+        UploadSource(URI uri, int files) throws IOException {
+            this.uri = uri;
+            // 每次运行的文件名前缀不同，避免与上一次压测上传的内容重复
+            String run = Long.toString(System.currentTimeMillis(), 36);
+            for (int i = 0; i < files; i++) {
+                String name = "load-" + run + "-" + i;
+                bodies.add(multipart(name, BenchmarkData.sampleEpubBytes(name, 10, 20, 400)));
+            }
+        }
+
+        int size() {
+            return bodies.size();
+        }
+
+        @Override
+        public HttpRequest next() {
+            byte[] body = bodies.get(Math.floorMod(next.getAndIncrement(), bodies.size()));
+            return HttpRequest.newBuilder(uri)
+                    .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+        }
+
+        private byte[] multipart(String name, byte[] epub) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(epub.length + 256);
+            out.write(("--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"file\"; filename=\"" + name + ".epub\"\r\n"
+                    + "Content-Type: application/epub+zip\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            out.write(epub);
+            out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+            return out.toByteArray();
+        }
+    }
+
+    private static class Result {
+
+        private final Map<Integer, LongAdder> status = new ConcurrentHashMap<>();
+        private final LongAdder errors = new LongAdder();
+        private final List<long[]> parts = new ArrayList<>();
+
+        synchronized void merge(long[] latencies) {
+            parts.add(Arrays.copyOfRange(latencies, 1, (int) latencies[0] + 1));
+        }
+
+        synchronized Map<String, Object> toMap(int seconds) {
+            long[] all = parts.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("requests", all.length);
+            map.put("errors", errors.sum());
+            map.put("throughputPerSecond", Math.round(all.length * 10.0 / seconds) / 10.0);
+            Map<String, Object> latency = new LinkedHashMap<>();
+            if (all.length > 0) {
+                latency.put("mean", millis(Arrays.stream(all).sum() / all.length));
+                latency.put("p50", millis(percentile(all, 50)));
+                latency.put("p90", millis(percentile(all, 90)));
+                latency.put("p99", millis(percentile(all, 99)));
+                latency.put("p999", millis(percentile(all, 99.9)));
+                latency.put("max", millis(all[all.length - 1]));
+            }
+            map.put("latencyMillis", latency);
+            Map<String, Long> codes = new TreeMap<>();
+            status.forEach((code, count) -> codes.put(String.valueOf(code), count.sum()));
+            map.put("status", codes);
+            return map;
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+
+        private static double millis(long nanos) {
+            return Math.round(nanos / 1000.0) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.epub_demo1.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.epub_demo1.cache.BookRedisSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis 值序列化：RedisConfig 当前使用的 BookRedisSerializer 与其他方案对比。
+ * 序列化后的字节数在 setUp 时打印，便于同时比较体积。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisSerializerBenchmark {
+
+    // book：单本书（book:<id>）；其余为书籍列表（books:all）
+    @Param({"book", "100", "1000"})
+    private String payload;
+
+    // binary：当前配置；json：改为二进制编码前的配置；typed-json / jdk：常见替代方案
+    @Param({"binary", "json", "typed-json", "jdk"})
+    private String serializer;
+
+    private RedisSerializer<Object> redisSerializer;
+    private Object value;
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        Jackson2JsonRedisSerializer<Object> json = new Jackson2JsonRedisSerializer<>(mapper, Object.class);
+        redisSerializer = switch (serializer) {
+            case "binary" -> new BookRedisSerializer(json);
+            case "json" -> json;
+            case "typed-json" -> {
+                GenericJackson2JsonRedisSerializer typed = new GenericJackson2JsonRedisSerializer();
+                typed.configure(objectMapper -> objectMapper.registerModule(new JavaTimeModule()));
+                yield typed;
+            }
+            case "jdk" -> new JdkSerializationRedisSerializer();
+            default -> throw new IllegalArgumentException(serializer);
+        };
+        value = "book".equals(payload)
+                ? BenchmarkData.library(1).get(0)
+                : new ArrayList<>(BenchmarkData.library(Integer.parseInt(payload)));
+        bytes = redisSerializer.serialize(value);
+        System.out.printf("%n[%s/%s] %d bytes%n", serializer, payload, bytes.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return redisSerializer.serialize(value);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return redisSerializer.deserialize(bytes);
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.epub_demo1.benchmarks;
+
+import org.example.epub_demo1.mapper.BookMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BookSqlBuilder 每次查询都会重新拼 SQL，这里测拼接本身的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlBuilderBenchmark {
+
+    // none：无条件；title：仅书名；all：书名 + 作者 + 分类
+    @Param({"none", "title", "all"})
+    private String filters;
+
+    private final BookMapper.BookSqlBuilder builder = new BookMapper.BookSqlBuilder();
+    private Map<String, Object> getAllParams;
+    private Map<String, Object> pageParams;
+
+    @Setup
+    public void setUp() {
+        getAllParams = new HashMap<>();
+        pageParams = new HashMap<>();
+        pageParams.put("limit", 24);
+        if (!"none".equals(filters)) {
+            getAllParams.put("title", "三体");
+            pageParams.put("afterTime", LocalDateTime.of(2024, 6, 1, 12, 0));
+            pageParams.put("afterId", 1000L);
+        }
+        if ("all".equals(filters)) {
+            getAllParams.put("author", "刘");
+            getAllParams.put("category", "FICTION");
+            pageParams.put("category", "FICTION");
+        }
+    }
+
+    @Benchmark
+    public String getAllSql() {
+        return builder.buildGetAllSql(getAllParams);
+    }
+
+    @Benchmark
+    public String pageSql() {
+        return builder.buildPageSql(pageParams);
+    }
+}
@@ -0,0 +1,322 @@
+package org.example.epub_demo1.cache;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.entity.enums.BookCategory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Book 和 List&lt;Book&gt; 的二进制编码。
+ *
+ * <pre>
+ * 头部:  MAGIC(1) VERSION(1) TYPE(1) FLAGS(1) [原始长度 varint，仅 LZ4 压缩时]
+ * 正文:  TYPE_BOOK -> 记录；TYPE_BOOK_LIST -> 数量 varint + 记录*
+ * 记录:  长度 varint + 字段位图 varint + 位图中为 1 的字段（按位序）
+ * </pre>
+ *
+ * 记录带长度，新版本追加的字段（更高的位）会被旧版本跳过；删除或改变已有字段的编码时必须提升 VERSION。
+ * 分类按枚举序号存储，新增分类只能追加在枚举末尾。
+ */
+public final class BookCodec {
+
+    // 不是合法 JSON 的首字节，用于与旧的 JSON 缓存值区分
+    public static final byte MAGIC = (byte) 0xB5;
+    public static final byte VERSION = 1;
+    public static final byte TYPE_BOOK = 1;
+    public static final byte TYPE_BOOK_LIST = 2;
+    private static final int FLAG_LZ4 = 1;
+
+    // 正文超过该大小才尝试压缩
+    private static final int COMPRESS_THRESHOLD = 2048;
+
+    private static final int F_ID = 1;
+    private static final int F_TITLE = 1 << 1;
+    private static final int F_AUTHOR = 1 << 2;
+    private static final int F_DESCRIPTION = 1 << 3;
+    private static final int F_CATEGORY = 1 << 4;
+    private static final int F_COVER = 1 << 5;
+    private static final int F_EPUB = 1 << 6;
+    private static final int F_UPLOAD_USER = 1 << 7;
+    private static final int F_UPLOAD_TIME = 1 << 8;
+    private static final int F_COVER_COLOR = 1 << 9;
+    private static final int F_WORD_COUNT = 1 << 10;
+    private static final int F_READING_MINUTES = 1 << 11;
+
+    private static final BookCategory[] CATEGORIES = BookCategory.values();
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private BookCodec() {
+    }
+
+    public static byte[] encode(Book book) {
+        Output body = new Output(256);
+        writeRecord(body, book);
+        return frame(TYPE_BOOK, body);
+    }
+
+    public static byte[] encodeList(List<Book> books) {
+        Output body = new Output(64 + books.size() * 160);
+        body.writeVarLong(books.size());
+        Output record = new Output(256);
+        for (Book book : books) {
+            record.reset();
+            writeFields(record, book);
+            body.writeVarLong(record.size());
+            body.write(record.buffer(), 0, record.size());
+        }
+        return frame(TYPE_BOOK_LIST, body);
+    }
+
+    public static boolean isEncoded(byte[] bytes) {
+        return bytes != null && bytes.length >= 4 && bytes[0] == MAGIC;
+    }
+
+    /**
+     * 解码为 Book 或 List&lt;Book&gt;（按头部类型）。
+     *
+     * @throws IllegalArgumentException 格式错误或版本不支持
+     */
+    public static Object decode(byte[] bytes) {
+        if (!isEncoded(bytes)) {
+            throw new IllegalArgumentException("不是 Book 编码数据");
+        }
+        if (bytes[1] > VERSION) {
+            throw new IllegalArgumentException("不支持的编码版本: " + bytes[1]);
+        }
+        byte type = bytes[2];
+        int flags = bytes[3];
+        Input in = new Input(bytes, 4, bytes.length);
+        if ((flags & FLAG_LZ4) != 0) {
+            int rawLength = (int) in.readVarLong();
+            byte[] raw = new byte[rawLength];
+            DECOMPRESSOR.decompress(bytes, in.position, raw, 0, rawLength);
+            in = new Input(raw, 0, rawLength);
+        }
+
+        if (type == TYPE_BOOK) {
+            return readRecord(in);
+        }
+        if (type == TYPE_BOOK_LIST) {
+            int count = (int) in.readVarLong();
+            List<Book> books = new ArrayList<>(Math.min(count, 4096));
+            for (int i = 0; i < count; i++) {
+                books.add(readRecord(in));
+            }
+            return books;
+        }
+        throw new IllegalArgumentException("未知的编码类型: " + type);
+    }
+
+    // ============= 编码 =============
+
+    private static byte[] frame(byte type, Output body) {
+        int flags = 0;
+        byte[] payload = body.buffer();
+        int payloadLength = body.size();
+        Output header = new Output(16);
+        if (body.size() > COMPRESS_THRESHOLD) {
+            byte[] compressed = new byte[COMPRESSOR.maxCompressedLength(body.size())];
+            int compressedLength = COMPRESSOR.compress(body.buffer(), 0, body.size(), compressed, 0, compressed.length);
+            // 压缩收益太小时保留原文，省去解压开销
+            if (compressedLength < body.size() * 9 / 10) {
+                flags |= FLAG_LZ4;
+                header.writeVarLong(body.size());
+                payload = compressed;
+                payloadLength = compressedLength;
+            }
+        }
+        byte[] out = new byte[4 + header.size() + payloadLength];
+        out[0] = MAGIC;
+        out[1] = VERSION;
+        out[2] = type;
+        out[3] = (byte) flags;
+        System.arraycopy(header.buffer(), 0, out, 4, header.size());
+        System.arraycopy(payload, 0, out, 4 + header.size(), payloadLength);
+        return out;
+    }
+
+    private static void writeRecord(Output out, Book book) {
+        Output record = new Output(256);
+        writeFields(record, book);
+        out.writeVarLong(record.size());
+        out.write(record.buffer(), 0, record.size());
+    }
+
+    private static void writeFields(Output out, Book book) {
+        int mask = 0;
+        if (book.getId() != null) mask |= F_ID;
+        if (book.getTitle() != null) mask |= F_TITLE;
+        if (book.getAuthor() != null) mask |= F_AUTHOR;
+        if (book.getDescription() != null) mask |= F_DESCRIPTION;
+        if (book.getCategory() != null) mask |= F_CATEGORY;
+        if (book.getCoverImagePath() != null) mask |= F_COVER;
+        if (book.getEpubFileName() != null) mask |= F_EPUB;
+        if (book.getUploadUserId() != null) mask |= F_UPLOAD_USER;
+        if (book.getUploadTime() != null) mask |= F_UPLOAD_TIME;
+        if (book.getCoverColor() != null) mask |= F_COVER_COLOR;
+        if (book.getWordCount() != null) mask |= F_WORD_COUNT;
+        if (book.getReadingMinutes() != null) mask |= F_READING_MINUTES;
+        out.writeVarLong(mask);
+
+        if ((mask & F_ID) != 0) out.writeZigZag(book.getId());
+        if ((mask & F_TITLE) != 0) out.writeString(book.getTitle());
+        if ((mask & F_AUTHOR) != 0) out.writeString(book.getAuthor());
+        if ((mask & F_DESCRIPTION) != 0) out.writeString(book.getDescription());
+        if ((mask & F_CATEGORY) != 0) out.writeVarLong(book.getCategory().ordinal());
+        if ((mask & F_COVER) != 0) out.writeString(book.getCoverImagePath());
+        if ((mask & F_EPUB) != 0) out.writeString(book.getEpubFileName());
+        if ((mask & F_UPLOAD_USER) != 0) out.writeZigZag(book.getUploadUserId());
+        if ((mask & F_UPLOAD_TIME) != 0) {
+            LocalDateTime time = book.getUploadTime();
+            out.writeZigZag(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeVarLong(time.getNano());
+        }
+        if ((mask & F_COVER_COLOR) != 0) out.writeString(book.getCoverColor());
+        if ((mask & F_WORD_COUNT) != 0) out.writeVarLong(book.getWordCount());
+        if ((mask & F_READING_MINUTES) != 0) out.writeVarLong(book.getReadingMinutes());
+    }
+
+    // ============= 解码 =============
+
+    private static Book readRecord(Input in) {
+        int length = (int) in.readVarLong();
+        int end = in.position + length;
+        if (length < 0 || end > in.limit) {
+            throw new IllegalArgumentException("记录长度越界");
+        }
+        long mask = in.readVarLong();
+        Book book = new Book();
+        if ((mask & F_ID) != 0) book.setId(in.readZigZag());
+        if ((mask & F_TITLE) != 0) book.setTitle(in.readString());
+        if ((mask & F_AUTHOR) != 0) book.setAuthor(in.readString());
+        if ((mask & F_DESCRIPTION) != 0) book.setDescription(in.readString());
+        if ((mask & F_CATEGORY) != 0) {
+            int ordinal = (int) in.readVarLong();
+            book.setCategory(ordinal < CATEGORIES.length ? CATEGORIES[ordinal] : BookCategory.OTHER);
+        }
+        if ((mask & F_COVER) != 0) book.setCoverImagePath(in.readString());
+        if ((mask & F_EPUB) != 0) book.setEpubFileName(in.readString());
+        if ((mask & F_UPLOAD_USER) != 0) book.setUploadUserId(in.readZigZag());
+        if ((mask & F_UPLOAD_TIME) != 0) {
+            long seconds = in.readZigZag();
+            int nanos = (int) in.readVarLong();
+            book.setUploadTime(LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+        }
+        if ((mask & F_COVER_COLOR) != 0) book.setCoverColor(in.readString());
+        if ((mask & F_WORD_COUNT) != 0) book.setWordCount((int) in.readVarLong());
+        if ((mask & F_READING_MINUTES) != 0) book.setReadingMinutes((int) in.readVarLong());
+        // 跳过新版本追加的字段
+        in.position = end;
+        return book;
+    }
+
+    // ============= 读写缓冲 =============
+
+    // 非同步的 ByteArrayOutputStream，逐字节写 varint 时省去锁开销
+    private static final class Output {
+        private byte[] buf;
+        private int count;
+
+        Output(int size) {
+            buf = new byte[size];
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        int size() {
+            return count;
+        }
+
+        void reset() {
+            count = 0;
+        }
+
+        void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        void write(byte[] bytes, int offset, int length) {
+            ensureCapacity(count + length);
+            System.arraycopy(bytes, offset, buf, count, length);
+            count += length;
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+            }
+        }
+    }
+
+    private static final class Input {
+        final byte[] bytes;
+        final int limit;
+        int position;
+
+        Input(byte[] bytes, int position, int limit) {
+            this.bytes = bytes;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= limit) {
+                    throw new IllegalArgumentException("数据被截断");
+                }
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("varint 过长");
+        }
+
+        long readZigZag() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            if (length < 0 || position + length > limit) {
+                throw new IllegalArgumentException("字符串长度越界");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.example.epub_demo1.cache;
+
+import jakarta.annotation.PostConstruct;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 已存在书籍 ID 的布隆过滤器，不存在的 ID 在访问 Redis 和数据库之前就被拒绝。
+ * 新增书籍时加入并广播给其他节点；布隆过滤器不能删除元素，已删除的 ID 由空对象缓存兜底，
+ * 并通过定时重建清除。加载完成前一律视为可能存在。
+ */
+@Service
+public class BookIdFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(BookIdFilter.class);
+    private static final String ADD_CHANNEL = "books:bloom:add";
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Value("${cache.bloom.expected-books:100000}")
+    private int expectedBooks;
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    private volatile Bloom bloom;
+
+    // 重建期间新增的 ID，换入新过滤器时补上
+    private volatile Set<Long> addedDuringRebuild;
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> {
+                    for (String id : new String(message.getBody(), StandardCharsets.UTF_8).split(",")) {
+                        addLocal(Long.valueOf(id));
+                    }
+                },
+                new ChannelTopic(ADD_CHANNEL));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Thread loader = new Thread(() -> {
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                log.warn("书籍 ID 过滤器加载失败，暂不过滤: {}", e.getMessage());
+            }
+        }, "book-id-filter-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    // false 表示一定不存在
+    public boolean mightContain(Long id) {
+        Bloom current = bloom;
+        return current == null || (id != null && current.mightContain(id));
+    }
+
+    public void add(Long id) {
+        addAll(List.of(id));
+    }
+
+    // 广播消息为逗号分隔的 ID
+    public void addAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder();
+        for (Long id : ids) {
+            addLocal(id);
+            message.append(message.length() == 0 ? "" : ",").append(id);
+        }
+        stringRedisTemplate.convertAndSend(ADD_CHANNEL, message.toString());
+    }
+
+    @Scheduled(fixedDelayString = "${cache.bloom.rebuild-interval-ms:3600000}",
+            initialDelayString = "${cache.bloom.rebuild-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        addedDuringRebuild = ConcurrentHashMap.newKeySet();
+        try {
+            List<Long> ids = bookMapper.selectAllIds();
+            Bloom rebuilt = new Bloom(Math.max(expectedBooks, ids.size() * 2), FALSE_POSITIVE_RATE);
+            for (Long id : ids) {
+                rebuilt.add(id);
+            }
+            bloom = rebuilt;
+            addedDuringRebuild.forEach(rebuilt::add);
+            log.info("书籍 ID 过滤器已重建: {} 个 ID, {} KB", ids.size(), rebuilt.sizeInBytes() / 1024);
+        } finally {
+            addedDuringRebuild = null;
+        }
+    }
+
+    private void addLocal(Long id) {
+        Set<Long> pending = addedDuringRebuild;
+        if (pending != null) {
+            pending.add(id);
+        }
+        Bloom current = bloom;
+        if (current != null) {
+            current.add(id);
+        }
+    }
+
+    /**
+     * 位数组 + k 个哈希（由两个 64 位哈希线性组合得到）。
+     */
+    static final class Bloom {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+
+        Bloom(int expected, double falsePositiveRate) {
+            long m = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bitCount = Math.max(64, (m + 63) / 64 * 64);
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expected * Math.log(2)));
+            this.bits = new AtomicLongArray((int) (bitCount / 64));
+        }
+
+        void add(long id) {
+            long h1 = mix(id);
+            long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long old;
+                do {
+                    old = bits.get(word);
+                } while ((old & mask) == 0 && !bits.compareAndSet(word, old, old | mask));
+            }
+        }
+
+        boolean mightContain(long id) {
+            long h1 = mix(id);
+            long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long sizeInBytes() {
+            return bitCount / 8;
+        }
+
+        // MurmurHash3 的 64 位终结函数
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB93FE53B1A85L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
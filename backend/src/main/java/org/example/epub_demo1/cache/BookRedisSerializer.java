@@ -0,0 +1,56 @@
+package org.example.epub_demo1.cache;
+
+import org.example.epub_demo1.entity.Book;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.List;
+
+/**
+ * Redis 值序列化：Book 和 List&lt;Book&gt; 用 BookCodec 的二进制格式，其余值（统计、分页等 Map）交给 JSON 序列化器。
+ * 读取时按首字节区分两种格式，升级前写入的 JSON 缓存仍可读出。
+ */
+public class BookRedisSerializer implements RedisSerializer<Object> {
+
+    private final RedisSerializer<Object> fallback;
+
+    public BookRedisSerializer(RedisSerializer<Object> fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value instanceof Book book) {
+            return BookCodec.encode(book);
+        }
+        if (value instanceof List<?> list && isBookList(list)) {
+            // isBookList 已逐个检查过元素类型
+            @SuppressWarnings("unchecked")
+            List<Book> books = (List<Book>) list;
+            return BookCodec.encodeList(books);
+        }
+        return fallback.serialize(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (!BookCodec.isEncoded(bytes)) {
+            return fallback.deserialize(bytes);
+        }
+        try {
+            return BookCodec.decode(bytes);
+        } catch (RuntimeException e) {
+            throw new SerializationException("无法解码缓存的书籍数据: " + e.getMessage(), e);
+        }
+    }
+
+    // 空列表也按书籍列表编码（查询结果可能为空）
+    private static boolean isBookList(List<?> list) {
+        for (Object element : list) {
+            if (!(element instanceof Book)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -4,6 +4,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
@@ -29,6 +30,7 @@ public class SecurityConfig {
                                 "/",
                                 "/home",
                                 "/getall",
+                                "/getall/stream",
                                 "/read/**",
                                 "/reader/**",
                                 "/reader",
@@ -36,10 +38,17 @@ public class SecurityConfig {
                                 "/api/auth/**",
                                 "/uploads/**",
                                 "/upload", // 显式放行上传接口
+                                "/upload/jobs/**",
                                 "/statistics",
+                                "/search",
                                 "/covers/**"
                         ).permitAll()
-                        .requestMatchers("/addbook", "/upbook", "/delebook").authenticated()
+                        // 按用户区分的数据和导入任务，须在 GET /books/** 放行之前匹配
+                        .requestMatchers("/books/*/progress", "/books/*/bookmarks", "/books/*/bookmarks/*", "/progress",
+                                "/books/*/annotations", "/books/*/annotations/*", "/books/import/jobs/*").authenticated()
+                        .requestMatchers(HttpMethod.GET, "/books/**").permitAll()
+                        .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+                        .requestMatchers("/addbook", "/upbook", "/delebook", "/books/import", "/actuator/**").authenticated()
                 )
                 .formLogin(form -> form
                         .loginPage("/login")
@@ -95,6 +104,7 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(Arrays.asList("http://")); // 前端地址
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
+        configuration.setExposedHeaders(Arrays.asList("X-Chapter-Href"));
         configuration.setAllowCredentials(true); // 允许凭证
         configuration.setMaxAge(3600L);
 
@@ -0,0 +1,55 @@
+package org.example.epub_demo1.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 后台线程池（上传、批量导入、缓存刷新、封面缩略图）的线程工厂。
+ * spring.threads.virtual.enabled=true 且运行在 Java 21+ 时使用虚拟线程，与 Tomcat 请求线程一致；
+ * 否则为命名的守护平台线程。线程池本身（并发上限、有界队列）不变，背压行为两种模式相同。
+ */
+@Component
+public class WorkerThreads {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkerThreads.class);
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualEnabled;
+
+    private boolean virtual;
+
+    @PostConstruct
+    public void init() {
+        virtual = virtualEnabled && Runtime.version().feature() >= 21;
+        if (virtualEnabled && !virtual) {
+            log.warn("已开启 spring.threads.virtual.enabled，但当前 Java {} 不支持虚拟线程，继续使用平台线程",
+                    Runtime.version().feature());
+        }
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * 线程名为 prefix 加序号，如 upload-worker-1。
+     */
+    public ThreadFactory factory(String prefix) {
+        if (virtual) {
+            return new VirtualThreadTaskExecutor(prefix).getVirtualThreadFactory();
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,248 @@
+package org.example.epub_demo1.controller;
+
+import org.example.epub_demo1.cache.BookIdFilter;
+import org.example.epub_demo1.entity.Annotation;
+import org.example.epub_demo1.reading.AnnotationService;
+import org.example.epub_demo1.security.CurrentUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 划线和笔记 - 需要认证。阅读器按章节读取（?chapter= 或 ?from=&to=），离线客户端通过 /sync 批量提交。
+ */
+@RestController
+@CrossOrigin
+public class AnnotationController {
+
+    private static final Logger log = LoggerFactory.getLogger(AnnotationController.class);
+    private static final int MAX_CFI_LENGTH = 1024;
+    private static final int MAX_COLOR_LENGTH = 16;
+    private static final int MAX_NOTE_LENGTH = 10_000;
+    private static final int MAX_QUOTE_LENGTH = 1000;
+    private static final int MAX_CLIENT_ID_LENGTH = 64;
+    // 一次最多读取的章节数
+    private static final int MAX_CHAPTER_SPAN = 50;
+    // 一次同步最多提交的条数（新增/修改和删除合计）
+    private static final int MAX_SYNC = 1000;
+
+    @Autowired
+    private AnnotationService annotationService;
+
+    @Autowired
+    private BookIdFilter bookIdFilter;
+
+    @Autowired
+    private CurrentUser currentUser;
+
+    @GetMapping("/books/{id}/annotations")
+    public ResponseEntity<?> getAnnotations(@PathVariable Long id,
+                                            @RequestParam(required = false) Integer chapter,
+                                            @RequestParam(required = false) Integer from,
+                                            @RequestParam(required = false) Integer to,
+                                            Authentication authentication) {
+        Integer userId = currentUser.id(authentication);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (chapter != null) {
+            from = chapter;
+            to = chapter;
+        }
+        if (from == null || to == null || from < 0 || to < from || to - from >= MAX_CHAPTER_SPAN) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "需要 chapter 或 from/to 参数，且一次最多 " + MAX_CHAPTER_SPAN + " 章"));
+        }
+        List<Integer> chapters = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            chapters.add(i);
+        }
+        try {
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .body(annotationService.byChapters(userId, id, chapters));
+        } catch (Exception e) {
+            log.error("获取划线失败 书籍 ID: {}, 章节 {}-{}", id, from, to, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "获取划线失败: " + e.getMessage()));
+        }
+    }
+
+    @PostMapping("/books/{id}/annotations")
+    public ResponseEntity<?> addAnnotation(@PathVariable Long id, @RequestBody Annotation annotation,
+                                           Authentication authentication) {
+        Integer userId = currentUser.id(authentication);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        String error = prepare(annotation, userId, id);
+        if (error != null) {
+            return ResponseEntity.badRequest().body(Map.of("error", error));
+        }
+        try {
+            return ResponseEntity.ok(annotationService.add(annotation));
+        } catch (Exception e) {
+            log.error("添加划线失败 书籍 ID: {}", id, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "添加划线失败: " + e.getMessage()));
+        }
+    }
+
+    // 只能修改类型、颜色和笔记内容，不传 type 时保持不变
+    @PutMapping("/books/{id}/annotations/{annotationId}")
+    public ResponseEntity<?> updateAnnotation(@PathVariable Long id, @PathVariable Long annotationId,
+                                              @RequestBody Annotation changes, Authentication authentication) {
+        Integer userId = currentUser.id(authentication);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        String error = checkContent(changes);
+        if (error != null) {
+            return ResponseEntity.badRequest().body(Map.of("error", error));
+        }
+        try {
+            Annotation updated = annotationService.update(userId, id, annotationId, changes);
+            return updated == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(updated);
+        } catch (Exception e) {
+            log.error("修改划线失败 ID: {}", annotationId, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "修改划线失败: " + e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/books/{id}/annotations/{annotationId}")
+    public ResponseEntity<Void> deleteAnnotation(@PathVariable Long id, @PathVariable Long annotationId,
+                                                 Authentication authentication) {
+        Integer userId = currentUser.id(authentication);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            return annotationService.delete(userId, id, annotationId)
+                    ? ResponseEntity.noContent().build()
+                    : ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            log.error("删除划线失败 ID: {}", annotationId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    // 离线同步：annotations 按 clientId 新增或修改，deleted 为要删除的 clientId 和删除时间 deletedAt；
+    // 都只在比服务端记录更新时生效。clientId 已用于其他书籍时返回 409
+    @PostMapping("/books/{id}/annotations/sync")
+    public ResponseEntity<?> sync(@PathVariable Long id, @RequestBody SyncRequest request,
+                                  Authentication authentication) {
+        Integer userId = currentUser.id(authentication);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        List<Annotation> annotations = request.getAnnotations() == null ? List.of() : request.getAnnotations();
+        List<AnnotationService.Deletion> deleted = request.getDeleted() == null ? List.of() : request.getDeleted();
+        if (annotations.size() + deleted.size() > MAX_SYNC) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(Map.of("error", "一次最多同步 " + MAX_SYNC + " 条"));
+        }
+        for (Annotation annotation : annotations) {
+            String error = annotation.getClientId() == null ? "缺少 clientId" : prepare(annotation, userId, id);
+            if (error != null) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", error, "clientId", String.valueOf(annotation.getClientId())));
+            }
+        }
+        long now = System.currentTimeMillis();
+        List<AnnotationService.Deletion> deletions = new ArrayList<>(deleted.size());
+        for (AnnotationService.Deletion deletion : deleted) {
+            String clientId = deletion == null ? null : deletion.clientId();
+            if (clientId == null || clientId.isEmpty() || clientId.length() > MAX_CLIENT_ID_LENGTH) {
+                return ResponseEntity.badRequest().body(Map.of("error", "deleted 中的 clientId 无效"));
+            }
+            // 与修改相同：缺少或晚于服务端当前时间的按当前时间计
+            Long deletedAt = deletion.deletedAt();
+            deletions.add(new AnnotationService.Deletion(clientId,
+                    deletedAt == null || deletedAt > now ? now : deletedAt));
+        }
+        try {
+            return ResponseEntity.ok(annotationService.sync(userId, id, annotations, deletions));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("同步划线失败 书籍 ID: {}, {} 条", id, annotations.size() + deleted.size(), e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "同步划线失败: " + e.getMessage()));
+        }
+    }
+
+    // 校验并填写服务端字段，返回错误信息；通过时为 null
+    private String prepare(Annotation annotation, int userId, long bookId) {
+        if (!bookIdFilter.mightContain(bookId)) {
+            return "书籍不存在";
+        }
+        String cfi = annotation.getCfiRange();
+        int chapter = cfi == null || cfi.length() > MAX_CFI_LENGTH ? -1 : AnnotationService.chapterIndex(cfi);
+        if (chapter < 0) {
+            return "cfiRange 无效";
+        }
+        if (annotation.getClientId() != null
+                && (annotation.getClientId().isEmpty() || annotation.getClientId().length() > MAX_CLIENT_ID_LENGTH)) {
+            return "clientId 无效";
+        }
+        if (annotation.getType() == null) {
+            annotation.setType(annotation.getNote() == null || annotation.getNote().isBlank()
+                    ? Annotation.Type.HIGHLIGHT : Annotation.Type.NOTE);
+        }
+        String error = checkContent(annotation);
+        if (error != null) {
+            return error;
+        }
+        // 原文只用于展示，过长时截断
+        if (annotation.getQuote() != null && annotation.getQuote().length() > MAX_QUOTE_LENGTH) {
+            annotation.setQuote(annotation.getQuote().substring(0, MAX_QUOTE_LENGTH));
+        }
+        long now = System.currentTimeMillis();
+        annotation.setId(null);
+        annotation.setUserId(userId);
+        annotation.setBookId(bookId);
+        annotation.setChapterIdx(chapter);
+        annotation.setStartOffset(annotation.getStartOffset() == null ? 0 : Math.max(0, annotation.getStartOffset()));
+        if (annotation.getUpdatedAt() == null || annotation.getUpdatedAt() > now) {
+            annotation.setUpdatedAt(now);
+        }
+        return null;
+    }
+
+    private static String checkContent(Annotation annotation) {
+        if (annotation.getColor() != null && annotation.getColor().length() > MAX_COLOR_LENGTH) {
+            return "color 无效";
+        }
+        if (annotation.getNote() != null && annotation.getNote().length() > MAX_NOTE_LENGTH) {
+            return "笔记过长";
+        }
+        return null;
+    }
+
+    static class SyncRequest {
+        private List<Annotation> annotations;
+        private List<AnnotationService.Deletion> deleted;
+
+        public List<Annotation> getAnnotations() {
+            return annotations;
+        }
+
+        public void setAnnotations(List<Annotation> annotations) {
+            this.annotations = annotations;
+        }
+
+        public List<AnnotationService.Deletion> getDeleted() {
+            return deleted;
+        }
+
+        public void setDeleted(List<AnnotationService.Deletion> deleted) {
+            this.deleted = deleted;
+        }
+    }
+}
@@ -1,80 +1,599 @@
 package org.example.epub_demo1.controller;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.epub_demo1.cache.BookIdFilter;
+import org.example.epub_demo1.config.WorkerThreads;
 import org.example.epub_demo1.entity.Book;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+/**
+ * 书籍缓存：进程内 Caffeine（L1）+ Redis（L2）。
+ * 读先查 L1，未命中再查 Redis 并回填 L1；清除缓存时删除 Redis 键并通过 pub/sub 通知所有节点清除各自的 L1。
+ * 书籍列表的加载带有防击穿保护：本节点内合并并发加载，跨节点用 Redis 租约，
+ * 软过期后先返回旧值再由一个后台任务刷新。
+ */
 @Service
 public class BookCacheService {
+    private static final Logger log = LoggerFactory.getLogger(BookCacheService.class);
     private static final String ALL_BOOKS_KEY = "books:all";
     private static final String BOOK_KEY_PREFIX = "book:";
-    private static final String STATS_KEY = "books:stats";
+    // 分页缓存键带目录版本号，书籍变更时递增版本使所有旧结果失效
+    private static final String PAGE_KEY_PREFIX = "books:page:";
+    private static final String CATALOG_VERSION_KEY = "books:catalog:version";
+    private static final Duration PAGE_TTL = Duration.ofMinutes(10);
     private static final Duration BOOKS_TTL = Duration.ofMinutes(30);
-    private static final Duration STATS_TTL = Duration.ofHours(1);
+    private static final Duration EMPTY_BOOK_TTL = Duration.ofMinutes(5);
+    // 软过期：超过后仍返回旧值，同时由一个后台任务刷新
+    private static final Duration BOOKS_SOFT_TTL = Duration.ofMinutes(5);
+
+    private static final String FRESH_SUFFIX = ":fresh";
+    private static final String LEASE_SUFFIX = ":lease";
+    // 持有重建租约的最长时间，以及未拿到租约时等待其他节点写回的时间
+    private static final Duration LEASE_TTL = Duration.ofSeconds(10);
+    private static final Duration LEASE_WAIT = Duration.ofSeconds(3);
+    private static final long LEASE_POLL_MILLIS = 50;
+
+    // 只删除自己持有的租约
+    private static final RedisScript<Long> RELEASE_LEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    // 目录版本号仍为加载前读取的值时才写回并标记为新鲜；否则加载期间有书籍变更，结果可能已过期
+    // KEYS: 值、新鲜标记、目录版本号；ARGV: 加载前的版本号、序列化后的值、硬过期（毫秒）、软过期（毫秒）
+    private static final RedisScript<Long> STORE_IF_CURRENT = new DefaultRedisScript<>(
+            "if (redis.call('get', KEYS[3]) or '0') ~= ARGV[1] then return 0 end "
+                    + "redis.call('set', KEYS[1], ARGV[2], 'PX', ARGV[3]) "
+                    + "redis.call('set', KEYS[2], '1', 'PX', ARGV[4]) "
+                    + "return 1",
+            Long.class);
+
+    // 缓存失效广播频道，消息体为键名（多个键以换行分隔）
+    static final String INVALIDATION_CHANNEL = "books:cache:invalidate";
 
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
-    // 缓存所有书籍列表
-    public void cacheAllBooks(List<Book> books) {
-        ValueOperations<String, Object> ops = redisTemplate.opsForValue();
-        ops.set(ALL_BOOKS_KEY, books, BOOKS_TTL);
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private BookIdFilter bookIdFilter;
+
+    @Autowired
+    private WorkerThreads workerThreads;
+
+    @Value("${cache.local.max-size:1000}")
+    private long localMaxSize;
+
+    @Value("${cache.local.ttl-seconds:60}")
+    private long localTtlSeconds;
+
+    private Cache<String, Object> localCache;
+
+    // 本节点正在加载的键（同一键的并发请求合并为一次加载）
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor refreshExecutor;
+
+    // 事务内待失效书籍 ID 的资源键
+    private final Object pendingInvalidations = new Object();
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(localTtlSeconds))
+                .recordStats()
+                .build();
+        // L1 命中/未命中/淘汰计数
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, "books.local");
+
+        listenerContainer.addMessageListener(
+                (message, pattern) -> {
+                    String body = new String(message.getBody(), StandardCharsets.UTF_8);
+                    localCache.invalidateAll(List.of(body.split("\n")));
+                },
+                new ChannelTopic(INVALIDATION_CHANNEL));
+
+        // 后台刷新：同一时间每个键至多一个任务，队列满时直接放弃（下次读取会再触发）
+        refreshExecutor = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(16),
+                workerThreads.factory("cache-refresh-"),
+                new ThreadPoolExecutor.DiscardPolicy());
     }
 
-    // 获取缓存的书籍列表
-    public List<Book> getAllBooksFromCache() {
-        ValueOperations<String, Object> ops = redisTemplate.opsForValue();
-        return (List<Book>) ops.get(ALL_BOOKS_KEY);
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
     }
 
-    // 缓存单本书籍
-    public void cacheBook(Book book) {
-        ValueOperations<String, Object> ops = redisTemplate.opsForValue();
-        ops.set(BOOK_KEY_PREFIX + book.getId(), book, BOOKS_TTL);
+    /**
+     * 读取书籍列表，未命中时用 loader 加载（合并并发加载，软过期后后台刷新）。
+     * 键带目录版本号（books:all:{version}），调用方应先取版本号再调用：
+     * 版本号 v 下的值都是在 v 生效之后加载的，变更前的旧列表不会被当作新版本的数据返回。
+     */
+    public List<Book> getAllBooks(String version, Supplier<List<Book>> loader) {
+        return (List<Book>) getOrLoad(ALL_BOOKS_KEY + ":" + version, loader, BOOKS_SOFT_TTL, BOOKS_TTL);
     }
 
-    // 获取缓存的单本书籍
-    public Book getBookFromCache(Long id) {
-        ValueOperations<String, Object> ops = redisTemplate.opsForValue();
-        return (Book) ops.get(BOOK_KEY_PREFIX + id);
+    /**
+     * 读取单本书籍（读穿透）。过滤器判定不存在的 ID 直接返回 null；
+     * 数据库中不存在的 ID 缓存空对象，同一 ID 的并发未命中只查询一次数据库。
+     */
+    public Book getBook(Long id, Function<Long, Book> loader) {
+        if (id == null || !bookIdFilter.mightContain(id)) {
+            return null;
+        }
+        String key = BOOK_KEY_PREFIX + id;
+        Book book = get(key) instanceof Book cached ? cached : null;
+        if (book == null) {
+            book = (Book) coalesce(key, () -> {
+                Book loaded = timedLoad("book", () -> loader.apply(id));
+                // 数据库中不存在时缓存空对象，防止缓存穿透
+                Book value = loaded == null ? new Book() : loaded;
+                put(key, value, loaded == null ? EMPTY_BOOK_TTL : BOOKS_TTL);
+                return value;
+            });
+        }
+        return book.getId() == null ? null : book;
+    }
+
+    /**
+     * 批量读取书籍，按 ids 的顺序返回存在的书。L1 未命中的一次 MGET，
+     * Redis 也未命中的交给 loader 一次查询，结果（包括不存在的空对象）用管道批量写回。
+     */
+    public List<Book> getBooks(List<Long> ids, Function<Collection<Long>, List<Book>> loader) {
+        Map<Long, Book> found = new HashMap<>();
+        List<Long> remoteIds = new ArrayList<>();
+        for (Long id : ids) {
+            if (!bookIdFilter.mightContain(id)) {
+                continue;
+            }
+            if (localCache.getIfPresent(BOOK_KEY_PREFIX + id) instanceof Book book) {
+                found.put(id, book);
+            } else {
+                remoteIds.add(id);
+            }
+        }
+        count("l1", "book", ids.size() - remoteIds.size(), remoteIds.size());
+
+        List<Long> missing = new ArrayList<>();
+        if (!remoteIds.isEmpty()) {
+            List<Object> values = multiGet(remoteIds.stream().map(id -> BOOK_KEY_PREFIX + id).toList());
+            for (int i = 0; i < remoteIds.size(); i++) {
+                Long id = remoteIds.get(i);
+                if (values.get(i) instanceof Book book) {
+                    found.put(id, book);
+                    localCache.put(BOOK_KEY_PREFIX + id, book);
+                } else {
+                    missing.add(id);
+                }
+            }
+            count("l2", "book", remoteIds.size() - missing.size(), missing.size());
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, Book> writes = new LinkedHashMap<>();
+            for (Book book : timedLoad("book", () -> loader.apply(missing))) {
+                found.put(book.getId(), book);
+                writes.put(BOOK_KEY_PREFIX + book.getId(), book);
+            }
+            for (Long id : missing) {
+                writes.putIfAbsent(BOOK_KEY_PREFIX + id, new Book());
+            }
+            putAll(writes);
+        }
+
+        List<Book> books = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Book book = found.get(id);
+            if (book != null && book.getId() != null) {
+                books.add(book);
+            }
+        }
+        return books;
     }
 
-    // 清除所有书籍缓存
-    public void clearAllBooksCache() {
-        redisTemplate.delete(ALL_BOOKS_KEY);
+    // 读取一页书架卡片，未命中时用 loader 加载
+    public Map<String, Object> getPage(String pageKey, Supplier<Map<String, Object>> loader) {
+        return (Map<String, Object>) getVersioned(PAGE_KEY_PREFIX, pageKey, loader, PAGE_TTL);
     }
 
-    // 清除单本书籍缓存
-    public void clearBookCache(Long id) {
-        redisTemplate.delete(BOOK_KEY_PREFIX + id);
+    /**
+     * 书籍变更后的批量失效：单本缓存、书籍列表，并递增目录版本号（分页随之失效）。
+     * 在事务中调用时只记录 ID，同一事务内的多次调用在提交后合并为一次管道操作；
+     * 提交前不删除，避免读者在删除和提交之间把旧数据写回缓存。回滚时不做任何事。没有事务时立即执行。
+     */
+    public void invalidateBooks(Collection<Long> ids) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            flushInvalidation(ids);
+            return;
+        }
+        Set<Long> pending = (Set<Long>) TransactionSynchronizationManager.getResource(pendingInvalidations);
+        if (pending == null) {
+            Set<Long> created = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(pendingInvalidations, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(pendingInvalidations);
+                    if (status == STATUS_COMMITTED) {
+                        flushInvalidation(created);
+                    }
+                }
+            });
+            pending = created;
+        }
+        pending.addAll(ids);
     }
 
-    // 防止缓存穿透的空对象缓存
-    public void cacheEmptyBook(Long id) {
-        ValueOperations<String, Object> ops = redisTemplate.opsForValue();
-        ops.set(BOOK_KEY_PREFIX + id, new Book(), Duration.ofMinutes(5));
+    // 键带目录版本号；先取版本号再加载，加载期间发生的变更不会被写入新版本
+    private Object getVersioned(String prefix, String subKey, Supplier<?> loader, Duration ttl) {
+        String key = prefix + catalogVersion() + ":" + subKey;
+        Object value = get(key);
+        if (value == null) {
+            value = timedLoad(family(key), loader);
+            put(key, value, ttl);
+        }
+        return value;
     }
 
-    // 缓存统计信息
-    public void cacheStats(Map<String, Object> stats) {
-        ValueOperations<String, Object> ops = redisTemplate.opsForValue();
-        ops.set(STATS_KEY, stats, STATS_TTL);
+    // 目录版本号在 L1 中缓存，递增时通过失效广播通知各节点重新读取；任何书籍变更都会使其递增
+    public String catalogVersion() {
+        Object cached = localCache.getIfPresent(CATALOG_VERSION_KEY);
+        if (cached != null) {
+            return (String) cached;
+        }
+        String version = stringRedisTemplate.opsForValue().get(CATALOG_VERSION_KEY);
+        if (version == null) {
+            version = "0";
+        }
+        localCache.put(CATALOG_VERSION_KEY, version);
+        return version;
     }
 
-    // 获取缓存的统计信息
-    public Map<String, Object> getStatsFromCache() {
+    // ============= 防击穿加载 =============
+
+    private Object getOrLoad(String key, Supplier<?> loader, Duration softTtl, Duration hardTtl) {
+        Object local = localCache.getIfPresent(key);
+        if (local != null) {
+            count("l1", family(key), true);
+            return local;
+        }
+        count("l1", family(key), false);
+
+        Object remote = readRemote(key);
+        count("l2", family(key), remote != null);
+        if (remote != null) {
+            localCache.put(key, remote);
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(key + FRESH_SUFFIX))) {
+                refreshInBackground(key, loader, softTtl, hardTtl);
+            }
+            return remote;
+        }
+        return loadSingleFlight(key, loader, softTtl, hardTtl, true);
+    }
+
+    private void refreshInBackground(String key, Supplier<?> loader, Duration softTtl, Duration hardTtl) {
+        if (inFlight.containsKey(key)) {
+            return;
+        }
+        refreshExecutor.execute(() -> {
+            try {
+                loadSingleFlight(key, loader, softTtl, hardTtl, false);
+            } catch (RuntimeException e) {
+                log.warn("后台刷新缓存失败 {}: {}", key, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 同一节点内同一键只有一个线程执行加载，其余线程等待其结果；
+     * 跨节点通过 Redis 租约保证只有一个节点访问数据库。
+     *
+     * @param waitForOthers 未拿到租约时是否等待持有者写回（后台刷新直接放弃）
+     */
+    private Object loadSingleFlight(String key, Supplier<?> loader, Duration softTtl, Duration hardTtl,
+                                    boolean waitForOthers) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            Object joined;
+            try {
+                joined = existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+            // 后台刷新可能因未拿到租约而返回空，此时由前台请求自行加载
+            if (joined != null || !waitForOthers) {
+                return joined;
+            }
+            return loadWithLease(key, loader, softTtl, hardTtl, true);
+        }
+        try {
+            Object value = loadWithLease(key, loader, softTtl, hardTtl, waitForOthers);
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private Object loadWithLease(String key, Supplier<?> loader, Duration softTtl, Duration hardTtl,
+                                 boolean waitForOthers) {
+        String leaseKey = key + LEASE_SUFFIX;
+        String token = UUID.randomUUID().toString();
+        boolean leased = Boolean.TRUE.equals(
+                stringRedisTemplate.opsForValue().setIfAbsent(leaseKey, token, LEASE_TTL));
+        if (!leased) {
+            if (!waitForOthers) {
+                return null;
+            }
+            // 其他节点正在重建，等待其写回
+            long deadline = System.currentTimeMillis() + LEASE_WAIT.toMillis();
+            while (System.currentTimeMillis() < deadline) {
+                Object value = readRemote(key);
+                if (value != null) {
+                    localCache.put(key, value);
+                    return value;
+                }
+                try {
+                    Thread.sleep(LEASE_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            // 持有者超时，自行加载但不写回，避免覆盖其结果
+            return timedLoad(family(key), loader);
+        }
+
+        try {
+            // 先读版本号再加载：加载与书籍变更重叠时不写回，避免旧值在失效之后被写入并标记为新鲜
+            String version = stringRedisTemplate.opsForValue().get(CATALOG_VERSION_KEY);
+            Object value = timedLoad(family(key), loader);
+            if (value != null && storeIfCurrent(key, value, version == null ? "0" : version, softTtl, hardTtl)) {
+                localCache.put(key, value);
+            }
+            return value;
+        } finally {
+            stringRedisTemplate.execute(RELEASE_LEASE, List.of(leaseKey), token);
+        }
+    }
+
+    private boolean storeIfCurrent(String key, Object value, String version, Duration softTtl, Duration hardTtl) {
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        Long stored = redisTemplate.execute(STORE_IF_CURRENT, RedisSerializer.byteArray(),
+                new GenericToStringSerializer<>(Long.class),
+                List.of(key, key + FRESH_SUFFIX, CATALOG_VERSION_KEY),
+                bytes(version), valueSerializer.serialize(value),
+                bytes(String.valueOf(hardTtl.toMillis())), bytes(String.valueOf(softTtl.toMillis())));
+        if (!Long.valueOf(1).equals(stored)) {
+            log.debug("加载期间目录已变更，放弃写回 {}", key);
+            return false;
+        }
+        return true;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // ============= 两级缓存读写 =============
+
+    private Object get(String key) {
+        String family = family(key);
+        Object local = localCache.getIfPresent(key);
+        if (local != null) {
+            count("l1", family, true);
+            return local;
+        }
+        count("l1", family, false);
+
+        Object remote = readRemote(key);
+        count("l2", family, remote != null);
+        if (remote != null) {
+            localCache.put(key, remote);
+        }
+        return remote;
+    }
+
+    // 无法解码的值（格式升级前写入、数据损坏）按未命中处理，随后会被重新写入
+    private Object readRemote(String key) {
+        try {
+            return redisTemplate.opsForValue().get(key);
+        } catch (SerializationException e) {
+            log.warn("忽略无法解码的缓存值 {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    // 一次管道：递增目录版本号、删除所有受影响的键、广播 L1 失效
+    private void flushInvalidation(Collection<Long> ids) {
+        List<String> keys = new ArrayList<>();
+        for (Long id : ids) {
+            keys.add(BOOK_KEY_PREFIX + id);
+        }
+        // 书籍列表和分页的键带版本号，递增版本号即可使其失效
+        List<String> deleted = new ArrayList<>(keys);
+        keys.add(CATALOG_VERSION_KEY);
+
+        byte[][] rawKeys = deleted.stream().map(key -> key.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+        byte[] message = String.join("\n", keys).getBytes(StandardCharsets.UTF_8);
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.stringCommands().incr(CATALOG_VERSION_KEY.getBytes(StandardCharsets.UTF_8));
+                if (rawKeys.length > 0) {
+                    connection.keyCommands().del(rawKeys);
+                }
+                connection.publish(INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8), message);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.error("批量清除缓存失败 {}: {}", keys, e.getMessage());
+        } finally {
+            localCache.invalidateAll(keys);
+        }
+    }
+
+    private List<Object> multiGet(List<String> keys) {
+        try {
+            List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+            if (values != null) {
+                return values;
+            }
+        } catch (SerializationException e) {
+            log.warn("忽略无法解码的批量缓存值: {}", e.getMessage());
+        }
+        return Arrays.asList(new Object[keys.size()]);
+    }
+
+    // 书籍和空对象的 TTL 不同，用管道一次发送所有 SET
+    private void putAll(Map<String, Book> books) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (Map.Entry<String, Book> entry : books.entrySet()) {
+                    Duration ttl = entry.getValue().getId() == null ? EMPTY_BOOK_TTL : BOOKS_TTL;
+                    operations.opsForValue().set(entry.getKey(), entry.getValue(), ttl);
+                }
+                return null;
+            }
+        });
+        localCache.putAll(books);
+    }
+
+    // 本节点内同一键的并发加载合并为一次
+    private Object coalesce(String key, Supplier<Object> loader) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            Object value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private void put(String key, Object value, Duration ttl) {
         ValueOperations<String, Object> ops = redisTemplate.opsForValue();
-        return (Map<String, Object>) ops.get(STATS_KEY);
+        ops.set(key, value, ttl);
+        localCache.put(key, value);
+    }
+
+    private void count(String tier, String family, int hits, int misses) {
+        if (hits > 0) {
+            counter(tier, family, true).increment(hits);
+        }
+        if (misses > 0) {
+            counter(tier, family, false).increment(misses);
+        }
+    }
+
+    private void count(String tier, String family, boolean hit) {
+        counter(tier, family, hit).increment();
+    }
+
+    // 未命中时回源加载（数据库查询 + 组装）的耗时
+    private <T> T timedLoad(String family, Supplier<T> loader) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return loader.get();
+        } finally {
+            sample.stop(Timer.builder("books.cache.load")
+                    .description("缓存未命中时的加载耗时")
+                    .tag("family", family)
+                    .register(meterRegistry));
+        }
+    }
+
+    private Counter counter(String tier, String family, boolean hit) {
+        return Counter.builder("books.cache.requests")
+                .tag("tier", tier)
+                .tag("family", family)
+                .tag("result", hit ? "hit" : "miss")
+                .register(meterRegistry);
     }
 
-    // 清除统计缓存
-    public void clearStatsCache() {
-        redisTemplate.delete(STATS_KEY);
+    // 键族：books:all:... -> all, book:42 -> book, books:page:... -> page
+    private static String family(String key) {
+        if (key.startsWith(ALL_BOOKS_KEY)) {
+            return "all";
+        }
+        if (key.startsWith(BOOK_KEY_PREFIX)) {
+            return "book";
+        }
+        if (key.startsWith(PAGE_KEY_PREFIX)) {
+            return "page";
+        }
+        int colon = key.lastIndexOf(':');
+        return colon >= 0 ? key.substring(colon + 1) : key;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,189 @@
+package org.example.epub_demo1.controller;
+
+import org.example.epub_demo1.epub.BookLocations;
+import org.example.epub_demo1.epub.BookLocationsService;
+import org.example.epub_demo1.epub.EpubArchive;
+import org.example.epub_demo1.epub.EpubContentService;
+import org.example.epub_demo1.storage.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+/**
+ * 按章节/资源读取书籍内容，阅读器无需下载整本 EPUB。
+ * 每个条目直接从 ZIP 中随机读取，并以条目的 CRC32 和长度作为强 ETag。
+ */
+@RestController
+@CrossOrigin
+public class BookContentController {
+
+    private static final Logger log = LoggerFactory.getLogger(BookContentController.class);
+    private static final CacheControl CONTENT_CACHE = CacheControl.maxAge(1, TimeUnit.HOURS).cachePublic();
+    // EPUB 由用户上传，内容不可信：章节和资源与 API 同源（带会话 Cookie），直接打开时不得执行脚本，
+    // 也不得被浏览器按内容猜测成 HTML
+    private static final String CONTENT_POLICY = "sandbox; script-src 'none'";
+    // 位置表只随 EPUB 文件变化（内容寻址），可以缓存更久
+    private static final CacheControl LOCATIONS_CACHE = CacheControl.maxAge(1, TimeUnit.DAYS).cachePublic();
+
+    @Autowired
+    private EpubContentService epubContentService;
+
+    @Autowired
+    private BookLocationsService bookLocationsService;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    // 目录和阅读顺序
+    @GetMapping("/books/{id}/toc")
+    public ResponseEntity<Map<String, Object>> getToc(@PathVariable Long id, WebRequest request) {
+        try (EpubContentService.Lease lease = epubContentService.open(id)) {
+            if (lease == null) {
+                return ResponseEntity.notFound().build();
+            }
+            EpubArchive archive = lease.archive();
+            EpubArchive.ManifestItem tocItem = archive.getTocItem();
+            String etag = "\"toc-" + entryTag(archive.getEntry(archive.getOpfPath()))
+                    + (tocItem == null ? "" : "-" + entryTag(archive.getEntry(tocItem.getHref()))) + "\"";
+            if (request.checkNotModified(etag)) {
+                return null;
+            }
+
+            List<Map<String, Object>> spine = new ArrayList<>();
+            List<EpubArchive.ManifestItem> items = archive.getSpine();
+            for (int i = 0; i < items.size(); i++) {
+                Map<String, Object> chapter = new LinkedHashMap<>();
+                chapter.put("index", i);
+                chapter.put("href", items.get(i).getHref());
+                chapter.put("mediaType", items.get(i).getMediaType());
+                spine.add(chapter);
+            }
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("bookId", id);
+            response.put("title", archive.getTitle());
+            response.put("spine", spine);
+            response.put("toc", archive.readToc());
+            return ResponseEntity.ok().eTag(etag).cacheControl(CONTENT_CACHE).body(response);
+        } catch (Exception e) {
+            log.error("读取目录失败 ID: {}", id, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "读取目录失败: " + e.getMessage()));
+        }
+    }
+
+    // 位置表：各章节字数和每隔固定字数的 CFI 锚点，阅读器无需排版全书即可显示进度和跳转
+    @GetMapping("/books/{id}/locations")
+    public ResponseEntity<Map<String, Object>> getLocations(@PathVariable Long id, WebRequest request) {
+        try {
+            String fileName = epubContentService.fileName(id);
+            Path epubFile = blobStore.isValidEpubName(fileName) ? blobStore.epubPath(fileName) : null;
+            if (epubFile == null || !Files.isRegularFile(epubFile)) {
+                return ResponseEntity.notFound().build();
+            }
+            BookLocations locations = bookLocationsService.get(fileName, epubFile);
+            String etag = "\"loc-" + BlobStore.flatten(fileName) + "-" + locations.getInterval() + "\"";
+            if (request.checkNotModified(etag)) {
+                return null;
+            }
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("bookId", id);
+            response.put("readingMinutes", bookLocationsService.readingMinutes(locations.totalWords()));
+            response.putAll(locations.toResponse());
+            return ResponseEntity.ok().eTag(etag).cacheControl(LOCATIONS_CACHE).body(response);
+        } catch (Exception e) {
+            log.error("读取位置表失败 ID: {}", id, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "读取位置表失败: " + e.getMessage()));
+        }
+    }
+
+    // 按阅读顺序下标读取单个章节
+    @GetMapping("/books/{id}/chapters/{index}")
+    public ResponseEntity<byte[]> getChapter(@PathVariable Long id, @PathVariable int index, WebRequest request) {
+        try (EpubContentService.Lease lease = epubContentService.open(id)) {
+            if (lease == null) {
+                return ResponseEntity.notFound().build();
+            }
+            EpubArchive archive = lease.archive();
+            List<EpubArchive.ManifestItem> spine = archive.getSpine();
+            if (index < 0 || index >= spine.size()) {
+                return ResponseEntity.notFound().build();
+            }
+            EpubArchive.ManifestItem item = spine.get(index);
+            return serveEntry(archive, item.getHref(), item.getMediaType(), true, request);
+        } catch (Exception e) {
+            log.error("读取章节失败 ID: {} 章节: {}", id, index, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    // 按 ZIP 内路径读取图片、样式等资源
+    @GetMapping("/books/{id}/resources/{*path}")
+    public ResponseEntity<byte[]> getResource(@PathVariable Long id, @PathVariable String path, WebRequest request) {
+        String entryPath = path.startsWith("/") ? path.substring(1) : path;
+        try (EpubContentService.Lease lease = epubContentService.open(id)) {
+            if (lease == null) {
+                return ResponseEntity.notFound().build();
+            }
+            EpubArchive archive = lease.archive();
+            EpubArchive.ManifestItem item = archive.findByHref(entryPath);
+            String mediaType = item != null ? item.getMediaType() : null;
+            return serveEntry(archive, entryPath, mediaType, false, request);
+        } catch (Exception e) {
+            log.error("读取资源失败 ID: {} 路径: {}", id, entryPath, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    // ============= 辅助方法 =============
+
+    private ResponseEntity<byte[]> serveEntry(EpubArchive archive, String entryPath, String mediaType,
+                                              boolean chapter, WebRequest request) throws IOException {
+        ZipEntry entry = archive.getEntry(entryPath);
+        if (entry == null || entry.isDirectory()) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = "\"" + entryTag(entry) + "\"";
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        MediaType contentType = StringUtils.hasText(mediaType)
+                ? MediaType.parseMediaType(mediaType)
+                : MediaTypeFactory.getMediaType(entryPath).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CONTENT_CACHE)
+                .contentType(contentType)
+                .header("Content-Security-Policy", CONTENT_POLICY)
+                .header("X-Content-Type-Options", "nosniff");
+        if (chapter) {
+            // 章节内的相对链接需按此路径解析到 /books/{id}/resources/
+            builder.header("X-Chapter-Href", entryPath);
+        }
+        return builder.body(archive.readEntry(entryPath));
+    }
+
+    private static String entryTag(ZipEntry entry) {
+        return entry == null ? "0" : Long.toHexString(entry.getCrc()) + "-" + Long.toHexString(entry.getSize());
+    }
+}
@@ -1,17 +1,43 @@
 package org.example.epub_demo1.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import org.example.epub_demo1.cache.AfterCommit;
+import org.example.epub_demo1.cache.BookIdFilter;
 import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.entity.BookChange;
+import org.example.epub_demo1.entity.BookCard;
 import org.example.epub_demo1.entity.enums.BookCategory;
+import org.example.epub_demo1.epub.BookLocationsService;
+import org.example.epub_demo1.epub.EpubContentService;
+import org.example.epub_demo1.ingest.EpubIngestService;
 import org.example.epub_demo1.mapper.BookMapper;
+import org.example.epub_demo1.search.CatalogSearchIndex;
+import org.example.epub_demo1.stats.BookStatsService;
+import org.example.epub_demo1.storage.BlobStore;
+import org.example.epub_demo1.storage.CoverColorService;
+import org.example.epub_demo1.sync.BookChangeLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.util.StringUtils;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.Objects;
 import java.util.ArrayList;
 import java.util.stream.Collectors;
 
@@ -19,18 +45,54 @@ import java.util.stream.Collectors;
 @CrossOrigin
 public class BookController {
 
+    private static final Logger log = LoggerFactory.getLogger(BookController.class);
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson;charset=UTF-8");
+
     @Autowired
     private BookMapper bookMapper;
 
     @Autowired
     private BookCacheService bookCacheService;
 
+    @Autowired
+    private EpubContentService epubContentService;
+
+    @Autowired
+    private CatalogSearchIndex catalogSearchIndex;
+
+    @Autowired
+    private BookStatsService bookStatsService;
+
+    @Autowired
+    private BookIdFilter bookIdFilter;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private CoverColorService coverColorService;
+
+    @Autowired
+    private CatalogStreamService catalogStreamService;
+
+    @Autowired
+    private CatalogSnapshotService catalogSnapshotService;
+
+    @Autowired
+    private BookChangeLog bookChangeLog;
+
+    @Autowired
+    private BookLocationsService bookLocationsService;
+
     // 查询书籍 - 公开访问
     @GetMapping("/getall")
-    public ResponseEntity<List<Book>> getAll(
+    public ResponseEntity<?> getAll(
             @RequestParam(required = false) String title,
             @RequestParam(required = false) String author,
-            @RequestParam(required = false) String category
+            @RequestParam(required = false) String category,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
     ) {
         try {
             // 清理参数（空字符串转为null）
@@ -38,33 +100,123 @@ public class BookController {
             author = cleanParam(author);
             category = cleanParam(category);
 
-            // 有查询条件时不使用缓存
+            // 有查询条件时先在内存索引中匹配书名/作者（索引自身按版本缓存查询结果），再按主键批量取书
             if (hasSearchCriteria(title, author, category)) {
-                List<Book> books = bookMapper.getAll(title, author, category);
-                return ResponseEntity.ok(books);
+                List<Long> ids = catalogSearchIndex.search(title, author, category);
+                return ResponseEntity.ok(bookCacheService.getBooks(ids, bookMapper::selectByIds));
             }
 
-            // 尝试从缓存获取所有书籍
-            List<Book> cachedBooks = bookCacheService.getAllBooksFromCache();
-            if (cachedBooks != null) {
-                return ResponseEntity.ok(cachedBooks);
+            // 全部书籍：返回预先序列化、压缩好的快照，客户端已有相同版本时只返回 304
+            CatalogSnapshotService.Snapshot snapshot = catalogSnapshotService.current();
+            if (snapshot.matches(ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(snapshot.etag())
+                        .cacheControl(CacheControl.noCache())
+                        .build();
             }
-
-            // 缓存未命中则查询数据库并缓存结果
-            List<Book> books = bookMapper.getAll(null, null, null);
-            bookCacheService.cacheAllBooks(books);
-            return ResponseEntity.ok(books);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .eTag(snapshot.etag())
+                    .cacheControl(CacheControl.noCache())
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                    .contentType(MediaType.APPLICATION_JSON);
+            if (acceptsGzip(acceptEncoding)) {
+                return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.gzip());
+            }
+            return response.body(snapshot.json());
         } catch (Exception e) {
             logError("获取书籍列表失败", e);
             return ResponseEntity.internalServerError().body(null);
         }
     }
 
+    // 流式查询书籍 - 公开访问；条件与 /getall 相同，返回 NDJSON（每行一本书），数据库边读边写出
+    @GetMapping("/getall/stream")
+    public ResponseEntity<StreamingResponseBody> streamAll(
+            @RequestParam(required = false) String title,
+            @RequestParam(required = false) String author,
+            @RequestParam(required = false) String category,
+            HttpServletRequest request
+    ) {
+        title = cleanParam(title);
+        author = cleanParam(author);
+        category = cleanParam(category);
+        // 检索在返回响应前完成，出错时仍可返回错误状态码
+        List<Long> ids = hasSearchCriteria(title, author, category)
+                ? catalogSearchIndex.search(title, author, category)
+                : null;
+
+        if (!catalogStreamService.tryAcquire(request)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "2")
+                    .build();
+        }
+        StreamingResponseBody body = ids == null
+                ? catalogStreamService::writeAll
+                : out -> catalogStreamService.writeByIds(ids, out);
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(body);
+    }
+
+    // 书架分页 - 公开访问；cursor 为上一页返回的 nextCursor
+    @GetMapping("/books")
+    public ResponseEntity<Map<String, Object>> getBookPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String category
+    ) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        String categoryName = cleanParam(category);
+        String cursorValue = cleanParam(cursor);
+        try {
+            if (categoryName != null) {
+                categoryName = BookCategory.valueOf(categoryName).name();
+            }
+            PageCursor after = cursorValue == null ? null : PageCursor.decode(cursorValue);
+            String filter = categoryName;
+            String pageKey = (categoryName == null ? "all" : categoryName) + ":" + limit + ":"
+                    + (cursorValue == null ? "first" : cursorValue);
+            Map<String, Object> page = bookCacheService.getPage(pageKey, () -> loadPage(filter, after, limit));
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "参数错误: " + e.getMessage()));
+        } catch (Exception e) {
+            logError("获取书架分页失败", e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "获取书籍列表失败: " + e.getMessage()));
+        }
+    }
+
+    // 增量同步 - 公开访问；since 为上次同步返回的 version，首次同步不传或传 0 得到全量
+    @GetMapping("/books/changes")
+    public ResponseEntity<Map<String, Object>> getChanges(@RequestParam(defaultValue = "0") long since) {
+        try {
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .body(bookChangeLog.changesSince(since));
+        } catch (Exception e) {
+            logError("获取书籍变更失败 since: " + since, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "获取书籍变更失败: " + e.getMessage()));
+        }
+    }
+
+    // 查询单本书籍 - 公开访问
+    @GetMapping("/books/{id}")
+    public ResponseEntity<Book> getBook(@PathVariable Long id) {
+        try {
+            Book book = bookCacheService.getBook(id, bookMapper::selectById);
+            return book == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(book);
+        } catch (Exception e) {
+            logError("获取书籍失败 ID: " + id, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     // 删除书籍 - 需要认证
     @DeleteMapping("/delebook")
+    @Transactional
     public ResponseEntity<String> deleteBook(@RequestParam("id") int id) {
         try {
-            // 先查询书籍是否存在
+            // 先查询书籍是否存在（在事务内读数据库，缓存可能是旧值）
             Book book = bookMapper.selectById((long) id);
             if (book == null) {
                 return ResponseEntity.badRequest().body("书籍不存在");
@@ -72,72 +224,139 @@ public class BookController {
 
             int result = bookMapper.DeleBook(id);
             if (result > 0) {
-                // 清除缓存
-                bookCacheService.clearBookCache((long) id);
-                bookCacheService.clearAllBooksCache();
+                bookChangeLog.record(List.of((long) id), BookChange.Op.DELETE);
+                // 清除缓存（事务提交后统一执行）
+                bookCacheService.invalidateBooks(List.of((long) id));
+                AfterCommit.run(() -> releaseFiles(book.getEpubFileName(), book.getCoverImagePath()));
+                catalogSearchIndex.bookChanged((long) id);
+                bookStatsService.bookDeleted(book.getCategory());
+                epubContentService.evictBook((long) id);
                 return ResponseEntity.ok("书籍删除成功");
             }
             return ResponseEntity.badRequest().body("书籍删除失败");
         } catch (Exception e) {
             logError("删除书籍失败 ID: " + id, e);
+            // 异常已被捕获，需显式回滚，书籍和变更日志要么都写入要么都不写
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return ResponseEntity.internalServerError().body("服务器错误: " + e.getMessage());
         }
     }
 
     // 添加书籍 - 需要认证
     @PostMapping("/addbook")
+    @Transactional
     public ResponseEntity<String> addBook(@RequestBody Book book) {
         try {
+            if (StringUtils.hasText(book.getEpubFileName()) && !blobStore.isValidEpubName(book.getEpubFileName())) {
+                return ResponseEntity.badRequest().body("epubFileName 无效");
+            }
             book.setUploadTime(LocalDateTime.now());
 
             // 确保封面路径不为空
             if (book.getCoverImagePath() == null || book.getCoverImagePath().isEmpty()) {
                 // 尝试从封面URL中提取路径
                 if (book.getCoverUrl() != null) {
-                    String coverPath = book.getCoverUrl().substring(book.getCoverUrl().lastIndexOf("/") + 1);
+                    // 内容寻址的封面路径带分片目录，只去掉 /covers/ 前缀
+                    String coverUrl = book.getCoverUrl();
+                    int prefix = coverUrl.indexOf("/covers/");
+                    String coverPath = prefix >= 0 ? coverUrl.substring(prefix + "/covers/".length())
+                            : coverUrl.substring(coverUrl.lastIndexOf("/") + 1);
                     book.setCoverImagePath(coverPath);
-                    System.out.println("从coverUrl提取封面路径: " + coverPath);
                 } else {
                     book.setCoverImagePath("default-cover.jpg");
-                    System.out.println("使用默认封面路径");
                 }
             }
 
-            System.out.println("添加书籍 - 封面路径: " + book.getCoverImagePath());
+            log.debug("添加书籍 - 封面路径: {}", book.getCoverImagePath());
+            if (book.getCoverColor() != null) {
+                String coverColor = CoverColorService.normalize(book.getCoverColor());
+                if (coverColor == null) {
+                    return ResponseEntity.badRequest().body("coverColor 无效");
+                }
+                book.setCoverColor(coverColor);
+            } else {
+                // 入库解析时已算好，一般直接命中缓存；未命中时提交后在缩略图线程池中计算
+                book.setCoverColor(coverColorService.cached(book.getCoverImagePath()));
+            }
+            if (book.getWordCount() == null) {
+                // 入库时已生成位置表，一般直接读取
+                applyReadingStats(book);
+            }
 
             int result = bookMapper.addBook(book);
             if (result > 0) {
-                // 清除缓存
-                bookCacheService.clearAllBooksCache();
+                bookChangeLog.record(List.of(book.getId()), BookChange.Op.UPSERT);
+                // 提交后再加入过滤器，回滚的 ID 不会留在过滤器中
+                Long id = book.getId();
+                AfterCommit.run(() -> bookIdFilter.add(id));
+                // 清除缓存（包括之前对该 ID 缓存的空对象）
+                bookCacheService.invalidateBooks(List.of(id));
+                catalogSearchIndex.bookChanged(book.getId());
+                bookStatsService.bookAdded(book.getCategory());
+                if (book.getCoverColor() == null) {
+                    coverColorService.fillLater(id, book.getCoverImagePath());
+                }
                 return ResponseEntity.ok("书籍添加成功");
             }
             return ResponseEntity.badRequest().body("书籍添加失败");
         } catch (Exception e) {
             logError("添加书籍失败", e);
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return ResponseEntity.internalServerError().body("服务器错误: " + e.getMessage());
         }
     }
 
     // 修改书籍 - 需要认证
     @PutMapping("/upbook")
+    @Transactional
     public ResponseEntity<String> updateBook(@RequestBody Book book) {
         try {
-            // 先查询书籍是否存在
-            Book existingBook = bookMapper.selectById(book.getId());
+            // 先查询书籍是否存在（在事务内读数据库，旧文件回收和分类计数以此为准）
+            Book existingBook = book.getId() == null ? null : bookMapper.selectById(book.getId());
             if (existingBook == null) {
                 return ResponseEntity.badRequest().body("书籍不存在");
             }
+            if (StringUtils.hasText(book.getEpubFileName()) && !blobStore.isValidEpubName(book.getEpubFileName())) {
+                return ResponseEntity.badRequest().body("epubFileName 无效");
+            }
+
+            if (book.getCoverColor() != null) {
+                String coverColor = CoverColorService.normalize(book.getCoverColor());
+                if (coverColor == null) {
+                    return ResponseEntity.badRequest().body("coverColor 无效");
+                }
+                book.setCoverColor(coverColor);
+            }
+            if (book.getCoverColor() == null
+                    || !Objects.equals(existingBook.getCoverImagePath(), book.getCoverImagePath())) {
+                book.setCoverColor(coverColorService.cached(book.getCoverImagePath()));
+            }
+            if (book.getWordCount() == null
+                    || !Objects.equals(existingBook.getEpubFileName(), book.getEpubFileName())) {
+                applyReadingStats(book);
+            }
 
             int result = bookMapper.upBook(book);
             if (result > 0) {
+                bookChangeLog.record(List.of(book.getId()), BookChange.Op.UPSERT);
                 // 清除缓存
-                bookCacheService.clearBookCache(book.getId());
-                bookCacheService.clearAllBooksCache();
+                bookCacheService.invalidateBooks(List.of(book.getId()));
+                catalogSearchIndex.bookChanged(book.getId());
+                bookStatsService.categoryChanged(existingBook.getCategory(), book.getCategory());
+                if (book.getCoverColor() == null) {
+                    coverColorService.fillLater(book.getId(), book.getCoverImagePath());
+                }
+                // 更换了文件时回收旧文件
+                AfterCommit.run(() -> releaseFiles(
+                        Objects.equals(existingBook.getEpubFileName(), book.getEpubFileName()) ? null : existingBook.getEpubFileName(),
+                        Objects.equals(existingBook.getCoverImagePath(), book.getCoverImagePath()) ? null : existingBook.getCoverImagePath()));
+                epubContentService.evictBook(book.getId());
                 return ResponseEntity.ok("书籍更新成功");
             }
             return ResponseEntity.badRequest().body("书籍更新失败");
         } catch (Exception e) {
             logError("更新书籍失败 ID: " + book.getId(), e);
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return ResponseEntity.internalServerError().body("服务器错误: " + e.getMessage());
         }
     }
@@ -146,42 +365,8 @@ public class BookController {
     @GetMapping("/statistics")
     public ResponseEntity<Map<String, Object>> getBookStatistics() {
         try {
-            // 尝试从缓存获取
-            Map<String, Object> cachedStats = bookCacheService.getStatsFromCache();
-            if (cachedStats != null) {
-                return ResponseEntity.ok(cachedStats);
-            }
-
-            // 缓存未命中则查询数据库
-            int totalBooks = bookMapper.countTotalBooks();
-            List<Map<String, Object>> categoryStats = bookMapper.countBooksByCategory();
-
-            // 将枚举值转换为中文
-            Map<String, String> categoryMap = new HashMap<>();
-            for (BookCategory category : BookCategory.values()) {
-                categoryMap.put(category.name(), category.getChineseName());
-            }
-
-            // 处理统计结果
-            List<Map<String, Object>> formattedStats = new ArrayList<>();
-            for (Map<String, Object> stat : categoryStats) {
-                String category = (String) stat.get("category");
-                int count = ((Long) stat.get("count")).intValue();
-
-                formattedStats.add(Map.of(
-                        "name", categoryMap.getOrDefault(category, "其他分类"),
-                        "count", count
-                ));
-            }
-
-            Map<String, Object> stats = Map.of(
-                    "total", totalBooks,
-                    "categories", formattedStats
-            );
-
-            // 缓存统计结果
-            bookCacheService.cacheStats(stats);
-
+            // 分类计数随书籍增删改增量维护，这里只读一次 Redis 哈希
+            Map<String, Object> stats = bookStatsService.getStats();
             return ResponseEntity.ok(stats);
         } catch (Exception e) {
             logError("获取统计信息失败", e);
@@ -193,18 +378,111 @@ public class BookController {
 
     // ============= 辅助方法 =============
 
+    private Map<String, Object> loadPage(String category, PageCursor after, int limit) {
+        // 多取一条判断是否还有下一页
+        List<BookCard> cards = bookMapper.selectPage(category,
+                after == null ? null : after.uploadTime,
+                after == null ? null : after.id,
+                limit + 1);
+        String nextCursor = null;
+        if (cards.size() > limit) {
+            cards = new ArrayList<>(cards.subList(0, limit));
+            BookCard last = cards.get(limit - 1);
+            nextCursor = new PageCursor(last.getUploadTime(), last.getId()).encode();
+        }
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("items", cards);
+        page.put("size", cards.size());
+        page.put("nextCursor", nextCursor);
+        return page;
+    }
+
+    // 字数和阅读时长取自 EPUB 的位置表；文件不存在时保持为空
+    private void applyReadingStats(Book book) {
+        if (!StringUtils.hasText(book.getEpubFileName())) {
+            return;
+        }
+        try {
+            bookLocationsService.applyStats(book, blobStore.epubPath(book.getEpubFileName()));
+        } catch (IOException e) {
+            log.warn("读取位置表失败 {}: {}", book.getEpubFileName(), e.getMessage());
+        }
+    }
+
+    // 文件不再被任何书籍引用时回收（全文索引等派生数据由 BlobStore 随文件删除）
+    private void releaseFiles(String epubFileName, String coverImagePath) {
+        if (epubFileName != null) {
+            blobStore.releaseEpub(epubFileName);
+        }
+        if (coverImagePath != null && !coverImagePath.equals(EpubIngestService.DEFAULT_COVER)) {
+            blobStore.releaseCover(coverImagePath);
+        }
+    }
+
     private boolean hasSearchCriteria(String title, String author, String category) {
         return StringUtils.hasText(title) ||
                 StringUtils.hasText(author) ||
                 StringUtils.hasText(category);
     }
 
+    // Accept-Encoding 中有 gzip（或 *）且 q 不为 0
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim();
+            if (!coding.equalsIgnoreCase("gzip") && !coding.equals("*")) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < tokens.length; i++) {
+                String param = tokens[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            return !refused;
+        }
+        return false;
+    }
+
     private String cleanParam(String param) {
         return StringUtils.hasText(param) ? param.trim() : null;
     }
 
     private void logError(String message, Exception e) {
-        System.err.println("ERROR: " + message);
-        e.printStackTrace();
+        log.error(message, e);
+    }
+
+    // 游标：最后一条记录的 (upload_time, id)，Base64 编码后对客户端不透明
+    private static class PageCursor {
+        final LocalDateTime uploadTime;
+        final Long id;
+
+        PageCursor(LocalDateTime uploadTime, Long id) {
+            this.uploadTime = uploadTime;
+            this.id = id;
+        }
+
+        String encode() {
+            String raw = uploadTime + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static PageCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int bar = raw.indexOf('|');
+                return new PageCursor(LocalDateTime.parse(raw.substring(0, bar)), Long.valueOf(raw.substring(bar + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("无效的游标");
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,157 @@
+package org.example.epub_demo1.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * /getall（无条件）的响应快照：书籍列表序列化并 gzip 压缩一次，按目录版本号失效。
+ * ETag 为 JSON 内容的 SHA-256，各节点对相同数据得到相同的 ETag。
+ * 只保存压缩后的字节；不接受 gzip 的客户端按需解压，这类请求很少。
+ */
+@Service
+public class CatalogSnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogSnapshotService.class);
+
+    @Autowired
+    private BookCacheService bookCacheService;
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ReentrantLock buildLock = new ReentrantLock();
+    private volatile Snapshot snapshot;
+    private ObjectWriter writer;
+    private Timer buildTimer;
+
+    @PostConstruct
+    public void init() {
+        writer = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, Book.class));
+        buildTimer = Timer.builder("catalog.snapshot.build")
+                .description("书籍列表快照的序列化和压缩耗时")
+                .register(meterRegistry);
+        Gauge.builder("catalog.snapshot.bytes", this, service -> {
+                    Snapshot current = service.snapshot;
+                    return current == null ? 0 : current.gzip().length;
+                })
+                .description("书籍列表快照压缩后大小")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 当前目录版本的快照；版本变化后第一个请求负责重建，同时到达的请求等待其结果。
+     */
+    public Snapshot current() {
+        String version = bookCacheService.catalogVersion();
+        Snapshot current = snapshot;
+        if (current != null && current.version().equals(version)) {
+            return current;
+        }
+        buildLock.lock();
+        try {
+            current = snapshot;
+            if (current != null && current.version().equals(version)) {
+                return current;
+            }
+            // 按同一版本号读取书籍列表缓存，不会拿到变更前的旧列表；加载期间的变更会使版本号再次递增，下一个请求重建
+            List<Book> books = bookCacheService.getAllBooks(version, () -> bookMapper.getAll(null, null, null));
+            current = buildTimer.record(() -> build(version, books));
+            if (!version.equals(bookCacheService.catalogVersion())) {
+                // 构建期间目录已变更：本次照常返回，不保存，由下一个请求按新版本号重建
+                return current;
+            }
+            snapshot = current;
+            log.debug("书籍列表快照已重建: 版本 {}, {} 本, {} 字节 (gzip)", version, books.size(), current.gzip().length);
+            return current;
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    private Snapshot build(String version, List<Book> books) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            // 摘要基于未压缩的 JSON，与压缩级别无关
+            try (OutputStream gzip = new BestCompressionGzip(compressed);
+                 OutputStream out = new DigestOutputStream(gzip, digest)) {
+                writer.writeValue(out, books);
+            }
+            String etag = "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+            return new Snapshot(version, etag, compressed.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param etag 带引号的强 ETag
+     * @param gzip gzip 压缩后的 JSON 数组
+     */
+    public record Snapshot(String version, String etag, byte[] gzip) {
+
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String value = candidate.trim();
+                if (value.equals("*") || value.equals(etag) || value.equals("W/" + etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // 未压缩的 JSON（仅用于不接受 gzip 的客户端）
+        public byte[] json() {
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // 快照只压缩一次，用最高压缩级别
+    private static class BestCompressionGzip extends GZIPOutputStream {
+        BestCompressionGzip(OutputStream out) throws IOException {
+            super(out, 64 * 1024);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+}
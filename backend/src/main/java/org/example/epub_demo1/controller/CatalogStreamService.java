@@ -0,0 +1,146 @@
+package org.example.epub_demo1.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 书籍列表的流式输出（NDJSON，每行一本书）。
+ * 全表通过 MyBatis Cursor 逐行读取、逐行序列化，内存占用与书库规模无关；
+ * 带检索条件时按 ID 分批经缓存读取。
+ * 流式读取期间一直占用一个数据库连接（慢客户端也一样），同时进行的流数量受 catalog.stream.max-concurrent 限制。
+ */
+@Service
+public class CatalogStreamService {
+
+    // 每批按 ID 回填的书籍数
+    private static final int ID_BATCH = 500;
+    // 每写出这么多行刷新一次，客户端可以边收边渲染
+    private static final int FLUSH_EVERY = 200;
+    private static final String PERMIT_KEY = CatalogStreamService.class.getName() + ".permit";
+
+    @Value("${catalog.stream.max-concurrent:8}")
+    private int maxConcurrent;
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    @Autowired
+    private BookCacheService bookCacheService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Semaphore permits;
+    private ObjectWriter writer;
+    private Counter rowsCounter;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrent);
+        // 逐行 flush 会产生大量小分块，改为按 FLUSH_EVERY 手动刷新
+        writer = objectMapper.writerFor(Book.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
+        Gauge.builder("catalog.stream.active", permits, p -> maxConcurrent - p.availablePermits())
+                .description("进行中的书籍列表流")
+                .register(meterRegistry);
+        rowsCounter = Counter.builder("catalog.stream.rows")
+                .description("流式输出的书籍行数")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("catalog.stream.rejected")
+                .description("因并发已满被拒绝的流")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 占用一个流式输出名额；返回 false 时调用方应返回 503。
+     * 名额随本次请求的异步处理结束而释放（正常结束、超时、出错，或输出任务被拒绝而根本没有执行），
+     * 不依赖 writeAll/writeByIds 被调用。
+     */
+    public boolean tryAcquire(HttpServletRequest request) {
+        if (!permits.tryAcquire()) {
+            rejectedCounter.increment();
+            return false;
+        }
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(PERMIT_KEY, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                permits.release();
+            }
+        });
+        return true;
+    }
+
+    // 全部书籍，按 ID 升序
+    public void writeAll(OutputStream out) throws IOException {
+        try (SqlSession session = sqlSessionFactory.openSession();
+             Cursor<Book> cursor = session.getMapper(BookMapper.class).streamAll();
+             SequenceWriter sequence = writer.writeValues(out)) {
+            int rows = 0;
+            for (Book book : cursor) {
+                sequence.write(book);
+                if (++rows % FLUSH_EVERY == 0) {
+                    sequence.flush();
+                }
+            }
+            finish(sequence, rows, out);
+        }
+    }
+
+    // 检索结果，按 ids 的顺序
+    public void writeByIds(List<Long> ids, OutputStream out) throws IOException {
+        try (SequenceWriter sequence = writer.writeValues(out)) {
+            int rows = 0;
+            for (int from = 0; from < ids.size(); from += ID_BATCH) {
+                List<Long> batch = ids.subList(from, Math.min(from + ID_BATCH, ids.size()));
+                for (Book book : bookCacheService.getBooks(batch, bookMapper::selectByIds)) {
+                    sequence.write(book);
+                    rows++;
+                }
+                sequence.flush();
+            }
+            finish(sequence, rows, out);
+        }
+    }
+
+    // 最后一行也以换行结尾，便于客户端按行切分
+    private void finish(SequenceWriter sequence, int rows, OutputStream out) throws IOException {
+        sequence.flush();
+        if (rows > 0) {
+            out.write('\n');
+        }
+        out.flush();
+        rowsCounter.increment(rows);
+    }
+}
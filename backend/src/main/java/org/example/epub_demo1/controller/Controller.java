@@ -1,132 +1,185 @@
 package org.example.epub_demo1.controller;
 
-import io.micrometer.common.util.StringUtils;
-import jakarta.annotation.PostConstruct;
-import nl.siegmann.epublib.domain.Author;
-import nl.siegmann.epublib.domain.Metadata;
-import nl.siegmann.epublib.domain.Resource;
-import nl.siegmann.epublib.epub.EpubReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.entity.enums.BookCategory;
+import org.example.epub_demo1.ingest.BulkImportService;
+import org.example.epub_demo1.ingest.ImportJob;
+import org.example.epub_demo1.ingest.UploadJob;
+import org.example.epub_demo1.ingest.UploadJobService;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.example.epub_demo1.storage.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.lang.module.Configuration;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @CrossOrigin
 public class Controller {
 
-    private final Path rootLocation = Paths.get("uploads");
-    private final Path coverLocation = Paths.get("covers");
+    private static final Logger log = LoggerFactory.getLogger(Controller.class);
 
-    @PostConstruct
-    public void init() {
-        try {
-            Files.createDirectories(rootLocation);
-            Files.createDirectories(coverLocation);
-        } catch (IOException e) {
-            throw new RuntimeException("Could not initialize storage", e);
-        }
-    }
+    @Autowired
+    private UploadJobService uploadJobService;
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
 
     @PostMapping("/upload")
     public ResponseEntity<Map<String, Object>> handleFileUpload(@RequestParam("file") MultipartFile file) {
+        Path tempPath = null;
         try {
-            // 保存文件
-            String filename = UUID.randomUUID() + "_" + file.getOriginalFilename();
-            Path targetPath = this.rootLocation.resolve(filename);
-            Files.copy(file.getInputStream(), targetPath);
-
-            // 解析 EPUB 元数据
-            Map<String, String> metadata = parseEpubMetadata(file.getInputStream());
+            // 容器已落盘的临时文件直接移动到存储目录，再按内容哈希命名；相同内容只保存一份
+            tempPath = blobStore.newUploadTempPath();
+            Timer.Sample sample = Timer.start(meterRegistry);
+            file.transferTo(tempPath.toFile());
+            sample.stop(stageTimer("copy"));
+
+            sample = Timer.start(meterRegistry);
+            BlobStore.Blob blob = blobStore.storeEpub(tempPath);
+            sample.stop(stageTimer("store"));
+            tempPath = null;
+
+            // 同一本书已入库：直接返回已有的元数据，不再解析
+            if (!blob.created()) {
+                List<Book> existing = bookMapper.selectByEpubFileNames(List.of(blob.name()));
+                if (!existing.isEmpty()) {
+                    return ResponseEntity.ok(duplicateResponse(blob.name(), existing.get(0)));
+                }
+            }
 
-            // 返回结果（包含文件名和元数据）
-            Map<String, Object> response = new HashMap<>();
-            response.put("fileName", filename);
-            response.put("metadata", metadata);
-            response.put("coverImagePath", metadata.get("coverImagePath")); // 新增封面路径返回
+            // 元数据解析、封面保存和索引在后台队列中完成，客户端通过任务状态接口查询结果
+            UploadJob job = uploadJobService.submit(blob.name(), blobStore.epubPath(blob.name()));
 
-            return ResponseEntity.ok(response);
+            Map<String, Object> response = job.toResponse();
+            response.put("statusUrl", "/upload/jobs/" + job.getId());
+            return ResponseEntity.accepted().body(response);
+        } catch (RejectedExecutionException e) {
+            // 已存入的文件未被引用，由存储定时清理回收
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "上传队列已满，请稍后重试");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .body(error);
         } catch (Exception e) {
+            log.error("上传失败: {}", file.getOriginalFilename(), e);
+            deleteQuietly(tempPath);
             Map<String, Object> error = new HashMap<>();
             error.put("error", "上传失败: " + e.getMessage());
             return ResponseEntity.status(500).body(error);
         }
     }
 
-    private <EpubBook> Map<String, String> parseEpubMetadata(InputStream epubStream) {
-        Map<String, String> metadata = new HashMap<>();
+    // 批量导入服务器本地目录或 ZIP（路径相对 import.root-dir）- 需要认证；导入在后台执行，通过任务状态接口查询报告
+    @PostMapping("/books/import")
+    public ResponseEntity<Map<String, Object>> importBooks(@RequestParam("path") String path,
+                                                           @RequestParam(value = "category", defaultValue = "OTHER") String category) {
+        Map<String, Object> error = new HashMap<>();
         try {
-            EpubBook epubBook = (EpubBook) new EpubReader().readEpub(epubStream);
-            Metadata meta = ((nl.siegmann.epublib.domain.Book) epubBook).getMetadata();
+            ImportJob job = bulkImportService.submit(path, BookCategory.valueOf(category));
+            Map<String, Object> response = job.toResponse();
+            response.put("statusUrl", "/books/import/jobs/" + job.getId());
+            return ResponseEntity.accepted().body(response);
+        } catch (IllegalArgumentException e) {
+            error.put("error", "导入参数无效: " + e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (IllegalStateException e) {
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        } catch (Exception e) {
+            log.error("导入失败: {}", path, e);
+            error.put("error", "导入失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(error);
+        }
+    }
 
-            // 解析标题
-            String title = meta.getFirstTitle();
-            if (StringUtils.isBlank(title)) {
-                title = "未知标题";
-            }
-            metadata.put("title", title);
-
-            // 解析作者
-            String author = meta.getAuthors().stream()
-                    .findFirst()
-                    .map(Author::toString)
-                    .orElse("未知作者");
-            metadata.put("author", author);
-
-            // 解析描述
-            String description = meta.getDescriptions().stream()
-                    .findFirst()
-                    .orElse("");
-            metadata.put("description", description);
-
-            // 修复：正确的封面获取方式
-            Resource coverImage = ((nl.siegmann.epublib.domain.Book) epubBook).getCoverImage();
-            if (coverImage != null) {
-                // 生成唯一的封面文件名
-                String coverFileName = "cover_" + UUID.randomUUID() + getImageExtension(coverImage);
-                Path coverPath = this.coverLocation.resolve(coverFileName);
-
-                // 保存封面图片
-                try (OutputStream out = Files.newOutputStream(coverPath)) {
-                    out.write(coverImage.getData());
-                }
-                metadata.put("coverImagePath", coverFileName);
-            } else {
-                metadata.put("coverImagePath", "default-cover.jpg");
-            }
+    // 查询批量导入进度，完成后包含导入报告 - 需要认证
+    @GetMapping("/books/import/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> getImportJob(@PathVariable String id) {
+        ImportJob job = bulkImportService.getJob(id);
+        if (job == null) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "任务不存在或已过期");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+        return ResponseEntity.ok(job.toResponse());
+    }
 
-        } catch (Exception e) {
-            // 解析失败时设置默认值
-            metadata.put("title", "未知标题");
-            metadata.put("author", "未知作者");
-            metadata.put("description", "");
-            metadata.put("cover_image_path", "default-cover.jpg");
+    // 查询上传处理进度
+    @GetMapping("/upload/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> getUploadJob(@PathVariable String id) {
+        UploadJob job = uploadJobService.getJob(id);
+        if (job == null) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "任务不存在或已过期");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
         }
-        return metadata;
+        return ResponseEntity.ok(job.toResponse());
     }
 
-    // 获取图片扩展名
-    private String getImageExtension(Resource resource) {
+    // 与上传任务完成时的响应格式一致
+    private static Map<String, Object> duplicateResponse(String fileName, Book book) {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("title", book.getTitle());
+        metadata.put("author", book.getAuthor());
+        metadata.put("description", book.getDescription() == null ? "" : book.getDescription());
+        metadata.put("coverImagePath", book.getCoverImagePath());
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("fileName", fileName);
+        response.put("status", UploadJob.Status.DONE);
+        response.put("progress", 100);
+        response.put("duplicate", true);
+        response.put("metadata", metadata);
+        response.put("coverImagePath", book.getCoverImagePath());
+        return response;
+    }
+
+    // 与 EpubIngestService 的解析阶段共用同一指标，上传全流程各阶段可在一处对比
+    private Timer stageTimer(String stage) {
+        return Timer.builder("epub.ingest.stage")
+                .description("EPUB 入库各阶段耗时")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
         try {
-            String mimeType = resource.getMediaType().toString();
-            if (mimeType.equals("image/jpeg")) return ".jpg";
-            if (mimeType.equals("image/png")) return ".png";
-            return ".jpg"; // 默认
-        } catch (Exception e) {
-            return ".jpg";
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // 删除失败不影响响应
         }
     }
 }
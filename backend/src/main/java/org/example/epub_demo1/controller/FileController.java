@@ -0,0 +1,86 @@
+package org.example.epub_demo1.controller;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.epub_demo1.storage.BlobStore;
+import org.example.epub_demo1.storage.CoverThumbnailService;
+import org.example.epub_demo1.storage.StaticFileService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+// EPUB 和封面文件下载（支持断点续传和条件请求）
+@RestController
+@CrossOrigin
+public class FileController {
+
+    // EPUB 每次都重新校验（命中时只返回 304）
+    private static final CacheControl EPUB_CACHE = CacheControl.noCache();
+    // 封面不常更新，缓存24小时
+    private static final CacheControl COVER_CACHE = CacheControl.maxAge(24, TimeUnit.HOURS).cachePublic();
+    // 内容寻址封面的缩略图内容永不改变
+    private static final CacheControl THUMBNAIL_CACHE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable();
+    // 缩略图尚未生成时临时返回原图，只短暂缓存
+    private static final CacheControl FALLBACK_CACHE = CacheControl.maxAge(1, TimeUnit.MINUTES).cachePublic();
+
+    @Value("${file.upload-dir}")
+    private String uploadDir;
+
+    @Value("${cover.upload-dir}")
+    private String coverDir;
+
+    @Autowired
+    private StaticFileService staticFileService;
+
+    @Autowired
+    private CoverThumbnailService coverThumbnailService;
+
+    private Path uploadLocation;
+    private Path coverLocation;
+
+    @PostConstruct
+    public void init() {
+        uploadLocation = Paths.get(uploadDir);
+        coverLocation = Paths.get(coverDir);
+    }
+
+    @RequestMapping(value = "/uploads/{*path}", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void getEpub(@PathVariable String path, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        staticFileService.serve(uploadLocation, stripSlash(path), "epub", EPUB_CACHE, request, response);
+    }
+
+    // w 为期望宽度，返回不小于该宽度的最接近尺寸的缩略图
+    @RequestMapping(value = "/covers/{*path}", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void getCover(@PathVariable String path, @RequestParam(value = "w", required = false) Integer width,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String coverName = stripSlash(path);
+        if (width == null || width <= 0) {
+            staticFileService.serve(coverLocation, coverName, "cover", COVER_CACHE, request, response);
+            return;
+        }
+        String thumbnail = coverThumbnailService.thumbnailPath(coverName, width);
+        if (thumbnail == null) {
+            staticFileService.serve(coverLocation, coverName, "cover", FALLBACK_CACHE, request, response);
+            return;
+        }
+        staticFileService.serve(coverLocation, thumbnail, "thumbnail",
+                BlobStore.isBlobName(coverName) ? THUMBNAIL_CACHE : COVER_CACHE, request, response);
+    }
+
+    private static String stripSlash(String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+}
@@ -0,0 +1,170 @@
+package org.example.epub_demo1.controller;
+
+import org.example.epub_demo1.cache.BookIdFilter;
+import org.example.epub_demo1.entity.Bookmark;
+import org.example.epub_demo1.entity.ReadingProgress;
+import org.example.epub_demo1.mapper.BookmarkMapper;
+import org.example.epub_demo1.reading.ReadingProgressService;
+import org.example.epub_demo1.security.CurrentUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 阅读进度和书签 - 需要认证，数据按当前登录用户区分。
+ */
+@RestController
+@CrossOrigin
+public class ReadingController {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadingController.class);
+    private static final int MAX_CFI_LENGTH = 512;
+    private static final int MAX_LABEL_LENGTH = 255;
+    private static final int MAX_RECENT = 100;
+
+    @Autowired
+    private ReadingProgressService readingProgressService;
+
+    @Autowired
+    private BookmarkMapper bookmarkMapper;
+
+    @Autowired
+    private BookIdFilter bookIdFilter;
+
+    @Autowired
+    private CurrentUser currentUser;
+
+    // 保存阅读位置，每次翻页调用；updatedAt 可选（离线阅读后补传时使用），不能晚于服务器当前时间
+    @PutMapping("/books/{id}/progress")
+    public ResponseEntity<?> saveProgress(@PathVariable Long id, @RequestBody ReadingProgress progress,
+                                          Authentication authentication) {
+        Integer userId = currentUser.id(authentication);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (!validCfi(progress.getCfi()) || !bookIdFilter.mightContain(id)
+                || (progress.getPercentage() != null && (progress.getPercentage() < 0 || progress.getPercentage() > 1))) {
+            return ResponseEntity.badRequest().body(Map.of("error", "阅读位置无效"));
+        }
+        long now = System.currentTimeMillis();
+        progress.setUserId(userId);
+        progress.setBookId(id);
+        if (progress.getUpdatedAt() == null || progress.getUpdatedAt() > now) {
+            progress.setUpdatedAt(now);
+        }
+        try {
+            readingProgressService.save(progress);
+            return ResponseEntity.noContent().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // 读取阅读位置，没有记录时返回 204
+    @GetMapping("/books/{id}/progress")
+    public ResponseEntity<ReadingProgress> getProgress(@PathVariable Long id, Authentication authentication) {
+        Integer userId = currentUser.id(authentication);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            ReadingProgress progress = readingProgressService.get(userId, id);
+            return progress == null
+                    ? ResponseEntity.noContent().build()
+                    : ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(progress);
+        } catch (Exception e) {
+            log.error("获取阅读进度失败 书籍 ID: {}", id, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    // 最近阅读的书
+    @GetMapping("/progress")
+    public ResponseEntity<List<ReadingProgress>> getRecent(@RequestParam(defaultValue = "20") int limit,
+                                                           Authentication authentication) {
+        Integer userId = currentUser.id(authentication);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .body(readingProgressService.recent(userId, Math.max(1, Math.min(limit, MAX_RECENT))));
+        } catch (Exception e) {
+            log.error("获取最近阅读失败", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    @GetMapping("/books/{id}/bookmarks")
+    public ResponseEntity<List<Bookmark>> getBookmarks(@PathVariable Long id, Authentication authentication) {
+        Integer userId = currentUser.id(authentication);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .body(bookmarkMapper.selectByBook(userId, id));
+        } catch (Exception e) {
+            log.error("获取书签失败 书籍 ID: {}", id, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    // 书签不频繁，直接写数据库
+    @PostMapping("/books/{id}/bookmarks")
+    public ResponseEntity<?> addBookmark(@PathVariable Long id, @RequestBody Bookmark bookmark,
+                                         Authentication authentication) {
+        Integer userId = currentUser.id(authentication);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (!validCfi(bookmark.getCfi()) || !bookIdFilter.mightContain(id)
+                || (bookmark.getLabel() != null && bookmark.getLabel().length() > MAX_LABEL_LENGTH)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "书签无效"));
+        }
+        bookmark.setId(null);
+        bookmark.setUserId(userId);
+        bookmark.setBookId(id);
+        bookmark.setCreatedAt(LocalDateTime.now());
+        try {
+            bookmarkMapper.addBookmark(bookmark);
+            return ResponseEntity.ok(bookmark);
+        } catch (Exception e) {
+            log.error("添加书签失败 书籍 ID: {}", id, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "添加书签失败: " + e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/books/{id}/bookmarks/{bookmarkId}")
+    public ResponseEntity<Void> deleteBookmark(@PathVariable Long id, @PathVariable Long bookmarkId,
+                                               Authentication authentication) {
+        Integer userId = currentUser.id(authentication);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            return bookmarkMapper.deleteBookmark(bookmarkId, userId, id) > 0
+                    ? ResponseEntity.noContent().build()
+                    : ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            log.error("删除书签失败 ID: {}", bookmarkId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    private static boolean validCfi(String cfi) {
+        return StringUtils.hasText(cfi) && cfi.length() <= MAX_CFI_LENGTH;
+    }
+}
@@ -0,0 +1,134 @@
+package org.example.epub_demo1.controller;
+
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.example.epub_demo1.search.BookSearchIndex;
+import org.example.epub_demo1.search.CatalogSearchIndex;
+import org.example.epub_demo1.search.SearchIndexService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@RestController
+@CrossOrigin
+public class SearchController {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchController.class);
+    private static final int MAX_LIMIT = 100;
+    private static final int MAX_SUGGESTIONS = 20;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    @Autowired
+    private CatalogSearchIndex catalogSearchIndex;
+
+    @Autowired
+    private BookCacheService bookCacheService;
+
+    // 书名/作者输入联想 - 公开访问；支持全拼和拼音首字母
+    @GetMapping("/books/suggest")
+    public ResponseEntity<Map<String, Object>> suggest(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        limit = Math.max(1, Math.min(limit, MAX_SUGGESTIONS));
+        long start = System.nanoTime();
+        try {
+            List<CatalogSearchIndex.Suggestion> suggestions = catalogSearchIndex.suggest(query, limit);
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("query", query);
+            response.put("tookMicros", (System.nanoTime() - start) / 1_000);
+            response.put("suggestions", suggestions);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("输入联想失败 q={}", query, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "检索失败: " + e.getMessage()));
+        }
+    }
+
+    // 全文检索 - 公开访问；传 bookId 时只在该书内检索
+    @GetMapping("/search")
+    public ResponseEntity<Map<String, Object>> search(
+            @RequestParam("q") String query,
+            @RequestParam(required = false) Long bookId,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        if (!StringUtils.hasText(query)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "查询内容不能为空"));
+        }
+        limit = Math.max(1, Math.min(limit, MAX_LIMIT));
+        long start = System.nanoTime();
+        try {
+            List<SearchIndexService.SearchHit> hits;
+            Map<String, Book> books = new HashMap<>();
+            if (bookId != null) {
+                Book book = bookCacheService.getBook(bookId, bookMapper::selectById);
+                if (book == null || book.getEpubFileName() == null) {
+                    return ResponseEntity.badRequest().body(Map.of("error", "书籍不存在"));
+                }
+                books.put(book.getEpubFileName(), book);
+                hits = searchIndexService.searchBook(book.getEpubFileName(), query.trim(), limit);
+            } else {
+                hits = searchIndexService.searchLibrary(query.trim(), limit);
+                Set<String> fileNames = new LinkedHashSet<>();
+                for (SearchIndexService.SearchHit hit : hits) {
+                    fileNames.add(hit.getFileName());
+                }
+                if (!fileNames.isEmpty()) {
+                    for (Book book : bookMapper.selectByEpubFileNames(fileNames)) {
+                        books.put(book.getEpubFileName(), book);
+                    }
+                }
+            }
+
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (SearchIndexService.SearchHit hit : hits) {
+                // 只返回已入库的书（上传后未添加的文件不出现在结果中）
+                Book book = books.get(hit.getFileName());
+                if (book == null) {
+                    continue;
+                }
+                BookSearchIndex.ChapterHit chapterHit = hit.getChapterHit();
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("bookId", book.getId());
+                result.put("title", book.getTitle());
+                result.put("author", book.getAuthor());
+                result.put("fileName", hit.getFileName());
+                result.put("chapterIndex", chapterHit.getChapterIndex());
+                result.put("href", chapterHit.getHref());
+                result.put("offset", chapterHit.getOffset());
+                result.put("score", chapterHit.getScore());
+                result.put("snippet", chapterHit.getSnippet());
+                results.add(result);
+            }
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("query", query.trim());
+            response.put("took", (System.nanoTime() - start) / 1_000_000);
+            response.put("total", results.size());
+            response.put("hits", results);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("全文检索失败 q={}", query, e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "检索失败: " + e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.epub_demo1.entity;
+
+import java.time.LocalDateTime;
+
+/**
+ * 用户在书中的划线（HIGHLIGHT）或笔记（NOTE），锚定在一段 CFI 范围上。
+ */
+public class Annotation {
+
+    public enum Type {
+        HIGHLIGHT, NOTE
+    }
+
+    private Long id;
+    private Integer userId;
+    private Long bookId;
+    // 阅读顺序中的章节序号，由 cfiRange 得出
+    private Integer chapterIdx;
+    // 起点在章内的字符偏移（客户端计算），同一章内按此排序
+    private Integer startOffset;
+    private String cfiRange;
+    private Type type;
+    private String color;
+    private String note;
+    // 划线的原文，仅用于展示
+    private String quote;
+    // 客户端生成的 ID，离线同步按它去重，重复提交不会产生重复记录
+    private String clientId;
+    private LocalDateTime createdAt;
+    // 毫秒时间戳，同步时只接受更新的修改
+    private Long updatedAt;
+
+    public Annotation() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public Long getBookId() {
+        return bookId;
+    }
+
+    public void setBookId(Long bookId) {
+        this.bookId = bookId;
+    }
+
+    public Integer getChapterIdx() {
+        return chapterIdx;
+    }
+
+    public void setChapterIdx(Integer chapterIdx) {
+        this.chapterIdx = chapterIdx;
+    }
+
+    public Integer getStartOffset() {
+        return startOffset;
+    }
+
+    public void setStartOffset(Integer startOffset) {
+        this.startOffset = startOffset;
+    }
+
+    public String getCfiRange() {
+        return cfiRange;
+    }
+
+    public void setCfiRange(String cfiRange) {
+        this.cfiRange = cfiRange;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public void setColor(String color) {
+        this.color = color;
+    }
+
+    public String getNote() {
+        return note;
+    }
+
+    public void setNote(String note) {
+        this.note = note;
+    }
+
+    public String getQuote() {
+        return quote;
+    }
+
+    public void setQuote(String quote) {
+        this.quote = quote;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -19,10 +19,13 @@ public class Book implements Serializable {
     private BookCategory category; // 对应ENUM的Java枚举
     @JsonProperty("coverImagePath")
     private String coverImagePath; // 可空
+    private String coverColor; // 封面主色 #rrggbb，图片加载前的占位背景
     private String epubFileName; // 可空
     private Long uploadUserId;
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime uploadTime;
+    private Integer wordCount; // 字数，由入库时生成的位置表统计
+    private Integer readingMinutes; // 预计阅读时长（分钟）
 
     // 添加封面URL字段（非数据库字段）
     @JsonIgnore
@@ -87,6 +90,14 @@ public class Book implements Serializable {
         this.category = category;
     }
 
+    public String getCoverColor() {
+        return coverColor;
+    }
+
+    public void setCoverColor(String coverColor) {
+        this.coverColor = coverColor;
+    }
+
     public String getEpubFileName() {
         return epubFileName;
     }
@@ -110,4 +121,20 @@ public class Book implements Serializable {
     public void setUploadTime(LocalDateTime uploadTime) {
         this.uploadTime = uploadTime;
     }
+
+    public Integer getWordCount() {
+        return wordCount;
+    }
+
+    public void setWordCount(Integer wordCount) {
+        this.wordCount = wordCount;
+    }
+
+    public Integer getReadingMinutes() {
+        return readingMinutes;
+    }
+
+    public void setReadingMinutes(Integer readingMinutes) {
+        this.readingMinutes = readingMinutes;
+    }
 }
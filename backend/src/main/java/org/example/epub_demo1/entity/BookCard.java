@@ -0,0 +1,81 @@
+package org.example.epub_demo1.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.example.epub_demo1.entity.enums.BookCategory;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 书架卡片：分页列表只查询展示所需的列，不含简介等大字段。
+ */
+public class BookCard implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private String title;
+    private String author;
+    private BookCategory category;
+    private String coverImagePath;
+    private String coverColor;
+    // 仅用于生成下一页游标，不输出
+    @JsonIgnore
+    private LocalDateTime uploadTime;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public BookCategory getCategory() {
+        return category;
+    }
+
+    public void setCategory(BookCategory category) {
+        this.category = category;
+    }
+
+    public String getCoverImagePath() {
+        return coverImagePath;
+    }
+
+    public void setCoverImagePath(String coverImagePath) {
+        this.coverImagePath = coverImagePath;
+    }
+
+    public String getCoverColor() {
+        return coverColor;
+    }
+
+    public void setCoverColor(String coverColor) {
+        this.coverColor = coverColor;
+    }
+
+    public LocalDateTime getUploadTime() {
+        return uploadTime;
+    }
+
+    public void setUploadTime(LocalDateTime uploadTime) {
+        this.uploadTime = uploadTime;
+    }
+}
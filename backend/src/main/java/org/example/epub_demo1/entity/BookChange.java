@@ -0,0 +1,60 @@
+package org.example.epub_demo1.entity;
+
+import java.time.LocalDateTime;
+
+/**
+ * 变更日志中的一条记录：某个版本号上一本书被新增/修改（UPSERT）或删除（DELETE）。
+ */
+public class BookChange {
+
+    public enum Op {
+        UPSERT, DELETE
+    }
+
+    private Long version;
+    private Long bookId;
+    private Op op;
+    private LocalDateTime changedAt;
+
+    public BookChange() {
+    }
+
+    public BookChange(Long version, Long bookId, Op op, LocalDateTime changedAt) {
+        this.version = version;
+        this.bookId = bookId;
+        this.op = op;
+        this.changedAt = changedAt;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Long getBookId() {
+        return bookId;
+    }
+
+    public void setBookId(Long bookId) {
+        this.bookId = bookId;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public void setOp(Op op) {
+        this.op = op;
+    }
+
+    public LocalDateTime getChangedAt() {
+        return changedAt;
+    }
+
+    public void setChangedAt(LocalDateTime changedAt) {
+        this.changedAt = changedAt;
+    }
+}
@@ -0,0 +1,64 @@
+package org.example.epub_demo1.entity;
+
+import java.time.LocalDateTime;
+
+public class Bookmark {
+
+    private Long id;
+    private Integer userId;
+    private Long bookId;
+    private String cfi;
+    private String label;
+    private LocalDateTime createdAt;
+
+    public Bookmark() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public Long getBookId() {
+        return bookId;
+    }
+
+    public void setBookId(Long bookId) {
+        this.bookId = bookId;
+    }
+
+    public String getCfi() {
+        return cfi;
+    }
+
+    public void setCfi(String cfi) {
+        this.cfi = cfi;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.epub_demo1.entity;
+
+/**
+ * 某个用户在某本书中的阅读位置（每个用户每本书一行）。
+ * updatedAt 为毫秒时间戳，多个设备同时阅读时以最新的一次为准。
+ */
+public class ReadingProgress {
+
+    private Integer userId;
+    private Long bookId;
+    private String cfi;
+    // 0 ~ 1
+    private Double percentage;
+    private Integer chapterIndex;
+    private Long updatedAt;
+
+    public ReadingProgress() {
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Integer userId) {
+        this.userId = userId;
+    }
+
+    public Long getBookId() {
+        return bookId;
+    }
+
+    public void setBookId(Long bookId) {
+        this.bookId = bookId;
+    }
+
+    public String getCfi() {
+        return cfi;
+    }
+
+    public void setCfi(String cfi) {
+        this.cfi = cfi;
+    }
+
+    public Double getPercentage() {
+        return percentage;
+    }
+
+    public void setPercentage(Double percentage) {
+        this.percentage = percentage;
+    }
+
+    public Integer getChapterIndex() {
+        return chapterIndex;
+    }
+
+    public void setChapterIndex(Integer chapterIndex) {
+        this.chapterIndex = chapterIndex;
+    }
+
+    public Long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
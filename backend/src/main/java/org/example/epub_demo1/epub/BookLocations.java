@@ -0,0 +1,385 @@
+package org.example.epub_demo1.epub;
+
+import org.example.epub_demo1.search.TextTokenizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 单本书的位置表：各章节字数、词数，以及每隔 interval 个字一个 CFI 锚点。
+ * 阅读器据此直接计算进度百分比和跳转位置，无需先下载并排版整本书。
+ * 字数只计非空白字符；章节内第 k 个锚点指向第 k * interval 个字。
+ *
+ * 文件格式（v1）：
+ * <pre>
+ * magic, version, interval, spineStep
+ * chapterCount, [href, idref, chars, words, anchorCount, [stepCount, step..., offset]...]...
+ * </pre>
+ * 锚点中的数字为 varint，一个锚点通常只占几个字节。
+ */
+public class BookLocations {
+
+    private static final int MAGIC = 0x45504C43; // "EPLC"
+    private static final int VERSION = 1;
+
+    // 没有结束标签的 HTML 空元素（不规范的 XHTML 中常见 <br>）
+    private static final Set<String> VOID_ELEMENTS = Set.of(
+            "br", "hr", "img", "meta", "link", "input", "col", "area", "base", "wbr", "source"
+    );
+
+    private final int interval;
+    private final int spineStep;
+    private final List<Chapter> chapters;
+
+    private BookLocations(int interval, int spineStep, List<Chapter> chapters) {
+        this.interval = interval;
+        this.spineStep = spineStep;
+        this.chapters = chapters;
+    }
+
+    /**
+     * 按阅读顺序扫描全部章节。非 HTML 的 spine 条目也占一个位置（字数为 0），下标与 /toc 的 spine 一致。
+     */
+    public static BookLocations build(EpubArchive archive, int interval) throws IOException {
+        List<Chapter> chapters = new ArrayList<>();
+        for (EpubArchive.ManifestItem item : archive.getSpine()) {
+            if (!item.getMediaType().contains("html") || archive.getEntry(item.getHref()) == null) {
+                chapters.add(new Chapter(item.getHref(), item.getId(), 0, 0, List.of()));
+                continue;
+            }
+            String html = new String(archive.readEntry(item.getHref()), StandardCharsets.UTF_8);
+            chapters.add(scan(item.getHref(), item.getId(), html, interval));
+        }
+        return new BookLocations(interval, archive.getSpineStep(), chapters);
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public List<Chapter> getChapters() {
+        return chapters;
+    }
+
+    public int totalChars() {
+        int total = 0;
+        for (Chapter chapter : chapters) {
+            total += chapter.chars;
+        }
+        return total;
+    }
+
+    // 中日韩字符每字计一词，其他文字按连续的字母数字计一词
+    public int totalWords() {
+        int total = 0;
+        for (Chapter chapter : chapters) {
+            total += chapter.words;
+        }
+        return total;
+    }
+
+    /**
+     * 第 chapterIndex 章第 anchorIndex 个锚点的完整 CFI，如 epubcfi(/6/4[chap01]!/4/2/1:120)。
+     */
+    public String cfi(int chapterIndex, int anchorIndex) {
+        Chapter chapter = chapters.get(chapterIndex);
+        int[] anchor = chapter.anchors.get(anchorIndex);
+        StringBuilder cfi = new StringBuilder(48)
+                .append("epubcfi(/").append(spineStep)
+                .append('/').append((chapterIndex + 1) * 2);
+        if (!chapter.idref.isEmpty()) {
+            cfi.append('[').append(escapeAssertion(chapter.idref)).append(']');
+        }
+        cfi.append('!');
+        for (int i = 0; i < anchor.length - 1; i++) {
+            cfi.append('/').append(anchor[i]);
+        }
+        return cfi.append(':').append(anchor[anchor.length - 1]).append(')').toString();
+    }
+
+    /**
+     * 接口响应：{interval, totalChars, totalWords, chapters: [{index, href, start, chars, words, anchors}]}，
+     * start 为章节第一个字在全书中的位置，anchors 为完整 CFI。
+     */
+    public Map<String, Object> toResponse() {
+        List<Map<String, Object>> chapterList = new ArrayList<>(chapters.size());
+        int start = 0;
+        for (int i = 0; i < chapters.size(); i++) {
+            Chapter chapter = chapters.get(i);
+            List<String> anchors = new ArrayList<>(chapter.anchors.size());
+            for (int j = 0; j < chapter.anchors.size(); j++) {
+                anchors.add(cfi(i, j));
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("index", i);
+            item.put("href", chapter.href);
+            item.put("start", start);
+            item.put("chars", chapter.chars);
+            item.put("words", chapter.words);
+            item.put("anchors", anchors);
+            chapterList.add(item);
+            start += chapter.chars;
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("interval", interval);
+        response.put("totalChars", start);
+        response.put("totalWords", totalWords());
+        response.put("chapters", chapterList);
+        return response;
+    }
+
+    // ============= 章节扫描 =============
+
+    /**
+     * 与 HtmlText 相同的轻量标签扫描，同时维护当前节点的 CFI 路径：
+     * 元素为偶数步进（第 n 个子元素为 2n），元素之间的文本为奇数步进，偏移按 DOM 中的 UTF-16 字符计。
+     */
+    static Chapter scan(String href, String idref, String html, int interval) {
+        // children[d]：深度 d 的当前元素已出现的子元素数；path[d]：深度 d+1 的当前元素的步进。根元素 html 深度为 1，不在路径中
+        int[] children = new int[16];
+        int[] path = new int[16];
+        int depth = 0;
+        int skipDepth = 0;
+        int textOffset = 0;
+        int chars = 0;
+        int words = 0;
+        boolean inWord = false;
+        List<int[]> anchors = new ArrayList<>();
+
+        int i = 0;
+        int n = html.length();
+        while (i < n) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                // 注释不是文本块的分隔
+                if (html.startsWith("<!--", i)) {
+                    int end = html.indexOf("-->", i + 4);
+                    i = end < 0 ? n : end + 3;
+                    continue;
+                }
+                int end = html.indexOf('>', i + 1);
+                if (end < 0) {
+                    break;
+                }
+                char next = html.charAt(i + 1);
+                if (next == '!' || next == '?') {
+                    // DOCTYPE、XML 声明
+                    i = end + 1;
+                    continue;
+                }
+                String name = HtmlText.tagName(html, i + 1, end);
+                boolean closing = next == '/';
+                boolean selfClosing = html.charAt(end - 1) == '/' || VOID_ELEMENTS.contains(name);
+                if (closing) {
+                    if (!VOID_ELEMENTS.contains(name) && depth > 0) {
+                        depth--;
+                    }
+                } else {
+                    if (depth > 0) {
+                        children[depth]++;
+                        path[depth] = children[depth] * 2;
+                    }
+                    depth++;
+                    if (depth + 1 >= children.length) {
+                        children = Arrays.copyOf(children, children.length * 2);
+                        path = Arrays.copyOf(path, path.length * 2);
+                    }
+                    children[depth] = 0;
+                    if (selfClosing) {
+                        depth--;
+                    }
+                }
+                if (HtmlText.SKIPPED.contains(name) && !selfClosing) {
+                    skipDepth = Math.max(0, skipDepth + (closing ? -1 : 1));
+                }
+                if (HtmlText.BLOCKS.contains(name)) {
+                    inWord = false;
+                }
+                textOffset = 0;
+                i = end + 1;
+                continue;
+            }
+
+            int codePoint;
+            int units;
+            int advance;
+            String decoded = null;
+            int semi = c == '&' ? html.indexOf(';', i) : -1;
+            if (semi > i && semi - i <= 10) {
+                decoded = HtmlText.decodeEntity(html.substring(i + 1, semi));
+            }
+            if (decoded != null) {
+                codePoint = decoded.codePointAt(0);
+                units = decoded.length();
+                advance = semi + 1 - i;
+            } else {
+                codePoint = html.codePointAt(i);
+                units = Character.charCount(codePoint);
+                advance = units;
+            }
+
+            if (depth > 0 && skipDepth == 0 && !Character.isWhitespace(codePoint) && codePoint != '\u00A0') {
+                if (chars % interval == 0) {
+                    int[] anchor = new int[depth + 1];
+                    System.arraycopy(path, 1, anchor, 0, depth - 1);
+                    anchor[depth - 1] = children[depth] * 2 + 1;
+                    anchor[depth] = textOffset;
+                    anchors.add(anchor);
+                }
+                chars++;
+                if (TextTokenizer.isCjk(codePoint)) {
+                    words++;
+                    inWord = false;
+                } else if (Character.isLetterOrDigit(codePoint)) {
+                    if (!inWord) {
+                        words++;
+                        inWord = true;
+                    }
+                } else {
+                    inWord = false;
+                }
+            } else {
+                inWord = false;
+            }
+            textOffset += units;
+            i += advance;
+        }
+        return new Chapter(href, idref, chars, words, anchors);
+    }
+
+    // CFI 断言中的 [ ] , ; ^ 需要用 ^ 转义
+    private static String escapeAssertion(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '[' || c == ']' || c == ',' || c == ';' || c == '^') {
+                escaped.append('^');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    // ============= 读写 =============
+
+    public void writeTo(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(interval);
+            out.writeInt(spineStep);
+            out.writeInt(chapters.size());
+            for (Chapter chapter : chapters) {
+                out.writeUTF(chapter.href);
+                out.writeUTF(chapter.idref);
+                out.writeInt(chapter.chars);
+                out.writeInt(chapter.words);
+                out.writeInt(chapter.anchors.size());
+                for (int[] anchor : chapter.anchors) {
+                    writeVarInt(out, anchor.length - 1);
+                    for (int value : anchor) {
+                        writeVarInt(out, value);
+                    }
+                }
+            }
+        }
+    }
+
+    public static BookLocations read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是有效的位置表文件: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("不支持的位置表版本 " + version + ": " + file);
+            }
+            int interval = in.readInt();
+            int spineStep = in.readInt();
+            int chapterCount = in.readInt();
+            List<Chapter> chapters = new ArrayList<>(chapterCount);
+            for (int i = 0; i < chapterCount; i++) {
+                String href = in.readUTF();
+                String idref = in.readUTF();
+                int chars = in.readInt();
+                int words = in.readInt();
+                int anchorCount = in.readInt();
+                List<int[]> anchors = new ArrayList<>(anchorCount);
+                for (int j = 0; j < anchorCount; j++) {
+                    int[] anchor = new int[readVarInt(in) + 1];
+                    for (int k = 0; k < anchor.length; k++) {
+                        anchor[k] = readVarInt(in);
+                    }
+                    anchors.add(anchor);
+                }
+                chapters.add(new Chapter(href, idref, chars, words, anchors));
+            }
+            return new BookLocations(interval, spineStep, chapters);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint 过长");
+    }
+
+    public static class Chapter {
+        private final String href;
+        private final String idref;
+        private final int chars;
+        private final int words;
+        // 每个锚点：CFI 步进...，最后一个元素为文本内偏移
+        private final List<int[]> anchors;
+
+        Chapter(String href, String idref, int chars, int words, List<int[]> anchors) {
+            this.href = href;
+            this.idref = idref;
+            this.chars = chars;
+            this.words = words;
+            this.anchors = anchors;
+        }
+
+        public String getHref() {
+            return href;
+        }
+
+        public int getChars() {
+            return chars;
+        }
+
+        public int getWords() {
+            return words;
+        }
+
+        public int getAnchorCount() {
+            return anchors.size();
+        }
+    }
+}
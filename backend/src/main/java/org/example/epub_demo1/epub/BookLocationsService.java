@@ -0,0 +1,146 @@
+package org.example.epub_demo1.epub;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.storage.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 位置表的生成和存储。每本书一个文件（以 EPUB 文件名为键，与全文索引相同），入库时生成；
+ * 入库早于此功能的书在第一次请求时生成。最近使用的若干本保留在内存中，同一本书同时只生成一次。
+ */
+@Service
+public class BookLocationsService {
+
+    private static final Logger log = LoggerFactory.getLogger(BookLocationsService.class);
+    private static final String LOCATIONS_SUFFIX = ".loc";
+
+    @Value("${locations.dir:locations}")
+    private String locationsDir;
+
+    @Value("${locations.chars-per-anchor:1024}")
+    private int charsPerAnchor;
+
+    @Value("${locations.words-per-minute:300}")
+    private int wordsPerMinute;
+
+    @Value("${locations.cached-books:64}")
+    private int cachedBooks;
+
+    // 单个 EPUB 条目解压后的大小上限（字节）
+    @Value("${epub.max-entry-size:67108864}")
+    private long maxEntrySize;
+
+    private Path locationsLocation;
+    private Cache<String, BookLocations> cache;
+
+    @PostConstruct
+    public void init() {
+        locationsLocation = Paths.get(locationsDir).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(locationsLocation);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not initialize locations storage", e);
+        }
+        cache = Caffeine.newBuilder().maximumSize(cachedBooks).build();
+    }
+
+    /**
+     * 扫描 EPUB 生成位置表并保存（入库时调用，已有的文件会被覆盖）。
+     */
+    public BookLocations build(String fileName, Path epubFile) throws IOException {
+        BookLocations locations = buildFile(fileName, epubFile);
+        cache.put(fileName, locations);
+        return locations;
+    }
+
+    // 不更新缓存，供缓存加载函数调用
+    private BookLocations buildFile(String fileName, Path epubFile) throws IOException {
+        BookLocations locations;
+        try (EpubArchive archive = EpubArchive.open(epubFile, maxEntrySize)) {
+            locations = BookLocations.build(archive, charsPerAnchor);
+        }
+        Path temp = Files.createTempFile(locationsLocation, "build", ".tmp");
+        try {
+            locations.writeTo(temp);
+            Files.move(temp, locationsFile(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return locations;
+    }
+
+    /**
+     * 读取位置表，没有时从 epubFile 生成。
+     */
+    public BookLocations get(String fileName, Path epubFile) throws IOException {
+        try {
+            return cache.get(fileName, key -> {
+                try {
+                    Path file = locationsFile(key);
+                    if (Files.isRegularFile(file)) {
+                        try {
+                            BookLocations stored = BookLocations.read(file);
+                            if (stored.getInterval() == charsPerAnchor) {
+                                return stored;
+                            }
+                        } catch (IOException e) {
+                            log.warn("位置表文件无法读取，重新生成 {}: {}", file, e.getMessage());
+                        }
+                    }
+                    return buildFile(key, epubFile);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 按 EPUB 文件填写书籍的字数和预计阅读时长（分钟）。
+     */
+    public void applyStats(Book book, Path epubFile) throws IOException {
+        BookLocations locations = get(book.getEpubFileName(), epubFile);
+        book.setWordCount(locations.totalWords());
+        book.setReadingMinutes(readingMinutes(locations.totalWords()));
+    }
+
+    public int readingMinutes(int words) {
+        return words == 0 ? 0 : Math.max(1, (words + wordsPerMinute - 1) / wordsPerMinute);
+    }
+
+    public void remove(String fileName) {
+        if (fileName == null) {
+            return;
+        }
+        cache.invalidate(fileName);
+        try {
+            Files.deleteIfExists(locationsFile(fileName));
+        } catch (IOException e) {
+            log.warn("删除位置表失败 {}: {}", fileName, e.getMessage());
+        }
+    }
+
+    // 文件名来自书籍记录，规范化后必须仍在位置表目录内
+    private Path locationsFile(String fileName) throws IOException {
+        Path file = locationsLocation.resolve(BlobStore.flatten(fileName) + LOCATIONS_SUFFIX).normalize();
+        if (!locationsLocation.equals(file.getParent())) {
+            throw new IOException("非法的位置表文件名: " + fileName);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,548 @@
+package org.example.epub_demo1.epub;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 基于 ZipFile 的 EPUB 只读视图。
+ * ZipFile 只读取中央目录，条目内容按需随机读取，不会把整本书加载进内存。
+ * 单个条目解压后不得超过 maxEntrySize：高压缩比的条目（ZIP 炸弹）读到上限即失败。
+ */
+public class EpubArchive implements Closeable {
+
+    private static final String CONTAINER_PATH = "META-INF/container.xml";
+    private static final String OPF_NS = "http://www.idpf.org/2007/opf";
+    private static final String DC_NS = "http://purl.org/dc/elements/1.1/";
+    private static final String NCX_MEDIA_TYPE = "application/x-dtbncx+xml";
+    private static final String XHTML_NS = "http://www.w3.org/1999/xhtml";
+    private static final String OPS_NS = "http://www.idpf.org/2007/ops";
+    // 未指定时的条目大小上限，与 epub.max-entry-size 的默认值相同
+    public static final long DEFAULT_MAX_ENTRY_SIZE = 64L * 1024 * 1024;
+
+    private final ZipFile zipFile;
+    private final long maxEntrySize;
+    private final String opfPath;
+    private final String opfDir;
+    private final Map<String, ManifestItem> manifest = new LinkedHashMap<>();
+    private final List<ManifestItem> spine = new ArrayList<>();
+    private String title;
+    private String creator;
+    private String description;
+    private ManifestItem coverItem;
+    private ManifestItem tocItem;
+    private int spineStep = 6;
+
+    private EpubArchive(ZipFile zipFile, long maxEntrySize) throws IOException {
+        this.zipFile = zipFile;
+        this.maxEntrySize = maxEntrySize;
+        this.opfPath = findOpfPath();
+        int slash = opfPath.lastIndexOf('/');
+        this.opfDir = slash >= 0 ? opfPath.substring(0, slash + 1) : "";
+        parseOpf(parseXml(opfPath));
+    }
+
+    public static EpubArchive open(Path file) throws IOException {
+        return open(file, DEFAULT_MAX_ENTRY_SIZE);
+    }
+
+    public static EpubArchive open(Path file, long maxEntrySize) throws IOException {
+        ZipFile zip = new ZipFile(file.toFile(), StandardCharsets.UTF_8);
+        try {
+            return new EpubArchive(zip, maxEntrySize);
+        } catch (IOException | RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+    // 阅读顺序中的章节
+    public List<ManifestItem> getSpine() {
+        return Collections.unmodifiableList(spine);
+    }
+
+    // spine 元素在 package 中的 CFI 步进（第 n 个子元素为 2n），通常为 /6
+    public int getSpineStep() {
+        return spineStep;
+    }
+
+    public String getOpfPath() {
+        return opfPath;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getCreator() {
+        return creator;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    // 封面图片，可能为 null
+    public ManifestItem getCoverItem() {
+        return coverItem;
+    }
+
+    // 目录（EPUB2 的 NCX 或 EPUB3 的 nav 文档），可能为 null
+    public ManifestItem getTocItem() {
+        return tocItem;
+    }
+
+    public ZipEntry getEntry(String path) {
+        return zipFile.getEntry(path);
+    }
+
+    public InputStream openEntry(String path) throws IOException {
+        ZipEntry entry = zipFile.getEntry(path);
+        if (entry == null) {
+            throw new IOException("EPUB 中不存在条目: " + path);
+        }
+        if (entry.getSize() > maxEntrySize) {
+            throw new IOException("EPUB 条目超过大小上限: " + path);
+        }
+        // 中央目录中的大小可以伪造，读取时再按实际解压的字节数限制
+        return new LimitedInputStream(zipFile.getInputStream(entry), maxEntrySize, path);
+    }
+
+    public byte[] readEntry(String path) throws IOException {
+        try (InputStream in = openEntry(path)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+
+    // ============= OPF 解析 =============
+
+    private String findOpfPath() throws IOException {
+        Document container = parseXml(CONTAINER_PATH);
+        NodeList rootFiles = container.getElementsByTagNameNS("*", "rootfile");
+        for (int i = 0; i < rootFiles.getLength(); i++) {
+            String fullPath = ((Element) rootFiles.item(i)).getAttribute("full-path");
+            if (!fullPath.isEmpty()) {
+                return fullPath;
+            }
+        }
+        throw new IOException("container.xml 中未找到 OPF 路径");
+    }
+
+    private void parseOpf(Document opf) {
+        NodeList items = opf.getElementsByTagNameNS(OPF_NS, "item");
+        for (int i = 0; i < items.getLength(); i++) {
+            Element item = (Element) items.item(i);
+            ManifestItem manifestItem = new ManifestItem(
+                    item.getAttribute("id"),
+                    resolve(item.getAttribute("href")),
+                    item.getAttribute("media-type"),
+                    item.getAttribute("properties")
+            );
+            manifest.put(manifestItem.getId(), manifestItem);
+        }
+
+        NodeList spines = opf.getElementsByTagNameNS(OPF_NS, "spine");
+        if (spines.getLength() > 0) {
+            int position = 0;
+            for (org.w3c.dom.Node node = spines.item(0); node != null; node = node.getPreviousSibling()) {
+                if (node instanceof Element) {
+                    position++;
+                }
+            }
+            spineStep = position * 2;
+        }
+
+        NodeList itemRefs = opf.getElementsByTagNameNS(OPF_NS, "itemref");
+        for (int i = 0; i < itemRefs.getLength(); i++) {
+            ManifestItem item = manifest.get(((Element) itemRefs.item(i)).getAttribute("idref"));
+            if (item != null) {
+                spine.add(item);
+            }
+        }
+
+        title = firstText(opf, "title");
+        creator = firstText(opf, "creator");
+        description = firstText(opf, "description");
+        coverItem = findCover(opf);
+        tocItem = findToc(opf);
+    }
+
+    private static String firstText(Document opf, String dcElement) {
+        NodeList nodes = opf.getElementsByTagNameNS(DC_NS, dcElement);
+        for (int i = 0; i < nodes.getLength(); i++) {
+            String text = nodes.item(i).getTextContent();
+            if (text != null && !text.isBlank()) {
+                return text.trim();
+            }
+        }
+        return null;
+    }
+
+    private ManifestItem findCover(Document opf) {
+        // EPUB3: properties="cover-image"
+        for (ManifestItem item : manifest.values()) {
+            if (item.hasProperty("cover-image")) {
+                return item;
+            }
+        }
+        // EPUB2: <meta name="cover" content="itemId"/>
+        NodeList metas = opf.getElementsByTagNameNS(OPF_NS, "meta");
+        for (int i = 0; i < metas.getLength(); i++) {
+            Element meta = (Element) metas.item(i);
+            if ("cover".equals(meta.getAttribute("name"))) {
+                String content = meta.getAttribute("content");
+                ManifestItem item = manifest.get(content);
+                if (item == null) {
+                    // 个别书籍直接写的是 href
+                    item = findByHref(resolve(content));
+                }
+                if (item != null && item.isImage()) {
+                    return item;
+                }
+            }
+        }
+        // 兜底：id 或文件名里带 cover 的图片
+        for (ManifestItem item : manifest.values()) {
+            if (item.isImage() && (item.getId().toLowerCase(Locale.ROOT).contains("cover")
+                    || item.getHref().toLowerCase(Locale.ROOT).contains("cover"))) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    private ManifestItem findToc(Document opf) {
+        NodeList spines = opf.getElementsByTagNameNS(OPF_NS, "spine");
+        if (spines.getLength() > 0) {
+            ManifestItem ncx = manifest.get(((Element) spines.item(0)).getAttribute("toc"));
+            if (ncx != null) {
+                return ncx;
+            }
+        }
+        for (ManifestItem item : manifest.values()) {
+            if (NCX_MEDIA_TYPE.equals(item.getMediaType())) {
+                return item;
+            }
+        }
+        for (ManifestItem item : manifest.values()) {
+            if (item.hasProperty("nav")) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    // 按 ZIP 内路径查找清单项
+    public ManifestItem findByHref(String href) {
+        for (ManifestItem item : manifest.values()) {
+            if (item.getHref().equals(href)) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    // OPF 中的 href 相对于 OPF 所在目录
+    private String resolve(String href) {
+        return resolveAgainst(opfDir, href);
+    }
+
+    private static String resolveAgainst(String baseDir, String href) {
+        String decoded = URLDecoder.decode(href, StandardCharsets.UTF_8);
+        int hash = decoded.indexOf('#');
+        if (hash >= 0) {
+            decoded = decoded.substring(0, hash);
+        }
+        return normalize(baseDir + decoded);
+    }
+
+    private static String fragmentOf(String href) {
+        int hash = href.indexOf('#');
+        return hash >= 0 ? href.substring(hash + 1) : null;
+    }
+
+    private static String directoryOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash >= 0 ? path.substring(0, slash + 1) : "";
+    }
+
+    // 章节在阅读顺序中的下标，不在 spine 中返回 -1
+    public int spineIndexOf(String href) {
+        for (int i = 0; i < spine.size(); i++) {
+            if (spine.get(i).getHref().equals(href)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // ============= 目录解析 =============
+
+    /**
+     * 读取目录（按需解析 NCX 或 EPUB3 nav 文档）。没有目录时返回空列表。
+     */
+    public List<TocEntry> readToc() throws IOException {
+        if (tocItem == null || getEntry(tocItem.getHref()) == null) {
+            return List.of();
+        }
+        Document doc = parseXml(tocItem.getHref());
+        String baseDir = directoryOf(tocItem.getHref());
+        if (NCX_MEDIA_TYPE.equals(tocItem.getMediaType())) {
+            NodeList navMaps = doc.getElementsByTagNameNS("*", "navMap");
+            return navMaps.getLength() == 0 ? List.of() : readNavPoints((Element) navMaps.item(0), baseDir);
+        }
+        NodeList navs = doc.getElementsByTagNameNS(XHTML_NS, "nav");
+        for (int i = 0; i < navs.getLength(); i++) {
+            Element nav = (Element) navs.item(i);
+            if ("toc".equals(nav.getAttributeNS(OPS_NS, "type"))) {
+                Element list = firstChild(nav, "ol");
+                return list == null ? List.of() : readNavList(list, baseDir);
+            }
+        }
+        return List.of();
+    }
+
+    private List<TocEntry> readNavPoints(Element parent, String baseDir) {
+        List<TocEntry> entries = new ArrayList<>();
+        for (Element navPoint : children(parent, "navPoint")) {
+            Element label = firstChild(navPoint, "navLabel");
+            Element content = firstChild(navPoint, "content");
+            String src = content == null ? "" : content.getAttribute("src");
+            entries.add(newTocEntry(
+                    label == null ? "" : label.getTextContent().trim(),
+                    src, baseDir, readNavPoints(navPoint, baseDir)));
+        }
+        return entries;
+    }
+
+    private List<TocEntry> readNavList(Element list, String baseDir) {
+        List<TocEntry> entries = new ArrayList<>();
+        for (Element li : children(list, "li")) {
+            Element link = firstChild(li, "a");
+            if (link == null) {
+                link = firstChild(li, "span");
+            }
+            Element subList = firstChild(li, "ol");
+            entries.add(newTocEntry(
+                    link == null ? "" : link.getTextContent().trim(),
+                    link == null ? "" : link.getAttribute("href"),
+                    baseDir,
+                    subList == null ? List.of() : readNavList(subList, baseDir)));
+        }
+        return entries;
+    }
+
+    private TocEntry newTocEntry(String label, String src, String baseDir, List<TocEntry> children) {
+        String href = src.isEmpty() ? null : resolveAgainst(baseDir, src);
+        return new TocEntry(label, href, src.isEmpty() ? null : fragmentOf(src),
+                href == null ? -1 : spineIndexOf(href), children);
+    }
+
+    private static List<Element> children(Element parent, String localName) {
+        List<Element> result = new ArrayList<>();
+        for (org.w3c.dom.Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && localName.equals(node.getLocalName())) {
+                result.add((Element) node);
+            }
+        }
+        return result;
+    }
+
+    private static Element firstChild(Element parent, String localName) {
+        List<Element> result = children(parent, localName);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    static String normalize(String path) {
+        List<String> parts = new ArrayList<>();
+        for (String part : path.split("/")) {
+            if (part.isEmpty() || part.equals(".")) {
+                continue;
+            }
+            if (part.equals("..")) {
+                if (!parts.isEmpty()) {
+                    parts.remove(parts.size() - 1);
+                }
+            } else {
+                parts.add(part);
+            }
+        }
+        return String.join("/", parts);
+    }
+
+    private Document parseXml(String path) throws IOException {
+        try (InputStream in = openEntry(path)) {
+            return newDocumentBuilder().parse(in);
+        } catch (SAXException e) {
+            throw new IOException("无法解析 " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static DocumentBuilder newDocumentBuilder() throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            // 不加载外部 DTD/实体，防止 XXE
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            factory.setExpandEntityReferences(false);
+            return factory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IOException("XML 解析器初始化失败", e);
+        }
+    }
+
+    public static class ManifestItem {
+        private final String id;
+        private final String href;
+        private final String mediaType;
+        private final String properties;
+
+        ManifestItem(String id, String href, String mediaType, String properties) {
+            this.id = id;
+            this.href = href;
+            this.mediaType = mediaType;
+            this.properties = properties;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        // ZIP 内的完整路径
+        public String getHref() {
+            return href;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        public String getProperties() {
+            return properties;
+        }
+
+        public boolean hasProperty(String property) {
+            for (String value : properties.split("\\s+")) {
+                if (value.equals(property)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean isImage() {
+            return mediaType.startsWith("image/");
+        }
+    }
+
+    public static class TocEntry {
+        private final String label;
+        private final String href;
+        private final String fragment;
+        private final int chapterIndex;
+        private final List<TocEntry> children;
+
+        TocEntry(String label, String href, String fragment, int chapterIndex, List<TocEntry> children) {
+            this.label = label;
+            this.href = href;
+            this.fragment = fragment;
+            this.chapterIndex = chapterIndex;
+            this.children = children;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        // ZIP 内的完整路径
+        public String getHref() {
+            return href;
+        }
+
+        // 章节内锚点，可能为 null
+        public String getFragment() {
+            return fragment;
+        }
+
+        // 对应 spine 下标，-1 表示不在阅读顺序中
+        public int getChapterIndex() {
+            return chapterIndex;
+        }
+
+        public List<TocEntry> getChildren() {
+            return children;
+        }
+    }
+
+    // 读取超过 limit 字节时抛出 IOException
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private final String path;
+        private long count;
+
+        LimitedInputStream(InputStream in, long limit, String path) {
+            super(in);
+            this.limit = limit;
+            this.path = path;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) throws IOException {
+            count += n;
+            if (count > limit) {
+                throw new IOException("EPUB 条目超过大小上限: " + path);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.example.epub_demo1.epub;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按书籍 ID 提供已打开的 EpubArchive。
+ * 最近使用的若干本书保持打开（只常驻中央目录和 OPF 解析结果），被淘汰时等所有读者释放后再关闭。
+ */
+@Service
+public class EpubContentService {
+
+    private static final Logger log = LoggerFactory.getLogger(EpubContentService.class);
+
+    @Value("${file.upload-dir:uploads}")
+    private String uploadDir;
+
+    @Value("${content.open-archives:64}")
+    private int maxOpenArchives;
+
+    // 单个 EPUB 条目解压后的大小上限（字节）
+    @Value("${epub.max-entry-size:67108864}")
+    private long maxEntrySize;
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    private Path rootLocation;
+
+    // 书籍 ID -> EPUB 文件名
+    private final Map<Long, String> fileNames = new ConcurrentHashMap<>();
+
+    // 文件名 -> 已打开的归档（访问顺序 LRU，需在自身锁内访问）
+    private LinkedHashMap<String, ArchiveHandle> archives;
+
+    @PostConstruct
+    public void init() {
+        rootLocation = Paths.get(uploadDir);
+        archives = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ArchiveHandle> eldest) {
+                if (size() > maxOpenArchives) {
+                    eldest.getValue().evict();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (archives) {
+            archives.values().forEach(ArchiveHandle::evict);
+            archives.clear();
+        }
+    }
+
+    /**
+     * 打开书籍对应的 EPUB；书籍或文件不存在时返回 null。调用方必须关闭返回的 Lease。
+     */
+    public Lease open(Long bookId) throws IOException {
+        String fileName = fileName(bookId);
+        if (fileName == null) {
+            return null;
+        }
+
+        synchronized (archives) {
+            ArchiveHandle handle = archives.get(fileName);
+            if (handle != null) {
+                return handle.acquire();
+            }
+        }
+
+        // 打开文件放在锁外，避免慢磁盘阻塞其他书的读取
+        Path file = rootLocation.resolve(fileName);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        ArchiveHandle opened = new ArchiveHandle(EpubArchive.open(file, maxEntrySize));
+        synchronized (archives) {
+            ArchiveHandle existing = archives.get(fileName);
+            if (existing != null) {
+                opened.evict();
+                return existing.acquire();
+            }
+            archives.put(fileName, opened);
+            return opened.acquire();
+        }
+    }
+
+    // 书籍对应的 EPUB 文件名，书籍不存在或没有文件时返回 null
+    public String fileName(Long bookId) {
+        String fileName = fileNames.get(bookId);
+        if (fileName == null) {
+            Book book = bookMapper.selectById(bookId);
+            if (book == null || book.getEpubFileName() == null) {
+                return null;
+            }
+            fileName = book.getEpubFileName();
+            fileNames.put(bookId, fileName);
+        }
+        return fileName;
+    }
+
+    // 书籍被修改或删除后调用
+    public void evictBook(Long bookId) {
+        String fileName = fileNames.remove(bookId);
+        if (fileName == null) {
+            return;
+        }
+        synchronized (archives) {
+            ArchiveHandle handle = archives.remove(fileName);
+            if (handle != null) {
+                handle.evict();
+            }
+        }
+    }
+
+    private static class ArchiveHandle {
+        private final EpubArchive archive;
+        private int leases;
+        private boolean evicted;
+
+        ArchiveHandle(EpubArchive archive) {
+            this.archive = archive;
+        }
+
+        synchronized Lease acquire() {
+            leases++;
+            return new Lease(this);
+        }
+
+        synchronized void release() {
+            leases--;
+            closeIfUnused();
+        }
+
+        synchronized void evict() {
+            evicted = true;
+            closeIfUnused();
+        }
+
+        private void closeIfUnused() {
+            if (evicted && leases == 0) {
+                try {
+                    archive.close();
+                } catch (IOException e) {
+                    log.warn("关闭 EPUB 失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    public static class Lease implements AutoCloseable {
+        private final ArchiveHandle handle;
+        private boolean closed;
+
+        private Lease(ArchiveHandle handle) {
+            this.handle = handle;
+        }
+
+        public EpubArchive archive() {
+            return handle.archive;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                handle.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.epub_demo1.epub;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 从 XHTML 章节中提取纯文本（用于全文索引和摘要）。
+ * 只做轻量的标签扫描，不构建 DOM。
+ */
+public final class HtmlText {
+
+    // 这些元素内的文本不计入正文
+    static final Set<String> SKIPPED = Set.of("head", "script", "style", "title");
+
+    // 块级元素前后补换行，避免相邻段落的文字粘连
+    static final Set<String> BLOCKS = Set.of(
+            "p", "div", "br", "li", "tr", "h1", "h2", "h3", "h4", "h5", "h6",
+            "section", "article", "blockquote", "pre", "hr", "table", "dt", "dd"
+    );
+
+    private HtmlText() {
+    }
+
+    public static String extract(byte[] xhtml) {
+        return extract(new String(xhtml, StandardCharsets.UTF_8));
+    }
+
+    public static String extract(String html) {
+        StringBuilder out = new StringBuilder(html.length() / 2);
+        int skipDepth = 0;
+        int i = 0;
+        int n = html.length();
+        while (i < n) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                if (html.startsWith("<!--", i)) {
+                    int end = html.indexOf("-->", i + 4);
+                    i = end < 0 ? n : end + 3;
+                    continue;
+                }
+                int end = html.indexOf('>', i + 1);
+                if (end < 0) {
+                    break;
+                }
+                String name = tagName(html, i + 1, end);
+                boolean closing = html.charAt(i + 1) == '/';
+                boolean selfClosing = html.charAt(end - 1) == '/';
+                if (SKIPPED.contains(name) && !selfClosing) {
+                    skipDepth += closing ? -1 : 1;
+                    if (skipDepth < 0) {
+                        skipDepth = 0;
+                    }
+                } else if (skipDepth == 0 && BLOCKS.contains(name)) {
+                    appendBreak(out);
+                }
+                i = end + 1;
+            } else if (skipDepth > 0) {
+                i++;
+            } else if (c == '&') {
+                int semi = html.indexOf(';', i);
+                if (semi > i && semi - i <= 10) {
+                    String decoded = decodeEntity(html.substring(i + 1, semi));
+                    if (decoded != null) {
+                        appendText(out, decoded);
+                        i = semi + 1;
+                        continue;
+                    }
+                }
+                appendChar(out, c);
+                i++;
+            } else {
+                appendChar(out, c);
+                i++;
+            }
+        }
+        // 去掉末尾空白
+        int len = out.length();
+        while (len > 0 && Character.isWhitespace(out.charAt(len - 1))) {
+            len--;
+        }
+        out.setLength(len);
+        return out.toString();
+    }
+
+    static String tagName(String html, int start, int end) {
+        int i = start;
+        if (i < end && (html.charAt(i) == '/' || html.charAt(i) == '!' || html.charAt(i) == '?')) {
+            i++;
+        }
+        int nameStart = i;
+        while (i < end) {
+            char c = html.charAt(i);
+            if (Character.isWhitespace(c) || c == '/' || c == '>') {
+                break;
+            }
+            i++;
+        }
+        String name = html.substring(nameStart, i).toLowerCase(Locale.ROOT);
+        int colon = name.indexOf(':');
+        return colon >= 0 ? name.substring(colon + 1) : name;
+    }
+
+    // 连续空白折叠为一个空格
+    private static void appendChar(StringBuilder out, char c) {
+        if (Character.isWhitespace(c) || c == '\u00A0') {
+            int len = out.length();
+            if (len > 0 && !Character.isWhitespace(out.charAt(len - 1))) {
+                out.append(' ');
+            }
+        } else {
+            out.append(c);
+        }
+    }
+
+    private static void appendText(StringBuilder out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            appendChar(out, text.charAt(i));
+        }
+    }
+
+    private static void appendBreak(StringBuilder out) {
+        int len = out.length();
+        if (len == 0) {
+            return;
+        }
+        if (out.charAt(len - 1) == ' ') {
+            out.setCharAt(len - 1, '\n');
+        } else if (out.charAt(len - 1) != '\n') {
+            out.append('\n');
+        }
+    }
+
+    static String decodeEntity(String entity) {
+        switch (entity) {
+            case "amp":
+                return "&";
+            case "lt":
+                return "<";
+            case "gt":
+                return ">";
+            case "quot":
+                return "\"";
+            case "apos":
+                return "'";
+            case "nbsp":
+                return " ";
+            default:
+                break;
+        }
+        try {
+            if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                return new String(Character.toChars(Integer.parseInt(entity.substring(2), 16)));
+            }
+            if (entity.startsWith("#")) {
+                return new String(Character.toChars(Integer.parseInt(entity.substring(1))));
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,376 @@
+package org.example.epub_demo1.ingest;
+
+import jakarta.annotation.PostConstruct;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.example.epub_demo1.cache.BookIdFilter;
+import org.example.epub_demo1.config.WorkerThreads;
+import org.example.epub_demo1.controller.BookCacheService;
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.entity.BookChange;
+import org.example.epub_demo1.entity.enums.BookCategory;
+import org.example.epub_demo1.mapper.BookChangeMapper;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.example.epub_demo1.search.CatalogSearchIndex;
+import org.example.epub_demo1.stats.BookStatsService;
+import org.example.epub_demo1.storage.BlobStore;
+import org.example.epub_demo1.sync.BookChangeLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 批量导入服务器本地目录或 ZIP 中的 EPUB。
+ * 元数据在有界线程池中并行解析，书籍行以多行 INSERT 通过 BATCH 执行器分块写入；
+ * 缓存、布隆过滤器、书名索引和统计在全部写入后统一刷新一次。
+ * 导入在后台线程中执行，调用方拿到任务后通过状态接口查询进度和报告；同一时间只允许一个导入任务。
+ */
+@Service
+public class BulkImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkImportService.class);
+
+    // 每提交一次事务包含的 INSERT 语句数
+    private static final int STATEMENTS_PER_COMMIT = 10;
+
+    @Value("${import.root-dir:imports}")
+    private String importRoot;
+
+    @Value("${import.workers:0}")
+    private int workers;
+
+    @Value("${import.batch-size:200}")
+    private int batchSize;
+
+    @Value("${import.job-retention-minutes:60}")
+    private long jobRetentionMinutes;
+
+    @Autowired
+    private EpubIngestService epubIngestService;
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    @Autowired
+    private BookCacheService bookCacheService;
+
+    @Autowired
+    private BookIdFilter bookIdFilter;
+
+    @Autowired
+    private CatalogSearchIndex catalogSearchIndex;
+
+    @Autowired
+    private BookStatsService bookStatsService;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private WorkerThreads workerThreads;
+
+    @Autowired
+    private BookChangeLog bookChangeLog;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    private Path rootLocation;
+
+    @PostConstruct
+    public void init() {
+        rootLocation = Paths.get(importRoot).toAbsolutePath().normalize();
+        if (workers <= 0) {
+            workers = Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    /**
+     * 在后台导入 import.root-dir 下的目录（递归查找 *.epub）或 ZIP 文件。
+     * 完成后任务中的报告为 {total, imported, failed, elapsedMillis, booksPerSecond, failures: [{file, error}]}。
+     *
+     * @param relativePath 相对 import.root-dir 的路径
+     * @throws IllegalArgumentException 路径不在导入目录内、不存在，或不是目录或 ZIP 文件
+     * @throws IllegalStateException    已有导入任务在运行
+     */
+    public ImportJob submit(String relativePath, BookCategory category) {
+        Path source = rootLocation.resolve(relativePath == null ? "" : relativePath).normalize();
+        if (!source.startsWith(rootLocation) || !Files.exists(source)) {
+            throw new IllegalArgumentException("导入路径无效: " + relativePath);
+        }
+        boolean directory = Files.isDirectory(source);
+        if (!directory && !source.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".zip")) {
+            throw new IllegalArgumentException("只支持目录或 ZIP 文件: " + relativePath);
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("已有导入任务在运行");
+        }
+        purgeFinishedJobs();
+
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), rootLocation.relativize(source).toString());
+        jobs.put(job.getId(), job);
+        try {
+            workerThreads.factory("import-runner-").newThread(() -> {
+                try {
+                    job.complete(directory ? importDirectory(source, category, job) : importZip(source, category, job));
+                } catch (Exception e) {
+                    log.error("批量导入失败 {}", source, e);
+                    job.fail("导入失败: " + e.getMessage());
+                } finally {
+                    running.set(false);
+                }
+            }).start();
+        } catch (RuntimeException e) {
+            jobs.remove(job.getId());
+            running.set(false);
+            throw e;
+        }
+        return job;
+    }
+
+    public ImportJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    private Map<String, Object> importDirectory(Path directory, BookCategory category, ImportJob job) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).filter(path -> isEpub(path.getFileName().toString())).toList();
+        }
+        List<ImportTask> tasks = new ArrayList<>(files.size());
+        for (Path file : files) {
+            tasks.add(new ImportTask(directory.relativize(file).toString(), () -> Files.newInputStream(file)));
+        }
+        return run(tasks, category, job);
+    }
+
+    private Map<String, Object> importZip(Path zipPath, BookCategory category, ImportJob job) throws IOException {
+        // ZipFile 支持多个线程同时读取不同条目
+        try (ZipFile zip = new ZipFile(zipPath.toFile())) {
+            List<ImportTask> tasks = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (entry.isDirectory() || !isEpub(entry.getName())) {
+                    continue;
+                }
+                tasks.add(new ImportTask(entry.getName(), () -> zip.getInputStream(entry)));
+            }
+            return run(tasks, category, job);
+        }
+    }
+
+    private Map<String, Object> run(List<ImportTask> tasks, BookCategory category, ImportJob job) {
+        job.start(tasks.size());
+        long start = System.nanoTime();
+        List<Map<String, String>> failures = Collections.synchronizedList(new ArrayList<>());
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+
+        // 解析阶段：有界队列 + CallerRunsPolicy，提交方在队列满时自己处理，任务数再多也不会堆积
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                workers, workers,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * 4),
+                workerThreads.factory("import-worker-"),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+        List<Future<Book>> parsed = new ArrayList<>(tasks.size());
+        try {
+            for (ImportTask task : tasks) {
+                parsed.add(executor.submit(() -> {
+                    try {
+                        return parse(task, category, seen, failures);
+                    } finally {
+                        job.fileParsed();
+                    }
+                }));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<Book> books = new ArrayList<>(tasks.size());
+        for (Future<Book> future : parsed) {
+            try {
+                Book book = future.get();
+                if (book != null) {
+                    books.add(book);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("导入被中断", e);
+            } catch (ExecutionException e) {
+                // parse 已自行记录失败
+                log.warn("导入任务异常: {}", e.getCause().getMessage());
+            }
+        }
+
+        List<Long> ids = insert(books, failures);
+        if (!ids.isEmpty()) {
+            bookIdFilter.addAll(ids);
+            bookCacheService.invalidateBooks(ids);
+            catalogSearchIndex.booksChanged(ids);
+            bookStatsService.reconcile();
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("total", tasks.size());
+        report.put("imported", ids.size());
+        report.put("failed", failures.size());
+        report.put("elapsedMillis", elapsedMillis);
+        report.put("booksPerSecond", elapsedMillis == 0 ? ids.size() : ids.size() * 1000.0 / elapsedMillis);
+        report.put("failures", failures);
+        log.info("批量导入完成: {} 本, 成功 {}, 失败 {}, 耗时 {} ms",
+                tasks.size(), ids.size(), failures.size(), elapsedMillis);
+        return report;
+    }
+
+    // 存入内容寻址存储并解析；失败或重复时返回 null。解析失败时回收本次新存入的文件
+    private Book parse(ImportTask task, BookCategory category, Set<String> seen,
+                       List<Map<String, String>> failures) {
+        BlobStore.Blob blob = null;
+        try {
+            try (InputStream in = task.source().open()) {
+                blob = blobStore.storeEpub(in);
+            }
+            String fileName = blob.name();
+            if (!seen.add(fileName) || (!blob.created() && bookMapper.countFileReferences(fileName) > 0)) {
+                failures.add(failure(task.path(), "重复文件，书库中已有相同内容: " + fileName));
+                return null;
+            }
+            Map<String, String> metadata = epubIngestService.ingestOrThrow(fileName, blobStore.epubPath(fileName));
+
+            Book book = new Book();
+            book.setTitle(metadata.get("title"));
+            book.setAuthor(metadata.get("author"));
+            book.setDescription(metadata.get("description"));
+            book.setCoverImagePath(metadata.get("coverImagePath"));
+            book.setCoverColor(metadata.get("coverColor"));
+            if (metadata.containsKey("wordCount")) {
+                book.setWordCount(Integer.valueOf(metadata.get("wordCount")));
+                book.setReadingMinutes(Integer.valueOf(metadata.get("readingMinutes")));
+            }
+            book.setCategory(category);
+            book.setEpubFileName(fileName);
+            book.setUploadTime(LocalDateTime.now());
+            return book;
+        } catch (Exception e) {
+            failures.add(failure(task.path(), e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage()));
+            // 已存在的文件属于其他书或其他上传，不能删除
+            if (blob != null && blob.created()) {
+                blobStore.releaseEpub(blob.name());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 按 batch-size 行一条 INSERT，每 STATEMENTS_PER_COMMIT 条提交一次。
+     * 某次提交失败时只回滚这一组，对应文件记为失败。返回写入成功的书籍 ID。
+     * 每组的变更日志在同一事务中写入。
+     */
+    private List<Long> insert(List<Book> books, List<Map<String, String>> failures) {
+        List<Long> ids = new ArrayList<>(books.size());
+        int rowsPerCommit = batchSize * STATEMENTS_PER_COMMIT;
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+            BookMapper batchMapper = session.getMapper(BookMapper.class);
+            BookChangeMapper changeMapper = session.getMapper(BookChangeMapper.class);
+            for (int from = 0; from < books.size(); from += rowsPerCommit) {
+                List<Book> group = books.subList(from, Math.min(from + rowsPerCommit, books.size()));
+                try {
+                    for (int i = 0; i < group.size(); i += batchSize) {
+                        batchMapper.addBooks(group.subList(i, Math.min(i + batchSize, group.size())));
+                    }
+                    session.flushStatements();
+                    List<Long> groupIds = selectIds(batchMapper, group);
+                    bookChangeLog.record(changeMapper, groupIds, BookChange.Op.UPSERT);
+                    session.commit();
+                    ids.addAll(groupIds);
+                } catch (RuntimeException e) {
+                    session.rollback();
+                    log.warn("批量写入失败，回滚 {} 本: {}", group.size(), e.getMessage());
+                    for (Book book : group) {
+                        failures.add(failure(book.getEpubFileName(), "写入数据库失败: " + e.getMessage()));
+                        blobStore.releaseEpub(book.getEpubFileName());
+                        blobStore.releaseCover(book.getCoverImagePath());
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    // 多行 INSERT 的自增主键回填依赖驱动，按文件名查回 ID（解析时已排除书库中已有的文件）；
+    // 在提交前通过同一会话查询，能看到本事务刚写入的行
+    private List<Long> selectIds(BookMapper mapper, List<Book> group) {
+        List<Long> ids = new ArrayList<>(group.size());
+        for (int i = 0; i < group.size(); i += batchSize) {
+            List<String> fileNames = group.subList(i, Math.min(i + batchSize, group.size())).stream()
+                    .map(Book::getEpubFileName)
+                    .toList();
+            for (Book book : mapper.selectByEpubFileNames(fileNames)) {
+                ids.add(book.getId());
+            }
+        }
+        return ids;
+    }
+
+    // ============= 辅助方法 =============
+
+    // 已完成的任务保留一段时间供查询，之后清理
+    private void purgeFinishedJobs() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(jobRetentionMinutes);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt() < expireBefore);
+    }
+
+    private static boolean isEpub(String name) {
+        return name.toLowerCase(Locale.ROOT).endsWith(".epub");
+    }
+
+    private static Map<String, String> failure(String file, String error) {
+        Map<String, String> failure = new LinkedHashMap<>();
+        failure.put("file", file);
+        failure.put("error", error);
+        return failure;
+    }
+
+    @FunctionalInterface
+    private interface Source {
+        InputStream open() throws IOException;
+    }
+
+    // path 为报告中显示的来源路径
+    private record ImportTask(String path, Source source) {
+    }
+}
@@ -0,0 +1,186 @@
+package org.example.epub_demo1.ingest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.example.epub_demo1.epub.BookLocations;
+import org.example.epub_demo1.epub.BookLocationsService;
+import org.example.epub_demo1.epub.EpubArchive;
+import org.example.epub_demo1.search.SearchIndexService;
+import org.example.epub_demo1.storage.BlobStore;
+import org.example.epub_demo1.storage.CoverThumbnailService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * EPUB 入库处理：解析元数据、保存封面、建立全文索引和位置表。
+ * 只通过 ZIP 中央目录按需读取 OPF 和封面条目，内存占用与书的大小无关。
+ */
+@Service
+public class EpubIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(EpubIngestService.class);
+
+    public static final String DEFAULT_COVER = "default-cover.jpg";
+
+    public enum Stage {
+        PARSING, COVER, INDEXING
+    }
+
+    // 单个 EPUB 条目解压后的大小上限（字节）
+    @Value("${epub.max-entry-size:67108864}")
+    private long maxEntrySize;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private CoverThumbnailService coverThumbnailService;
+
+    @Autowired
+    private BookLocationsService bookLocationsService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    public Map<String, String> ingest(String fileName, Path epubFile) {
+        return ingest(fileName, epubFile, stage -> { });
+    }
+
+    /**
+     * 处理已落盘的 EPUB，返回元数据（title/author/description/coverImagePath，
+     * 以及位置表生成成功时的 wordCount/readingMinutes）。
+     * 每进入一个阶段回调一次 stageListener。
+     */
+    public Map<String, String> ingest(String fileName, Path epubFile, Consumer<Stage> stageListener) {
+        Map<String, String> metadata;
+        try {
+            metadata = parse(epubFile, stageListener);
+        } catch (Exception e) {
+            // 解析失败时设置默认值
+            log.warn("解析 EPUB 元数据失败 {}: {}", epubFile, e.getMessage());
+            metadata = new HashMap<>();
+            metadata.put("title", "未知标题");
+            metadata.put("author", "未知作者");
+            metadata.put("description", "");
+            metadata.put("coverImagePath", DEFAULT_COVER);
+        }
+        index(fileName, epubFile, stageListener);
+        buildLocations(fileName, epubFile, metadata);
+        return metadata;
+    }
+
+    /**
+     * 与 ingest 相同，但 EPUB 无法解析时抛出异常而不是使用默认值（批量导入需要报告失败的文件）。
+     */
+    public Map<String, String> ingestOrThrow(String fileName, Path epubFile) throws IOException {
+        Map<String, String> metadata = parse(epubFile, stage -> { });
+        index(fileName, epubFile, stage -> { });
+        buildLocations(fileName, epubFile, metadata);
+        return metadata;
+    }
+
+    private Map<String, String> parse(Path epubFile, Consumer<Stage> stageListener) throws IOException {
+        Map<String, String> metadata = new HashMap<>();
+        try (EpubArchive archive = EpubArchive.open(epubFile, maxEntrySize)) {
+            stageListener.accept(Stage.PARSING);
+            Timer.Sample sample = Timer.start(meterRegistry);
+            readMetadata(archive, metadata);
+            sample.stop(stageTimer("parse"));
+
+            stageListener.accept(Stage.COVER);
+            sample = Timer.start(meterRegistry);
+            metadata.put("coverImagePath", saveCover(archive));
+            sample.stop(stageTimer("cover"));
+        }
+
+        if (!DEFAULT_COVER.equals(metadata.get("coverImagePath"))) {
+            // 缩略图和主色在当前工作线程生成，书籍入库时即可使用
+            Timer.Sample sample = Timer.start(meterRegistry);
+            String coverColor = coverThumbnailService.generate(metadata.get("coverImagePath"));
+            if (coverColor != null) {
+                metadata.put("coverColor", coverColor);
+            }
+            sample.stop(stageTimer("thumbnail"));
+        }
+        return metadata;
+    }
+
+    // 建立全文索引（失败不影响入库）
+    private void index(String fileName, Path epubFile, Consumer<Stage> stageListener) {
+        stageListener.accept(Stage.INDEXING);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            searchIndexService.indexBook(fileName, epubFile);
+        } catch (Exception e) {
+            log.warn("建立全文索引失败 {}: {}", fileName, e.getMessage());
+        }
+        sample.stop(stageTimer("index"));
+    }
+
+    // 位置表（失败不影响入库，阅读器第一次请求时会重新生成）；与全文索引同属 INDEXING 阶段
+    private void buildLocations(String fileName, Path epubFile, Map<String, String> metadata) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            BookLocations locations = bookLocationsService.build(fileName, epubFile);
+            metadata.put("wordCount", String.valueOf(locations.totalWords()));
+            metadata.put("readingMinutes", String.valueOf(bookLocationsService.readingMinutes(locations.totalWords())));
+        } catch (Exception e) {
+            log.warn("生成位置表失败 {}: {}", fileName, e.getMessage());
+        }
+        sample.stop(stageTimer("locations"));
+    }
+
+    private void readMetadata(EpubArchive archive, Map<String, String> metadata) {
+        String title = archive.getTitle();
+        metadata.put("title", StringUtils.hasText(title) ? title : "未知标题");
+
+        String author = archive.getCreator();
+        metadata.put("author", StringUtils.hasText(author) ? author : "未知作者");
+
+        String description = archive.getDescription();
+        metadata.put("description", description != null ? description : "");
+    }
+
+    // 封面条目直接从 ZIP 流式写入磁盘
+    private String saveCover(EpubArchive archive) throws IOException {
+        EpubArchive.ManifestItem cover = archive.getCoverItem();
+        String extension = cover == null ? null : getImageExtension(cover.getMediaType());
+        if (extension == null || archive.getEntry(cover.getHref()) == null) {
+            return DEFAULT_COVER;
+        }
+        // 相同封面只保存一份
+        try (InputStream in = archive.openEntry(cover.getHref())) {
+            return blobStore.storeCover(in, extension).name();
+        }
+    }
+
+    // 获取图片扩展名；SVG 可带脚本，/covers 与 API 同源，不保存（用默认封面）
+    private String getImageExtension(String mimeType) {
+        if ("image/png".equals(mimeType)) return ".png";
+        if ("image/gif".equals(mimeType)) return ".gif";
+        if ("image/webp".equals(mimeType)) return ".webp";
+        if ("image/svg+xml".equals(mimeType)) return null;
+        return ".jpg"; // 默认
+    }
+
+    private Timer stageTimer(String stage) {
+        return Timer.builder("epub.ingest.stage")
+                .description("EPUB 入库各阶段耗时")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.epub_demo1.ingest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一次批量导入任务。状态字段由导入线程写、由查询接口读，均为 volatile。
+ */
+public class ImportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    private final String id;
+    private final String path;
+    private final long createdAt = System.currentTimeMillis();
+    // 已解析（成功或失败）的文件数
+    private final AtomicInteger parsed = new AtomicInteger();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile int total = -1;
+    private volatile Map<String, Object> report;
+    private volatile String error;
+    private volatile long finishedAt;
+
+    public ImportJob(String id, String path) {
+        this.id = id;
+        this.path = path;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    void start(int total) {
+        this.total = total;
+        status = Status.RUNNING;
+    }
+
+    void fileParsed() {
+        parsed.incrementAndGet();
+    }
+
+    void complete(Map<String, Object> report) {
+        this.report = report;
+        finishedAt = System.currentTimeMillis();
+        status = Status.DONE;
+    }
+
+    void fail(String error) {
+        this.error = error;
+        finishedAt = System.currentTimeMillis();
+        status = Status.FAILED;
+    }
+
+    public Map<String, Object> toResponse() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("jobId", id);
+        response.put("path", path);
+        response.put("status", status);
+        if (total >= 0) {
+            response.put("total", total);
+            response.put("parsed", parsed.get());
+        }
+        if (report != null) {
+            response.put("report", report);
+        }
+        if (error != null) {
+            response.put("error", error);
+        }
+        response.put("elapsedMillis", (finishedAt > 0 ? finishedAt : System.currentTimeMillis()) - createdAt);
+        return response;
+    }
+}
@@ -0,0 +1,129 @@
+package org.example.epub_demo1.ingest;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一次上传的后台处理任务。状态字段由工作线程写、由查询接口读，均为 volatile。
+ */
+public class UploadJob {
+
+    public enum Status {
+        QUEUED, PROCESSING, DONE, FAILED
+    }
+
+    private final String id;
+    private final String fileName;
+    private final Path file;
+    private final long createdAt = System.currentTimeMillis();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile EpubIngestService.Stage stage;
+    private volatile Map<String, String> metadata;
+    private volatile String error;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+
+    public UploadJob(String id, String fileName, Path file) {
+        this.id = id;
+        this.fileName = fileName;
+        this.file = file;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    void start() {
+        startedAt = System.currentTimeMillis();
+        status = Status.PROCESSING;
+    }
+
+    void enterStage(EpubIngestService.Stage stage) {
+        this.stage = stage;
+    }
+
+    void complete(Map<String, String> metadata) {
+        this.metadata = metadata;
+        finishedAt = System.currentTimeMillis();
+        status = Status.DONE;
+    }
+
+    void fail(String error) {
+        this.error = error;
+        finishedAt = System.currentTimeMillis();
+        status = Status.FAILED;
+    }
+
+    // 粗略进度：排队 0，各阶段依次推进，完成 100
+    public int getProgress() {
+        switch (status) {
+            case QUEUED:
+                return 0;
+            case DONE:
+            case FAILED:
+                return 100;
+            default:
+                break;
+        }
+        if (stage == null) {
+            return 5;
+        }
+        switch (stage) {
+            case PARSING:
+                return 10;
+            case COVER:
+                return 40;
+            default:
+                return 60;
+        }
+    }
+
+    public Map<String, Object> toResponse() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("jobId", id);
+        response.put("fileName", fileName);
+        response.put("status", status);
+        response.put("stage", stage);
+        response.put("progress", getProgress());
+        if (metadata != null) {
+            response.put("metadata", metadata);
+            response.put("coverImagePath", metadata.get("coverImagePath"));
+        }
+        if (error != null) {
+            response.put("error", error);
+        }
+        if (startedAt > 0) {
+            response.put("queuedMillis", startedAt - createdAt);
+        }
+        if (finishedAt > 0) {
+            response.put("processingMillis", finishedAt - startedAt);
+        }
+        return response;
+    }
+}
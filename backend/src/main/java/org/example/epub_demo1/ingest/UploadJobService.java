@@ -0,0 +1,143 @@
+package org.example.epub_demo1.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.epub_demo1.config.WorkerThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上传后台处理队列。
+ * 固定大小的工作线程池 + 有界队列：队列满时直接拒绝（调用方返回 503），避免上传洪峰占满 Tomcat 线程。
+ */
+@Service
+public class UploadJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadJobService.class);
+
+    @Value("${upload.workers:2}")
+    private int workers;
+
+    @Value("${upload.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${upload.job-retention-minutes:30}")
+    private long jobRetentionMinutes;
+
+    @Autowired
+    private EpubIngestService epubIngestService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private WorkerThreads workerThreads;
+
+    private final Map<String, UploadJob> jobs = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+    private Counter rejectedCounter;
+    private Counter completedCounter;
+    private Counter failedCounter;
+    private Timer waitTimer;
+    private Timer processTimer;
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(
+                workers, workers,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                workerThreads.factory("upload-worker-"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        Gauge.builder("upload.queue.depth", executor, e -> e.getQueue().size())
+                .description("等待处理的上传任务数")
+                .register(meterRegistry);
+        Gauge.builder("upload.workers.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("正在处理的上传任务数")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("upload.jobs.rejected")
+                .description("因队列已满被拒绝的上传")
+                .register(meterRegistry);
+        completedCounter = Counter.builder("upload.jobs.completed").register(meterRegistry);
+        failedCounter = Counter.builder("upload.jobs.failed").register(meterRegistry);
+        waitTimer = Timer.builder("upload.job.wait")
+                .description("上传任务排队时间")
+                .register(meterRegistry);
+        processTimer = Timer.builder("upload.job.process")
+                .description("上传任务处理时间")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("上传队列关闭超时，仍有 {} 个任务未处理", executor.getQueue().size());
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 提交已落盘文件的后续处理。队列已满时抛出 RejectedExecutionException。
+     */
+    public UploadJob submit(String fileName, Path file) {
+        purgeFinishedJobs();
+
+        UploadJob job = new UploadJob(UUID.randomUUID().toString(), fileName, file);
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> process(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            rejectedCounter.increment();
+            throw e;
+        }
+        return job;
+    }
+
+    public UploadJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    private void process(UploadJob job) {
+        long dequeuedAt = System.currentTimeMillis();
+        waitTimer.record(Duration.ofMillis(dequeuedAt - job.getCreatedAt()));
+        job.start();
+        try {
+            Map<String, String> metadata = processTimer.recordCallable(
+                    () -> epubIngestService.ingest(job.getFileName(), job.getFile(), job::enterStage));
+            job.complete(metadata);
+            completedCounter.increment();
+        } catch (Exception e) {
+            log.error("上传处理失败 {}", job.getFileName(), e);
+            job.fail("处理失败: " + e.getMessage());
+            failedCounter.increment();
+        }
+    }
+
+    // 已完成的任务保留一段时间供查询，之后清理
+    private void purgeFinishedJobs() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(jobRetentionMinutes);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt() < expireBefore);
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.epub_demo1.mapper;
+
+import org.apache.ibatis.annotations.*;
+import org.example.epub_demo1.entity.Annotation;
+import org.example.epub_demo1.reading.AnnotationService;
+
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface AnnotationMapper {
+
+    // 走 (user_id, book_id, chapter_idx, start_offset) 索引，结果已按章节和位置排好序；deleted = 1 为同步用的删除标记
+    @Select({
+            "<script>",
+            "SELECT * FROM annotations WHERE user_id = #{userId} AND book_id = #{bookId} AND chapter_idx IN",
+            "<foreach collection='chapters' item='c' open='(' separator=',' close=')'>#{c}</foreach>",
+            "AND deleted = 0",
+            "ORDER BY chapter_idx, start_offset, id",
+            "</script>"
+    })
+    List<Annotation> selectByChapters(@Param("userId") int userId, @Param("bookId") long bookId,
+                                      @Param("chapters") Collection<Integer> chapters);
+
+    @Select("SELECT * FROM annotations WHERE id = #{id} AND user_id = #{userId} AND book_id = #{bookId} AND deleted = 0")
+    Annotation selectOwned(@Param("id") long id, @Param("userId") int userId, @Param("bookId") long bookId);
+
+    @Insert("INSERT INTO annotations (user_id, book_id, chapter_idx, start_offset, cfi_range, type, color, note, quote, " +
+            "client_id, created_at, updated_at) VALUES (#{userId}, #{bookId}, #{chapterIdx}, #{startOffset}, #{cfiRange}, " +
+            "#{type}, #{color}, #{note}, #{quote}, #{clientId}, #{createdAt}, #{updatedAt})")
+    @Options(useGeneratedKeys = true, keyProperty = "id", keyColumn = "id")
+    int addAnnotation(Annotation annotation);
+
+    // 锚点不变，只能修改类型、颜色和笔记内容
+    @Update("UPDATE annotations SET type = #{type}, color = #{color}, note = #{note}, updated_at = #{updatedAt} " +
+            "WHERE id = #{id} AND user_id = #{userId} AND deleted = 0")
+    int updateAnnotation(Annotation annotation);
+
+    // 只做删除标记：离线客户端之后提交的更早的修改不会使其复活
+    @Update("UPDATE annotations SET deleted = 1, updated_at = #{updatedAt} " +
+            "WHERE id = #{id} AND user_id = #{userId} AND book_id = #{bookId} AND deleted = 0")
+    int deleteAnnotation(@Param("id") long id, @Param("userId") int userId, @Param("bookId") long bookId,
+                         @Param("updatedAt") long updatedAt);
+
+    // 离线同步：按 (user_id, client_id) 去重的多行 upsert，已有更新的修改或删除时保持不变（updated_at 最后赋值）；
+    // 比删除更晚的修改会使记录复活（时间相同时删除优先）。book_id 不更新，调用方须先确认 client_id 不属于其他书
+    @Insert({
+            "<script>",
+            "INSERT INTO annotations (user_id, book_id, chapter_idx, start_offset, cfi_range, type, color, note, quote,",
+            "client_id, created_at, updated_at) VALUES",
+            "<foreach collection='rows' item='a' separator=','>",
+            "(#{a.userId}, #{a.bookId}, #{a.chapterIdx}, #{a.startOffset}, #{a.cfiRange}, #{a.type}, #{a.color},",
+            "#{a.note}, #{a.quote}, #{a.clientId}, #{a.createdAt}, #{a.updatedAt})",
+            "</foreach>",
+            "ON DUPLICATE KEY UPDATE",
+            "chapter_idx = IF(VALUES(updated_at) >= updated_at, VALUES(chapter_idx), chapter_idx),",
+            "start_offset = IF(VALUES(updated_at) >= updated_at, VALUES(start_offset), start_offset),",
+            "cfi_range = IF(VALUES(updated_at) >= updated_at, VALUES(cfi_range), cfi_range),",
+            "type = IF(VALUES(updated_at) >= updated_at, VALUES(type), type),",
+            "color = IF(VALUES(updated_at) >= updated_at, VALUES(color), color),",
+            "note = IF(VALUES(updated_at) >= updated_at, VALUES(note), note),",
+            "quote = IF(VALUES(updated_at) >= updated_at, VALUES(quote), quote),",
+            "deleted = IF(VALUES(updated_at) > updated_at, 0, deleted),",
+            "updated_at = GREATEST(updated_at, VALUES(updated_at))",
+            "</script>"
+    })
+    int upsertAll(@Param("rows") List<Annotation> rows);
+
+    @Select({
+            "<script>",
+            "SELECT * FROM annotations WHERE user_id = #{userId} AND book_id = #{bookId} AND client_id IN",
+            "<foreach collection='clientIds' item='c' open='(' separator=',' close=')'>#{c}</foreach>",
+            "AND deleted = 0",
+            "</script>"
+    })
+    List<Annotation> selectByClientIds(@Param("userId") int userId, @Param("bookId") long bookId,
+                                       @Param("clientIds") Collection<String> clientIds);
+
+    // 该用户下这些 client_id 的记录（任何书，包括删除标记），加锁到事务结束：
+    // 已有的行和唯一索引上的间隙都被锁住，检查之后其他请求不能用同一 client_id 插入或修改
+    @Select({
+            "<script>",
+            "SELECT * FROM annotations WHERE user_id = #{userId} AND client_id IN",
+            "<foreach collection='clientIds' item='c' open='(' separator=',' close=')'>#{c}</foreach>",
+            "FOR UPDATE",
+            "</script>"
+    })
+    List<Annotation> lockByClientIds(@Param("userId") int userId, @Param("clientIds") Collection<String> clientIds);
+
+    // 离线同步的删除：只标记删除时间不早于记录最后修改时间的（相同时删除优先）
+    @Update({
+            "<script>",
+            "UPDATE annotations SET deleted = 1, updated_at = CASE client_id",
+            "<foreach collection='deletions' item='d'>WHEN #{d.clientId} THEN #{d.deletedAt} </foreach>",
+            "END",
+            "WHERE user_id = #{userId} AND book_id = #{bookId} AND deleted = 0 AND (",
+            "<foreach collection='deletions' item='d' separator=' OR '>",
+            "(client_id = #{d.clientId} AND updated_at &lt;= #{d.deletedAt})",
+            "</foreach>",
+            ")",
+            "</script>"
+    })
+    int markDeleted(@Param("userId") int userId, @Param("bookId") long bookId,
+                    @Param("deletions") Collection<AnnotationService.Deletion> deletions);
+}
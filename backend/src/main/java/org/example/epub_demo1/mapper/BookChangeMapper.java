@@ -0,0 +1,48 @@
+package org.example.epub_demo1.mapper;
+
+import org.apache.ibatis.annotations.*;
+import org.example.epub_demo1.entity.BookChange;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface BookChangeMapper {
+
+    // 锁住计数器行直到事务提交，之后的写入者排队，版本号按提交顺序分配
+    @Select("SELECT version FROM book_change_seq WHERE id = 1 FOR UPDATE")
+    long lockVersion();
+
+    @Update("UPDATE book_change_seq SET version = #{version} WHERE id = 1")
+    int setVersion(@Param("version") long version);
+
+    // 已提交的最新版本号（一致性读，不等待写入者）
+    @Select("SELECT version FROM book_change_seq WHERE id = 1")
+    long currentVersion();
+
+    @Insert({
+            "<script>",
+            "INSERT INTO book_changes (version, book_id, op, changed_at) VALUES",
+            "<foreach collection='changes' item='c' separator=','>",
+            "(#{c.version}, #{c.bookId}, #{c.op}, #{c.changedAt})",
+            "</foreach>",
+            "</script>"
+    })
+    int addChanges(@Param("changes") List<BookChange> changes);
+
+    // (since, upTo] 区间内的变更，按版本号升序
+    @Select("SELECT * FROM book_changes WHERE version > #{since} AND version <= #{upTo} ORDER BY version LIMIT #{limit}")
+    List<BookChange> selectSince(@Param("since") long since, @Param("upTo") long upTo, @Param("limit") int limit);
+
+    // 日志中保留的最小版本号，日志为空时为 null
+    @Select("SELECT MIN(version) FROM book_changes")
+    Long minVersion();
+
+    // 早于 before 的最大版本号；各节点时钟可能有偏差，清理按版本号进行，保证删除的总是日志开头的一段
+    @Select("SELECT MAX(version) FROM book_changes WHERE changed_at < #{before}")
+    Long maxVersionBefore(@Param("before") LocalDateTime before);
+
+    // 分批删除，避免一次删除大量行长时间持锁
+    @Delete("DELETE FROM book_changes WHERE version <= #{upTo} ORDER BY version LIMIT #{limit}")
+    int deleteUpTo(@Param("upTo") long upTo, @Param("limit") int limit);
+}
@@ -1,9 +1,14 @@
 package org.example.epub_demo1.mapper;
 
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.jdbc.SQL;
+import org.apache.ibatis.mapping.ResultSetType;
 import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.entity.BookCard;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -18,10 +23,64 @@ public interface BookMapper {
             @Param("category") String category
     );
 
+    // 书架分页（按 upload_time, id 倒序的游标分页），只查询卡片所需的列
+    @SelectProvider(type = BookSqlBuilder.class, method = "buildPageSql")
+    List<BookCard> selectPage(
+            @Param("category") String category,
+            @Param("afterTime") LocalDateTime afterTime,
+            @Param("afterId") Long afterId,
+            @Param("limit") int limit
+    );
+
     // 添加根据ID查询单本书籍的方法
     @Select("SELECT * FROM books WHERE id = #{id}")
     Book selectById(Long id);
 
+    // 全部书籍 ID（构建 ID 布隆过滤器）
+    @Select("SELECT id FROM books")
+    List<Long> selectAllIds();
+
+    // 全表流式读取（/getall/stream）：fetchSize=Integer.MIN_VALUE 让 MySQL 驱动逐行读取，不在内存中缓存结果集
+    @Select("SELECT * FROM books ORDER BY id")
+    @Options(fetchSize = Integer.MIN_VALUE, resultSetType = ResultSetType.FORWARD_ONLY)
+    Cursor<Book> streamAll();
+
+    // 书名检索索引只需要这几列
+    @Select("SELECT id, title, author, category FROM books")
+    List<Book> selectSearchFields();
+
+    // 按 ID 批量查询（书名检索结果回填）
+    @Select({
+            "<script>",
+            "SELECT * FROM books WHERE id IN",
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>",
+            "#{id}",
+            "</foreach>",
+            "ORDER BY id",
+            "</script>"
+    })
+    List<Book> selectByIds(@Param("ids") Collection<Long> ids);
+
+    // 文件被多少本书引用（内容寻址存储的引用计数）
+    @Select("SELECT COUNT(*) FROM books WHERE epub_file_name = #{name} OR cover_image_path = #{name}")
+    int countFileReferences(@Param("name") String name);
+
+    // 所有被引用的 EPUB 和封面文件名（存储清理用）
+    @Select("SELECT epub_file_name FROM books WHERE epub_file_name IS NOT NULL"
+            + " UNION SELECT cover_image_path FROM books WHERE cover_image_path IS NOT NULL")
+    List<String> selectReferencedFileNames();
+
+    // 按 EPUB 文件名批量查询（全文检索结果回填书籍信息）
+    @Select({
+            "<script>",
+            "SELECT * FROM books WHERE epub_file_name IN",
+            "<foreach collection='fileNames' item='fileName' open='(' separator=',' close=')'>",
+            "#{fileName}",
+            "</foreach>",
+            "</script>"
+    })
+    List<Book> selectByEpubFileNames(@Param("fileNames") Collection<String> fileNames);
+
     //删除书籍
     @Delete("delete from books where id = #{id}")
     int DeleBook(long id);
@@ -30,15 +89,32 @@ public interface BookMapper {
     @Insert({
             "<script>",
             "INSERT INTO books (",
-            "title, author, description, category, cover_image_path, epub_file_name, upload_time",
+            "title, author, description, category, cover_image_path, cover_color, epub_file_name, upload_time,",
+            "word_count, reading_minutes",
             ") VALUES (",
-            "#{title}, #{author}, #{description}, #{category}, #{coverImagePath}, #{epubFileName}, #{uploadTime}",
+            "#{title}, #{author}, #{description}, #{category}, #{coverImagePath}, #{coverColor}, #{epubFileName}, #{uploadTime},",
+            "#{wordCount}, #{readingMinutes}",
             ")",
             "</script>"
     })
     @Options(useGeneratedKeys = true, keyProperty = "id", keyColumn = "id") // 确保自增 ID 回填
     int addBook(Book book);
 
+    // 多行插入（批量导入）
+    @Insert({
+            "<script>",
+            "INSERT INTO books (",
+            "title, author, description, category, cover_image_path, cover_color, epub_file_name, upload_time,",
+            "word_count, reading_minutes",
+            ") VALUES",
+            "<foreach collection='books' item='b' separator=','>",
+            "(#{b.title}, #{b.author}, #{b.description}, #{b.category}, #{b.coverImagePath}, #{b.coverColor}, #{b.epubFileName}, #{b.uploadTime},",
+            "#{b.wordCount}, #{b.readingMinutes})",
+            "</foreach>",
+            "</script>"
+    })
+    int addBooks(@Param("books") List<Book> books);
+
     // 修改书籍信息
     @Update({
             "<script>",
@@ -49,13 +125,20 @@ public interface BookMapper {
             "description = #{description},",
             "category = #{category},",
             "cover_image_path = #{coverImagePath},",
+            "cover_color = #{coverColor},",
             "epub_file_name = #{epubFileName},",
-            "upload_time = #{uploadTime}",
+            "upload_time = #{uploadTime},",
+            "word_count = #{wordCount},",
+            "reading_minutes = #{readingMinutes}",
             "WHERE id = #{id}",
             "</script>"
     })
     int upBook(Book book);
 
+    // 回填封面主色；封面已被再次更换或主色已填写时不修改
+    @Update("UPDATE books SET cover_color = #{color} WHERE id = #{id} AND cover_image_path = #{cover} AND cover_color IS NULL")
+    int fillCoverColor(@Param("id") Long id, @Param("cover") String coverImagePath, @Param("color") String color);
+
     // SQL构建器类
     class BookSqlBuilder {
         public String buildGetAllSql(Map<String, Object> params) {
@@ -74,6 +157,22 @@ public interface BookMapper {
             }}.toString();
         }
 
+        // 依赖索引 (upload_time, id) 和 (category, upload_time, id)，见 db/upgrade.sql
+        public String buildPageSql(Map<String, Object> params) {
+            return new SQL() {{
+                SELECT("id, title, author, category, cover_image_path, cover_color, upload_time");
+                FROM("books");
+                if (hasValue(params.get("category"))) {
+                    WHERE("category = #{category}");
+                }
+                if (params.get("afterTime") != null) {
+                    WHERE("(upload_time < #{afterTime} OR (upload_time = #{afterTime} AND id < #{afterId}))");
+                }
+                ORDER_BY("upload_time DESC, id DESC");
+                LIMIT("#{limit}");
+            }}.toString();
+        }
+
         private boolean hasValue(Object value) {
             return value != null && !value.toString().isEmpty();
         }
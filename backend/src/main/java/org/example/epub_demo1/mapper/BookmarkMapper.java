@@ -0,0 +1,22 @@
+package org.example.epub_demo1.mapper;
+
+import org.apache.ibatis.annotations.*;
+import org.example.epub_demo1.entity.Bookmark;
+
+import java.util.List;
+
+@Mapper
+public interface BookmarkMapper {
+
+    @Select("SELECT * FROM bookmarks WHERE user_id = #{userId} AND book_id = #{bookId} ORDER BY created_at, id")
+    List<Bookmark> selectByBook(@Param("userId") int userId, @Param("bookId") long bookId);
+
+    @Insert("INSERT INTO bookmarks (user_id, book_id, cfi, label, created_at) " +
+            "VALUES (#{userId}, #{bookId}, #{cfi}, #{label}, #{createdAt})")
+    @Options(useGeneratedKeys = true, keyProperty = "id", keyColumn = "id")
+    int addBookmark(Bookmark bookmark);
+
+    // 带上 user_id，只能删除自己的书签
+    @Delete("DELETE FROM bookmarks WHERE id = #{id} AND user_id = #{userId} AND book_id = #{bookId}")
+    int deleteBookmark(@Param("id") long id, @Param("userId") int userId, @Param("bookId") long bookId);
+}
@@ -0,0 +1,33 @@
+package org.example.epub_demo1.mapper;
+
+import org.apache.ibatis.annotations.*;
+import org.example.epub_demo1.entity.ReadingProgress;
+
+import java.util.List;
+
+@Mapper
+public interface ReadingProgressMapper {
+
+    // 多行 upsert；已有更新的记录时保持不变（updated_at 必须最后赋值，前面的比较用的是旧值）
+    @Insert({
+            "<script>",
+            "INSERT INTO reading_progress (user_id, book_id, cfi, percentage, chapter_index, updated_at) VALUES",
+            "<foreach collection='rows' item='p' separator=','>",
+            "(#{p.userId}, #{p.bookId}, #{p.cfi}, #{p.percentage}, #{p.chapterIndex}, #{p.updatedAt})",
+            "</foreach>",
+            "ON DUPLICATE KEY UPDATE",
+            "cfi = IF(VALUES(updated_at) >= updated_at, VALUES(cfi), cfi),",
+            "percentage = IF(VALUES(updated_at) >= updated_at, VALUES(percentage), percentage),",
+            "chapter_index = IF(VALUES(updated_at) >= updated_at, VALUES(chapter_index), chapter_index),",
+            "updated_at = GREATEST(updated_at, VALUES(updated_at))",
+            "</script>"
+    })
+    int upsertAll(@Param("rows") List<ReadingProgress> rows);
+
+    @Select("SELECT * FROM reading_progress WHERE user_id = #{userId} AND book_id = #{bookId}")
+    ReadingProgress selectOne(@Param("userId") int userId, @Param("bookId") long bookId);
+
+    // 最近阅读的书，按最后阅读时间倒序
+    @Select("SELECT * FROM reading_progress WHERE user_id = #{userId} ORDER BY updated_at DESC LIMIT #{limit}")
+    List<ReadingProgress> selectRecent(@Param("userId") int userId, @Param("limit") int limit);
+}
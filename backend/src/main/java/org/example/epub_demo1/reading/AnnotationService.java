@@ -0,0 +1,317 @@
+package org.example.epub_demo1.reading;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.example.epub_demo1.cache.AfterCommit;
+import org.example.epub_demo1.entity.Annotation;
+import org.example.epub_demo1.mapper.AnnotationMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 划线和笔记。阅读器按章节加载，每章的结果缓存在 Redis 中：每个用户每本书一个 hash，
+ * 字段 c:{章节序号} 为该章的 JSON 列表，字段 v 为版本号。写入后只删除受影响章节的字段并递增版本号；
+ * 回填时版本号已变化则放弃，查库期间发生的修改不会被旧结果覆盖。
+ * <p>
+ * 删除只做标记（deleted = 1），保留 client_id 和删除时间：离线同步按 updated_at 以后写为准，
+ * 比删除更早的修改不会使记录复活，更晚的修改则会。
+ */
+@Service
+public class AnnotationService {
+
+    private static final Logger log = LoggerFactory.getLogger(AnnotationService.class);
+    private static final String KEY_PREFIX = "annotations:";
+    private static final String VERSION_FIELD = "v";
+    private static final String CHAPTER_FIELD_PREFIX = "c:";
+
+    // ARGV: 读取时的版本号（不存在为空串），若干对 字段/值，最后一个为 TTL（秒）
+    private static final RedisScript<Long> FILL = new DefaultRedisScript<>(
+            "if (redis.call('HGET', KEYS[1], 'v') or '') ~= ARGV[1] then return 0 end "
+                    + "for i = 2, #ARGV - 1, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[#ARGV]) "
+                    + "return 1",
+            Long.class);
+
+    // ARGV: TTL（秒），要删除的章节字段
+    private static final RedisScript<Long> INVALIDATE = new DefaultRedisScript<>(
+            "redis.call('HINCRBY', KEYS[1], 'v', 1) "
+                    + "for i = 2, #ARGV do redis.call('HDEL', KEYS[1], ARGV[i]) end "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    @Value("${annotations.cache-ttl-minutes:30}")
+    private int cacheTtlMinutes;
+
+    @Value("${annotations.sync-batch-size:200}")
+    private int syncBatchSize;
+
+    @Autowired
+    private AnnotationMapper annotationMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private JavaType listType;
+    private Counter hitCounter;
+    private Counter missCounter;
+
+    @PostConstruct
+    public void init() {
+        listType = objectMapper.getTypeFactory().constructCollectionType(List.class, Annotation.class);
+        hitCounter = Counter.builder("annotations.cache.requests")
+                .tag("result", "hit")
+                .description("按章节读取划线和笔记的缓存命中")
+                .register(meterRegistry);
+        missCounter = Counter.builder("annotations.cache.requests")
+                .tag("result", "miss")
+                .description("按章节读取划线和笔记的缓存未命中")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 指定章节的划线和笔记，按章节顺序、章内位置排序。未缓存的章节用一次查询加载。
+     */
+    public List<Annotation> byChapters(int userId, long bookId, List<Integer> chapters) {
+        String key = key(userId, bookId);
+        List<String> fields = new ArrayList<>(chapters.size() + 1);
+        fields.add(VERSION_FIELD);
+        chapters.forEach(chapter -> fields.add(CHAPTER_FIELD_PREFIX + chapter));
+
+        List<String> cached = null;
+        try {
+            cached = stringRedisTemplate.<String, String>opsForHash().multiGet(key, fields);
+        } catch (RuntimeException e) {
+            log.warn("读取划线缓存失败 {}: {}", key, e.getMessage());
+        }
+
+        Map<Integer, List<Annotation>> byChapter = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < chapters.size(); i++) {
+            List<Annotation> annotations = cached == null ? null : decode(cached.get(i + 1));
+            if (annotations == null) {
+                missing.add(chapters.get(i));
+            } else {
+                byChapter.put(chapters.get(i), annotations);
+            }
+        }
+        hitCounter.increment(chapters.size() - missing.size());
+
+        if (!missing.isEmpty()) {
+            missCounter.increment(missing.size());
+            Map<Integer, List<Annotation>> loaded = new HashMap<>();
+            // 没有划线的章节也缓存空列表
+            missing.forEach(chapter -> loaded.put(chapter, new ArrayList<>()));
+            for (Annotation annotation : annotationMapper.selectByChapters(userId, bookId, missing)) {
+                loaded.get(annotation.getChapterIdx()).add(annotation);
+            }
+            byChapter.putAll(loaded);
+            if (cached != null) {
+                fill(key, cached.get(0), loaded);
+            }
+        }
+
+        List<Annotation> result = new ArrayList<>();
+        chapters.forEach(chapter -> result.addAll(byChapter.get(chapter)));
+        return result;
+    }
+
+    public Annotation add(Annotation annotation) {
+        annotation.setCreatedAt(LocalDateTime.now());
+        annotationMapper.addAnnotation(annotation);
+        invalidate(annotation.getUserId(), annotation.getBookId(), List.of(annotation.getChapterIdx()));
+        return annotation;
+    }
+
+    /**
+     * 修改类型、颜色和笔记内容。
+     *
+     * @return 修改后的记录；不存在或不属于该用户时为 null
+     */
+    public Annotation update(int userId, long bookId, long id, Annotation changes) {
+        Annotation annotation = annotationMapper.selectOwned(id, userId, bookId);
+        if (annotation == null) {
+            return null;
+        }
+        if (changes.getType() != null) {
+            annotation.setType(changes.getType());
+        }
+        annotation.setColor(changes.getColor());
+        annotation.setNote(changes.getNote());
+        annotation.setUpdatedAt(System.currentTimeMillis());
+        annotationMapper.updateAnnotation(annotation);
+        invalidate(userId, bookId, List.of(annotation.getChapterIdx()));
+        return annotation;
+    }
+
+    public boolean delete(int userId, long bookId, long id) {
+        Annotation annotation = annotationMapper.selectOwned(id, userId, bookId);
+        if (annotation == null
+                || annotationMapper.deleteAnnotation(id, userId, bookId, System.currentTimeMillis()) == 0) {
+            return false;
+        }
+        invalidate(userId, bookId, List.of(annotation.getChapterIdx()));
+        return true;
+    }
+
+    /**
+     * 离线客户端的批量同步：按 client_id 新增或修改（分批多行 upsert），再删除 deleted 中的记录。
+     * 修改和删除都按时间以后写为准，删除时间与修改时间相同时删除优先。重复提交同一批数据结果不变。
+     *
+     * @return 同步后 upserts 对应的记录（带服务端 ID，已被更晚的删除覆盖的不返回）
+     * @throws IllegalStateException 某个 client_id 已属于该用户的其他书籍
+     */
+    @Transactional
+    public List<Annotation> sync(int userId, long bookId, List<Annotation> upserts, List<Deletion> deleted) {
+        Set<String> clientIds = new LinkedHashSet<>();
+        deleted.forEach(deletion -> clientIds.add(deletion.clientId()));
+        upserts.forEach(annotation -> clientIds.add(annotation.getClientId()));
+        if (clientIds.isEmpty()) {
+            return List.of();
+        }
+        // upsert 不修改 book_id，client_id 属于其他书时会改到那本书的记录并清错缓存；
+        // 加锁读取，检查之后到写入之前不会有其他请求占用这些 client_id。修改和删除之前所在的章节也要失效
+        Set<Integer> touched = new LinkedHashSet<>();
+        for (Annotation existing : annotationMapper.lockByClientIds(userId, clientIds)) {
+            if (existing.getBookId() != bookId) {
+                throw new IllegalStateException("clientId 已用于其他书籍: " + existing.getClientId());
+            }
+            touched.add(existing.getChapterIdx());
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for (Annotation annotation : upserts) {
+            annotation.setCreatedAt(now);
+            touched.add(annotation.getChapterIdx());
+        }
+        for (int from = 0; from < upserts.size(); from += syncBatchSize) {
+            annotationMapper.upsertAll(upserts.subList(from, Math.min(from + syncBatchSize, upserts.size())));
+        }
+        if (!deleted.isEmpty()) {
+            annotationMapper.markDeleted(userId, bookId, deleted);
+        }
+        invalidate(userId, bookId, touched);
+
+        if (upserts.isEmpty()) {
+            return List.of();
+        }
+        List<String> upserted = upserts.stream().map(Annotation::getClientId).toList();
+        return annotationMapper.selectByClientIds(userId, bookId, upserted);
+    }
+
+    /**
+     * 离线删除的记录。
+     *
+     * @param deletedAt 客户端删除时的时间戳（毫秒），早于服务端记录最后修改时间的删除不生效
+     */
+    public record Deletion(String clientId, Long deletedAt) {
+    }
+
+    /**
+     * CFI 所在章节在阅读顺序中的序号：epubcfi(/6/N[idref]!...) 中 N 为 itemref 的步进，序号为 N/2 - 1。
+     *
+     * @return 无法解析时为 -1
+     */
+    public static int chapterIndex(String cfi) {
+        int bang = cfi == null ? -1 : cfi.indexOf('!');
+        if (bang < 0 || !cfi.startsWith("epubcfi(/")) {
+            return -1;
+        }
+        String[] steps = cfi.substring("epubcfi(".length(), bang).split("/");
+        if (steps.length != 3) {
+            return -1;
+        }
+        String step = steps[2];
+        int bracket = step.indexOf('[');
+        if (bracket >= 0) {
+            step = step.substring(0, bracket);
+        }
+        try {
+            int n = Integer.parseInt(step);
+            return n >= 2 && n % 2 == 0 ? n / 2 - 1 : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // 提交后执行，回滚时缓存不受影响
+    private void invalidate(int userId, long bookId, Collection<Integer> chapters) {
+        if (chapters.isEmpty()) {
+            return;
+        }
+        String key = key(userId, bookId);
+        List<String> args = new ArrayList<>(chapters.size() + 1);
+        args.add(String.valueOf(ttlSeconds()));
+        chapters.forEach(chapter -> args.add(CHAPTER_FIELD_PREFIX + chapter));
+        AfterCommit.run(() -> {
+            try {
+                stringRedisTemplate.execute(INVALIDATE, List.of(key), args.toArray());
+            } catch (RuntimeException e) {
+                log.error("清除划线缓存失败 {} {}: {}", key, chapters, e.getMessage());
+            }
+        });
+    }
+
+    private void fill(String key, String version, Map<Integer, List<Annotation>> loaded) {
+        List<String> args = new ArrayList<>(loaded.size() * 2 + 2);
+        args.add(version == null ? "" : version);
+        try {
+            for (Map.Entry<Integer, List<Annotation>> entry : loaded.entrySet()) {
+                args.add(CHAPTER_FIELD_PREFIX + entry.getKey());
+                args.add(objectMapper.writeValueAsString(entry.getValue()));
+            }
+            args.add(String.valueOf(ttlSeconds()));
+            stringRedisTemplate.execute(FILL, List.of(key), args.toArray());
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("写入划线缓存失败 {}: {}", key, e.getMessage());
+        }
+    }
+
+    // 无法解码的缓存值按未命中处理
+    private List<Annotation> decode(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, listType);
+        } catch (JsonProcessingException e) {
+            log.warn("忽略无法解码的划线缓存: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private long ttlSeconds() {
+        return Duration.ofMinutes(cacheTtlMinutes).toSeconds();
+    }
+
+    private static String key(int userId, long bookId) {
+        return KEY_PREFIX + userId + ":" + bookId;
+    }
+}
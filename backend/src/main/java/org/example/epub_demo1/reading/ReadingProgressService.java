@@ -0,0 +1,403 @@
+package org.example.epub_demo1.reading;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.epub_demo1.entity.ReadingProgress;
+import org.example.epub_demo1.mapper.ReadingProgressMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 阅读进度的延迟写入：每次翻页只写 Redis（每个用户每本书一个 hash）并把该键加入待写集合，
+ * 定时任务从待写集合中取出一批键，两次写库之间同一本书的多次翻页合并为一行，多行一条语句 upsert 到 MySQL。
+ * 翻页请求不等待数据库；Redis 不可用时暂存在本节点的有界缓冲区中，由同一个定时任务直接写库，缓冲区满时拒绝写入。
+ * 取出的键先记入处理中集合（ZSET，分数为取出时间），写库后才删除；节点在两者之间崩溃时，
+ * 超过 progress.processing-timeout-seconds 的键由任一节点的定时任务（包括重启后的第一次）放回待写集合。
+ * 关闭时把待写集合和缓冲区全部写完。
+ */
+@Service
+public class ReadingProgressService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadingProgressService.class);
+    private static final String KEY_PREFIX = "progress:";
+    // 成员为 "userId:bookId"，SPOP 取出，多个节点不会重复处理同一个键
+    private static final String DIRTY_KEY = "progress:dirty";
+    // 已取出、尚未写库的键，分数为取出时间（毫秒）
+    private static final String PROCESSING_KEY = "progress:processing";
+    // 定时任务每次最多处理的批数，其余留到下次
+    private static final int MAX_ROUNDS = 20;
+
+    // 只接受不早于现有记录的位置；ARGV[6] 为 1 时加入待写集合（从数据库回填时不加）
+    private static final RedisScript<Long> SAVE = new DefaultRedisScript<>(
+            "local current = redis.call('HGET', KEYS[1], 'updatedAt') "
+                    + "if current and tonumber(current) > tonumber(ARGV[1]) then return 0 end "
+                    + "redis.call('HSET', KEYS[1], 'updatedAt', ARGV[1], 'cfi', ARGV[2], 'percentage', ARGV[3], 'chapterIndex', ARGV[4]) "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[5]) "
+                    + "if ARGV[6] == '1' then redis.call('SADD', KEYS[2], ARGV[7]) end "
+                    + "return 1",
+            Long.class);
+
+    // KEYS: 待写集合、处理中集合；ARGV: 数量、取出时间。取出与记入处理中集合在同一脚本中完成
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM = new DefaultRedisScript<>(
+            "local members = redis.call('SPOP', KEYS[1], ARGV[1]) "
+                    + "for _, member in ipairs(members) do redis.call('ZADD', KEYS[2], ARGV[2], member) end "
+                    + "return members",
+            List.class);
+
+    // 写库后删除；分数不同说明该键之后又被（其他节点）重新取出，留给对方删除
+    // KEYS: 处理中集合；ARGV: 取出时间，若干成员
+    private static final RedisScript<Long> ACK = new DefaultRedisScript<>(
+            "local removed = 0 "
+                    + "for i = 2, #ARGV do "
+                    + "if tonumber(redis.call('ZSCORE', KEYS[1], ARGV[i]) or '-1') == tonumber(ARGV[1]) then "
+                    + "removed = removed + redis.call('ZREM', KEYS[1], ARGV[i]) end "
+                    + "end "
+                    + "return removed",
+            Long.class);
+
+    // 取出早于 ARGV[1] 仍未删除的键（取出它的节点已崩溃）放回待写集合，每次最多 ARGV[2] 个
+    // KEYS: 处理中集合、待写集合
+    private static final RedisScript<Long> RECOVER = new DefaultRedisScript<>(
+            "local members = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) "
+                    + "for _, member in ipairs(members) do "
+                    + "redis.call('SADD', KEYS[2], member) redis.call('ZREM', KEYS[1], member) "
+                    + "end "
+                    + "return #members",
+            Long.class);
+
+    @Value("${progress.flush-batch-size:500}")
+    private int batchSize;
+
+    @Value("${progress.buffer-size:10000}")
+    private int bufferSize;
+
+    @Value("${progress.ttl-days:30}")
+    private int ttlDays;
+
+    // 取出后超过这么久仍未写库，认为取出的节点已崩溃；应大于一次写库的最长耗时
+    @Value("${progress.processing-timeout-seconds:60}")
+    private int processingTimeoutSeconds;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ReadingProgressMapper readingProgressMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Redis 写入失败时的暂存区，键同待写集合的成员，同一本书只保留最新的一条
+    private final Map<String, ReadingProgress> buffer = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private Counter updatesCounter;
+    private Counter rowsCounter;
+    private Counter rejectedCounter;
+    private Timer flushTimer;
+
+    @PostConstruct
+    public void init() {
+        updatesCounter = Counter.builder("reading.progress.updates")
+                .description("收到的阅读进度更新")
+                .register(meterRegistry);
+        rowsCounter = Counter.builder("reading.progress.rows")
+                .description("合并后写入数据库的阅读进度行数")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("reading.progress.rejected")
+                .description("Redis 不可用且缓冲区已满时拒绝的更新")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("reading.progress.flush")
+                .description("阅读进度写库耗时")
+                .register(meterRegistry);
+        Gauge.builder("reading.progress.buffered", buffer, Map::size)
+                .description("本节点缓冲区中等待写库的阅读进度")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 保存阅读位置（只写 Redis，不访问数据库）。
+     *
+     * @throws IllegalStateException Redis 不可用且缓冲区已满
+     */
+    public void save(ReadingProgress progress) {
+        updatesCounter.increment();
+        try {
+            saveToRedis(progress, true);
+        } catch (RuntimeException e) {
+            log.debug("阅读进度写入 Redis 失败，暂存在本节点: {}", e.getMessage());
+            String member = member(progress.getUserId(), progress.getBookId());
+            // 并发时可能略超过上限，只用于防止内存无限增长
+            if (buffer.size() >= bufferSize && !buffer.containsKey(member)) {
+                rejectedCounter.increment();
+                throw new IllegalStateException("阅读进度缓冲区已满");
+            }
+            buffer.merge(member, progress, ReadingProgressService::newer);
+        }
+    }
+
+    /**
+     * 读取阅读位置：Redis 中没有时查数据库并回填；本节点缓冲区中有更新的记录时以缓冲区为准。
+     *
+     * @return 没有记录时为 null
+     */
+    public ReadingProgress get(int userId, long bookId) {
+        String member = member(userId, bookId);
+        ReadingProgress cached = null;
+        boolean redisAvailable = true;
+        try {
+            Map<String, String> hash = stringRedisTemplate.<String, String>opsForHash().entries(KEY_PREFIX + member);
+            cached = parse(userId, bookId, hash);
+        } catch (RuntimeException e) {
+            log.warn("读取 Redis 中的阅读进度失败 {}: {}", member, e.getMessage());
+            redisAvailable = false;
+        }
+        if (cached == null) {
+            cached = readingProgressMapper.selectOne(userId, bookId);
+            if (cached != null && redisAvailable) {
+                try {
+                    saveToRedis(cached, false);
+                } catch (RuntimeException e) {
+                    log.warn("回填阅读进度失败 {}: {}", member, e.getMessage());
+                }
+            }
+        }
+        return newer(buffer.get(member), cached);
+    }
+
+    // 最近阅读的书（直接查数据库，最近一个写库周期内的更新可能还没有反映出来）
+    public List<ReadingProgress> recent(int userId, int limit) {
+        return readingProgressMapper.selectRecent(userId, limit);
+    }
+
+    @Scheduled(fixedDelayString = "${progress.flush-interval-ms:5000}",
+            initialDelayString = "${progress.flush-interval-ms:5000}")
+    public void flush() {
+        flush(MAX_ROUNDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        int written = flush(Integer.MAX_VALUE);
+        if (!buffer.isEmpty()) {
+            log.error("关闭时仍有 {} 条阅读进度未能写入数据库", buffer.size());
+        } else if (written > 0) {
+            log.info("关闭前写入阅读进度 {} 条", written);
+        }
+    }
+
+    // 返回写入数据库的行数
+    int flush(int maxRounds) {
+        flushLock.lock();
+        try {
+            return flushTimer.record(() -> flushBuffer() + flushDirty(maxRounds));
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int flushBuffer() {
+        if (buffer.isEmpty()) {
+            return 0;
+        }
+        List<ReadingProgress> rows = new ArrayList<>();
+        for (String member : List.copyOf(buffer.keySet())) {
+            ReadingProgress progress = buffer.remove(member);
+            if (progress != null) {
+                rows.add(progress);
+            }
+        }
+        try {
+            write(rows);
+        } catch (RuntimeException e) {
+            // 放回缓冲区，期间收到的更新的记录优先
+            rows.forEach(p -> buffer.merge(member(p.getUserId(), p.getBookId()), p, ReadingProgressService::newer));
+            log.error("阅读进度写库失败，{} 条留在缓冲区: {}", rows.size(), e.getMessage());
+            return 0;
+        }
+        restoreToRedis(rows);
+        return rows.size();
+    }
+
+    // Redis 中可能还有故障前的旧位置（TTL 内），不覆盖时 get() 会读到它；SAVE 不接受更早的记录。
+    // Redis 仍不可用时其余记录留在缓冲区，下次再写（upsert 按 updated_at 比较，重复写入不改变结果）
+    private void restoreToRedis(List<ReadingProgress> rows) {
+        for (int i = 0; i < rows.size(); i++) {
+            try {
+                saveToRedis(rows.get(i), false);
+            } catch (RuntimeException e) {
+                rows.subList(i, rows.size()).forEach(p ->
+                        buffer.merge(member(p.getUserId(), p.getBookId()), p, ReadingProgressService::newer));
+                log.debug("阅读进度写回 Redis 失败，{} 条留在缓冲区: {}", rows.size() - i, e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private int flushDirty(int maxRounds) {
+        recoverStale();
+        int written = 0;
+        for (int round = 0; round < maxRounds; round++) {
+            String claimedAt = String.valueOf(System.currentTimeMillis());
+            List<String> members;
+            try {
+                members = claim(claimedAt);
+            } catch (RuntimeException e) {
+                log.warn("读取待写的阅读进度失败: {}", e.getMessage());
+                return written;
+            }
+            if (members == null || members.isEmpty()) {
+                return written;
+            }
+            // 取出后又有翻页的键会重新加入待写集合，下一批再写一次，不会丢失更新
+            try {
+                List<ReadingProgress> rows = load(members);
+                write(rows);
+                written += rows.size();
+            } catch (RuntimeException e) {
+                log.error("阅读进度写库失败，{} 个键放回待写集合: {}", members.size(), e.getMessage());
+                requeue(members, claimedAt);
+                return written;
+            }
+            ack(members, claimedAt);
+            if (members.size() < batchSize) {
+                return written;
+            }
+        }
+        return written;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> claim(String claimedAt) {
+        return stringRedisTemplate.execute(CLAIM, List.of(DIRTY_KEY, PROCESSING_KEY),
+                String.valueOf(batchSize), claimedAt);
+    }
+
+    // 删除失败时这些键会在超时后被重新写一次，upsert 按 updated_at 比较，重复写入不改变结果
+    private void ack(List<String> members, String claimedAt) {
+        List<String> args = new ArrayList<>(members.size() + 1);
+        args.add(claimedAt);
+        args.addAll(members);
+        try {
+            stringRedisTemplate.execute(ACK, List.of(PROCESSING_KEY), args.toArray());
+        } catch (RuntimeException e) {
+            log.warn("删除处理中的阅读进度键失败，{} 个键将在超时后重新写库: {}", members.size(), e.getMessage());
+        }
+    }
+
+    private void recoverStale() {
+        long cutoff = System.currentTimeMillis() - Duration.ofSeconds(processingTimeoutSeconds).toMillis();
+        try {
+            Long recovered = stringRedisTemplate.execute(RECOVER, List.of(PROCESSING_KEY, DIRTY_KEY),
+                    String.valueOf(cutoff), String.valueOf(batchSize * MAX_ROUNDS));
+            if (recovered != null && recovered > 0) {
+                log.warn("{} 个阅读进度键取出后未写库（取出的节点可能已崩溃），已放回待写集合", recovered);
+            }
+        } catch (RuntimeException e) {
+            log.warn("恢复处理中的阅读进度键失败: {}", e.getMessage());
+        }
+    }
+
+    private List<ReadingProgress> load(List<String> members) {
+        List<Object> hashes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String member : members) {
+                connection.hashCommands().hGetAll((KEY_PREFIX + member).getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        List<ReadingProgress> rows = new ArrayList<>(members.size());
+        for (int i = 0; i < members.size(); i++) {
+            String[] ids = members.get(i).split(":");
+            @SuppressWarnings("unchecked")
+            Map<String, String> hash = (Map<String, String>) hashes.get(i);
+            // 已过期的键跳过
+            ReadingProgress progress = parse(Integer.parseInt(ids[0]), Long.parseLong(ids[1]), hash);
+            if (progress != null) {
+                rows.add(progress);
+            }
+        }
+        return rows;
+    }
+
+    private void requeue(List<String> members, String claimedAt) {
+        try {
+            stringRedisTemplate.opsForSet().add(DIRTY_KEY, members.toArray(new String[0]));
+        } catch (RuntimeException e) {
+            log.error("阅读进度放回待写集合失败，{} 个键将在超时后重新写库: {}", members.size(), e.getMessage());
+            return;
+        }
+        ack(members, claimedAt);
+    }
+
+    // 按主键排序后分批写入，多个节点同时写库时加锁顺序一致，避免死锁
+    private void write(List<ReadingProgress> rows) {
+        rows.sort(Comparator.comparing(ReadingProgress::getUserId).thenComparing(ReadingProgress::getBookId));
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            readingProgressMapper.upsertAll(rows.subList(from, Math.min(from + batchSize, rows.size())));
+        }
+        rowsCounter.increment(rows.size());
+    }
+
+    private void saveToRedis(ReadingProgress progress, boolean dirty) {
+        String member = member(progress.getUserId(), progress.getBookId());
+        stringRedisTemplate.execute(SAVE, List.of(KEY_PREFIX + member, DIRTY_KEY),
+                String.valueOf(progress.getUpdatedAt()),
+                progress.getCfi(),
+                progress.getPercentage() == null ? "" : String.valueOf(progress.getPercentage()),
+                progress.getChapterIndex() == null ? "" : String.valueOf(progress.getChapterIndex()),
+                String.valueOf(Duration.ofDays(ttlDays).toSeconds()),
+                dirty ? "1" : "0",
+                member);
+    }
+
+    private static ReadingProgress parse(int userId, long bookId, Map<String, String> hash) {
+        if (hash == null || hash.get("cfi") == null || hash.get("updatedAt") == null) {
+            return null;
+        }
+        ReadingProgress progress = new ReadingProgress();
+        progress.setUserId(userId);
+        progress.setBookId(bookId);
+        progress.setCfi(hash.get("cfi"));
+        String percentage = hash.get("percentage");
+        progress.setPercentage(percentage == null || percentage.isEmpty() ? null : Double.valueOf(percentage));
+        String chapterIndex = hash.get("chapterIndex");
+        progress.setChapterIndex(chapterIndex == null || chapterIndex.isEmpty() ? null : Integer.valueOf(chapterIndex));
+        progress.setUpdatedAt(Long.parseLong(hash.get("updatedAt")));
+        return progress;
+    }
+
+    private static ReadingProgress newer(ReadingProgress a, ReadingProgress b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return b.getUpdatedAt() >= a.getUpdatedAt() ? b : a;
+    }
+
+    private static String member(int userId, long bookId) {
+        return userId + ":" + bookId;
+    }
+}
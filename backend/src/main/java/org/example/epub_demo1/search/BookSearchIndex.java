@@ -0,0 +1,464 @@
+package org.example.epub_demo1.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 单本书的倒排索引：词 -> 章节倒排表（含词频和字符偏移）。
+ * 从文件读取时内存中只保留倒排表和章节长度，摘要按需从文件中读取对应的一小段正文。
+ *
+ * 文件格式（v2）：
+ * <pre>
+ * magic, version, totalTokens
+ * termCount, [term, bookTermFreq]...        -- 词典段，启动时只读这一段
+ * chapterCount, [href, textLength]...       -- textLength 为字符数
+ * [postingCount, [chapter, offsetCount, offsetDelta...]...]...  -- 与词典段顺序一致
+ * [text]...                                 -- 各章节正文，UTF-16BE，按字符偏移直接定位
+ * </pre>
+ */
+public class BookSearchIndex {
+
+    private static final int MAGIC = 0x45504958; // "EPIX"
+    private static final int VERSION = 2;
+
+    // BM25 参数
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final int SNIPPET_BEFORE = 40;
+    private static final int SNIPPET_AFTER = 80;
+
+    private final String[] hrefs;
+    private final int[] chapterLengths;
+    private final Map<String, TermPostings> postings;
+    private final String[] sortedTerms;
+    private final int totalTokens;
+    private final double avgChapterLength;
+    // 刚建立、尚未写入文件的索引才有正文
+    private final String[] texts;
+    // 从文件读取的索引：正文段的位置，textOffsets[i] 为第 i 章在正文段中的字符偏移
+    private final Path file;
+    private final long textsStart;
+    private final long[] textOffsets;
+
+    private BookSearchIndex(String[] hrefs, int[] chapterLengths, Map<String, TermPostings> postings,
+                            int totalTokens, String[] texts, Path file, long textsStart) {
+        this.hrefs = hrefs;
+        this.chapterLengths = chapterLengths;
+        this.postings = postings;
+        this.sortedTerms = postings.keySet().toArray(new String[0]);
+        Arrays.sort(this.sortedTerms);
+        this.totalTokens = totalTokens;
+        this.texts = texts;
+        this.file = file;
+        this.textsStart = textsStart;
+        this.textOffsets = new long[chapterLengths.length];
+        long totalLength = 0;
+        for (int i = 0; i < chapterLengths.length; i++) {
+            textOffsets[i] = totalLength;
+            totalLength += chapterLengths[i];
+        }
+        this.avgChapterLength = chapterLengths.length == 0 ? 1 : Math.max(1, (double) totalLength / chapterLengths.length);
+    }
+
+    public static BookSearchIndex build(List<String> chapterHrefs, List<String> chapterTexts) {
+        Map<String, List<int[]>> builder = new HashMap<>();
+        int totalTokens = 0;
+        for (int chapter = 0; chapter < chapterTexts.size(); chapter++) {
+            Map<String, List<Integer>> chapterOffsets = new HashMap<>();
+            for (TextTokenizer.Token token : TextTokenizer.tokenizeForIndex(chapterTexts.get(chapter))) {
+                chapterOffsets.computeIfAbsent(token.getTerm(), k -> new ArrayList<>()).add(token.getOffset());
+                totalTokens++;
+            }
+            for (Map.Entry<String, List<Integer>> entry : chapterOffsets.entrySet()) {
+                List<Integer> offsets = entry.getValue();
+                int[] row = new int[offsets.size() + 1];
+                row[0] = chapter;
+                for (int i = 0; i < offsets.size(); i++) {
+                    row[i + 1] = offsets.get(i);
+                }
+                builder.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(row);
+            }
+        }
+
+        Map<String, TermPostings> postings = new HashMap<>(builder.size() * 2);
+        for (Map.Entry<String, List<int[]>> entry : builder.entrySet()) {
+            List<int[]> rows = entry.getValue();
+            int[] chapters = new int[rows.size()];
+            int[][] offsets = new int[rows.size()][];
+            for (int i = 0; i < rows.size(); i++) {
+                int[] row = rows.get(i);
+                chapters[i] = row[0];
+                offsets[i] = Arrays.copyOfRange(row, 1, row.length);
+            }
+            postings.put(entry.getKey(), new TermPostings(chapters, offsets));
+        }
+        String[] texts = chapterTexts.toArray(new String[0]);
+        int[] lengths = new int[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            lengths[i] = texts[i].length();
+        }
+        return new BookSearchIndex(chapterHrefs.toArray(new String[0]), lengths, postings, totalTokens, texts, null, 0);
+    }
+
+    // ============= 查询 =============
+
+    /**
+     * 在本书内检索。分组内的词为“或”，分组之间为“与”。
+     */
+    public List<ChapterHit> search(List<List<String>> termGroups, int limit) {
+        if (termGroups.isEmpty()) {
+            return List.of();
+        }
+        int chapterCount = chapterLengths.length;
+        int[][] groupFreqs = new int[termGroups.size()][chapterCount];
+        int[] firstOffsets = new int[chapterCount];
+        int[] rarestFreq = new int[chapterCount];
+        Arrays.fill(firstOffsets, -1);
+        Arrays.fill(rarestFreq, Integer.MAX_VALUE);
+
+        for (int g = 0; g < termGroups.size(); g++) {
+            int[] freqs = groupFreqs[g];
+            int[] groupFirst = new int[chapterCount];
+            Arrays.fill(groupFirst, Integer.MAX_VALUE);
+            for (String term : termGroups.get(g)) {
+                TermPostings termPostings = postings.get(term);
+                if (termPostings == null) {
+                    continue;
+                }
+                for (int i = 0; i < termPostings.chapters.length; i++) {
+                    int chapter = termPostings.chapters[i];
+                    int[] offsets = termPostings.offsets[i];
+                    freqs[chapter] += offsets.length;
+                    groupFirst[chapter] = Math.min(groupFirst[chapter], offsets[0]);
+                }
+            }
+            // 摘要定位在最稀有的查询词上
+            for (int chapter = 0; chapter < chapterCount; chapter++) {
+                if (freqs[chapter] > 0 && freqs[chapter] < rarestFreq[chapter]) {
+                    rarestFreq[chapter] = freqs[chapter];
+                    firstOffsets[chapter] = groupFirst[chapter];
+                }
+            }
+        }
+
+        double[] idf = new double[termGroups.size()];
+        for (int g = 0; g < termGroups.size(); g++) {
+            int df = 0;
+            for (int freq : groupFreqs[g]) {
+                if (freq > 0) {
+                    df++;
+                }
+            }
+            idf[g] = Math.log(1 + (chapterCount - df + 0.5) / (df + 0.5));
+        }
+
+        List<double[]> scored = new ArrayList<>();
+        for (int chapter = 0; chapter < chapterCount; chapter++) {
+            double score = 0;
+            boolean matchesAll = true;
+            double lengthNorm = 1 - B + B * chapterLengths[chapter] / avgChapterLength;
+            for (int g = 0; g < termGroups.size(); g++) {
+                int tf = groupFreqs[g][chapter];
+                if (tf == 0) {
+                    matchesAll = false;
+                    break;
+                }
+                score += idf[g] * tf * (K1 + 1) / (tf + K1 * lengthNorm);
+            }
+            if (matchesAll) {
+                scored.add(new double[]{chapter, score});
+            }
+        }
+        scored.sort(Comparator.comparingDouble((double[] hit) -> hit[1]).reversed());
+
+        // 只为返回的命中读取摘要
+        List<ChapterHit> hits = new ArrayList<>(Math.min(limit, scored.size()));
+        try (SnippetReader reader = new SnippetReader()) {
+            for (double[] hit : scored.subList(0, Math.min(limit, scored.size()))) {
+                int chapter = (int) hit[0];
+                int offset = firstOffsets[chapter];
+                hits.add(new ChapterHit(chapter, hrefs[chapter], hit[1], offset, reader.snippet(chapter, offset)));
+            }
+        }
+        return hits;
+    }
+
+    public int getChapterCount() {
+        return chapterLengths.length;
+    }
+
+    public int getTotalTokens() {
+        return totalTokens;
+    }
+
+    // 每个词在全书中的出现次数
+    public Map<String, Integer> termFrequencies() {
+        Map<String, Integer> result = new HashMap<>(postings.size() * 2);
+        for (Map.Entry<String, TermPostings> entry : postings.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().totalFrequency());
+        }
+        return result;
+    }
+
+    // ============= 摘要 =============
+
+    /**
+     * 按字符偏移截取摘要；从文件读取的索引只读取摘要范围内的正文，同一次查询共用一个文件通道。
+     */
+    private class SnippetReader implements AutoCloseable {
+        private FileChannel channel;
+
+        String snippet(int chapter, int offset) {
+            if (offset < 0) {
+                return "";
+            }
+            int length = chapterLengths[chapter];
+            int start = Math.max(0, offset - SNIPPET_BEFORE);
+            int end = Math.min(length, offset + SNIPPET_AFTER);
+            String text;
+            try {
+                text = texts != null ? texts[chapter].substring(start, end) : read(chapter, start, end);
+            } catch (IOException e) {
+                // 索引文件已被删除或替换（书籍删除、重建索引），只返回位置
+                return "";
+            }
+            StringBuilder sb = new StringBuilder();
+            if (start > 0) {
+                sb.append("...");
+            }
+            sb.append(text);
+            if (end < length) {
+                sb.append("...");
+            }
+            return sb.toString().replace('\n', ' ');
+        }
+
+        private String read(int chapter, int start, int end) throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((end - start) * 2);
+            long position = textsStart + 2 * (textOffsets[chapter] + start);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException(file.toString());
+                }
+            }
+            buffer.flip();
+            return buffer.asCharBuffer().toString();
+        }
+
+        @Override
+        public void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // 只读通道，关闭失败不影响结果
+                }
+            }
+        }
+    }
+
+    // ============= 持久化 =============
+
+    /**
+     * 写入索引文件，只能用于 build 得到的索引。
+     */
+    public void writeTo(Path target) throws IOException {
+        if (texts == null) {
+            throw new IllegalStateException("从文件读取的索引没有正文，不能再次写出");
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(totalTokens);
+
+            out.writeInt(sortedTerms.length);
+            for (String term : sortedTerms) {
+                out.writeUTF(term);
+                out.writeInt(postings.get(term).totalFrequency());
+            }
+
+            out.writeInt(texts.length);
+            for (int i = 0; i < texts.length; i++) {
+                out.writeUTF(hrefs[i]);
+                out.writeInt(texts[i].length());
+            }
+
+            for (String term : sortedTerms) {
+                TermPostings termPostings = postings.get(term);
+                out.writeInt(termPostings.chapters.length);
+                for (int i = 0; i < termPostings.chapters.length; i++) {
+                    out.writeInt(termPostings.chapters[i]);
+                    int[] offsets = termPostings.offsets[i];
+                    out.writeInt(offsets.length);
+                    int previous = 0;
+                    for (int offset : offsets) {
+                        out.writeInt(offset - previous);
+                        previous = offset;
+                    }
+                }
+            }
+
+            for (String text : texts) {
+                out.writeChars(text);
+            }
+        }
+    }
+
+    /**
+     * 读取索引文件的词典段和倒排表，正文留在文件中。
+     */
+    public static BookSearchIndex read(Path file) throws IOException {
+        try (DataInputStream in = open(file)) {
+            if (in.readInt() != VERSION) {
+                throw new IOException("索引需要重建: " + file);
+            }
+            int totalTokens = in.readInt();
+            String[] terms = new String[in.readInt()];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = in.readUTF();
+                in.readInt();
+            }
+
+            int chapterCount = in.readInt();
+            String[] hrefs = new String[chapterCount];
+            int[] lengths = new int[chapterCount];
+            long textChars = 0;
+            for (int i = 0; i < chapterCount; i++) {
+                hrefs[i] = in.readUTF();
+                lengths[i] = in.readInt();
+                textChars += lengths[i];
+            }
+
+            Map<String, TermPostings> postings = new HashMap<>(terms.length * 2);
+            for (String term : terms) {
+                int postingCount = in.readInt();
+                int[] chapters = new int[postingCount];
+                int[][] offsets = new int[postingCount][];
+                for (int i = 0; i < postingCount; i++) {
+                    chapters[i] = in.readInt();
+                    int[] row = new int[in.readInt()];
+                    int previous = 0;
+                    for (int j = 0; j < row.length; j++) {
+                        previous += in.readInt();
+                        row[j] = previous;
+                    }
+                    offsets[i] = row;
+                }
+                postings.put(term, new TermPostings(chapters, offsets));
+            }
+            // 正文段在文件末尾
+            long textsStart = Files.size(file) - 2 * textChars;
+            if (textsStart < 0) {
+                throw new IOException("索引文件不完整: " + file);
+            }
+            return new BookSearchIndex(hrefs, lengths, postings, totalTokens, null, file, textsStart);
+        }
+    }
+
+    /**
+     * 只读取词典段（词 -> 全书词频），用于构建全库词典，不加载倒排表和正文。
+     */
+    public static Map<String, Integer> readDictionary(Path file) throws IOException {
+        try (DataInputStream in = open(file)) {
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("不支持的索引版本 " + version + ": " + file);
+            }
+            in.readInt(); // totalTokens
+            int termCount = in.readInt();
+            Map<String, Integer> dictionary = new TreeMap<>();
+            for (int i = 0; i < termCount; i++) {
+                dictionary.put(in.readUTF(), in.readInt());
+            }
+            return dictionary;
+        }
+    }
+
+    // 校验 magic，返回的流下一个值为版本号
+    private static DataInputStream open(Path file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是有效的索引文件: " + file);
+            }
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static class TermPostings {
+        private final int[] chapters;
+        private final int[][] offsets;
+
+        TermPostings(int[] chapters, int[][] offsets) {
+            this.chapters = chapters;
+            this.offsets = offsets;
+        }
+
+        int totalFrequency() {
+            int total = 0;
+            for (int[] row : offsets) {
+                total += row.length;
+            }
+            return total;
+        }
+    }
+
+    public static class ChapterHit {
+        private final int chapterIndex;
+        private final String href;
+        private final double score;
+        private final int offset;
+        private final String snippet;
+
+        ChapterHit(int chapterIndex, String href, double score, int offset, String snippet) {
+            this.chapterIndex = chapterIndex;
+            this.href = href;
+            this.score = score;
+            this.offset = offset;
+            this.snippet = snippet;
+        }
+
+        public int getChapterIndex() {
+            return chapterIndex;
+        }
+
+        public String getHref() {
+            return href;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public String getSnippet() {
+            return snippet;
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package org.example.epub_demo1.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import net.sourceforge.pinyin4j.PinyinHelper;
+import net.sourceforge.pinyin4j.format.HanyuPinyinCaseType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
+import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinVCharType;
+import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
+import org.example.epub_demo1.cache.AfterCommit;
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 书名/作者的内存检索索引，替代 LIKE '%...%' 全表扫描。
+ * 每个字段保存规范化文本、全拼和拼音首字母三种形式，按单字和二元组建倒排表；
+ * 查询先求各二元组倒排表的交集得到候选，再逐一校验子串，语义与原来的 LIKE 一致。
+ * 书籍变更时本节点立即更新，并通过 Redis 频道通知其他节点重新加载该书。
+ */
+@Service
+public class CatalogSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogSearchIndex.class);
+    private static final String REFRESH_CHANNEL = "books:search:refresh";
+    private static final Comparator<Suggestion> SUGGESTION_ORDER = Comparator
+            .comparingInt(Suggestion::getRank)
+            .thenComparingInt((Suggestion s) -> s.getTitle() == null ? 0 : s.getTitle().length())
+            .thenComparing(Suggestion::getId);
+    private static final HanyuPinyinOutputFormat PINYIN_FORMAT = new HanyuPinyinOutputFormat();
+    // 汉字 -> 拼音（pinyin4j 每次调用都要格式化，常用字只算一次）
+    private static final Map<Character, String> PINYIN_CACHE = new ConcurrentHashMap<>();
+
+    static {
+        PINYIN_FORMAT.setCaseType(HanyuPinyinCaseType.LOWERCASE);
+        PINYIN_FORMAT.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
+        PINYIN_FORMAT.setVCharType(HanyuPinyinVCharType.WITH_V);
+    }
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    // 区分本节点发出的刷新消息
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 首次加载期间查库，虚拟线程等待时不占住载体线程
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final Map<String, Set<Long>> titleGrams = new HashMap<>();
+    private final Map<String, Set<Long>> authorGrams = new HashMap<>();
+    private volatile boolean loaded;
+
+    // 规范化查询 -> 结果；键带索引版本号，加载期间发生的变更不会留下旧结果
+    private final Cache<String, List<?>> queryCache = Caffeine.newBuilder().maximumSize(2000).build();
+    private volatile long generation;
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> {
+                    String body = new String(message.getBody(), StandardCharsets.UTF_8);
+                    int colon = body.lastIndexOf(':');
+                    if (colon > 0 && !body.substring(0, colon).equals(nodeId) && loaded) {
+                        List<Long> ids = new ArrayList<>();
+                        for (String id : body.substring(colon + 1).split(",")) {
+                            ids.add(Long.valueOf(id));
+                        }
+                        reload(ids);
+                    }
+                },
+                new ChannelTopic(REFRESH_CHANNEL));
+    }
+
+    // 启动后在后台加载索引，避免第一次查询等待
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Thread loader = new Thread(() -> {
+            try {
+                ensureLoaded();
+            } catch (RuntimeException e) {
+                log.warn("书名检索索引预加载失败，将在首次查询时重试: {}", e.getMessage());
+            }
+        }, "catalog-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * 与 getAll 的条件一致：书名、作者为子串匹配（也可用全拼或首字母），分类为精确匹配。
+     * 返回按 ID 升序排列的书籍 ID。只含空白和标点的条件规范化后为空，不匹配任何书。
+     */
+    public List<Long> search(String title, String author, String category) {
+        String titleQuery = normalize(title);
+        String authorQuery = normalize(author);
+        if ((title != null && titleQuery.isEmpty()) || (author != null && authorQuery.isEmpty())) {
+            return List.of();
+        }
+        String cacheKey = generation + "|q|" + queryKey(title, author, category);
+        return (List<Long>) queryCache.get(cacheKey, key -> {
+            ensureLoaded();
+            lock.readLock().lock();
+            try {
+                Set<Long> candidates = null;
+                if (!titleQuery.isEmpty()) {
+                    candidates = candidates(titleGrams, titleQuery);
+                }
+                if (!authorQuery.isEmpty()) {
+                    Set<Long> byAuthor = candidates(authorGrams, authorQuery);
+                    candidates = candidates == null ? byAuthor : intersect(candidates, byAuthor);
+                }
+                Iterable<Long> ids = candidates != null ? candidates : entries.keySet();
+                List<Long> result = new ArrayList<>();
+                for (Long id : ids) {
+                    Entry entry = entries.get(id);
+                    if (matches(entry.titleKeys, titleQuery)
+                            && matches(entry.authorKeys, authorQuery)
+                            && (category == null || category.equals(entry.category))) {
+                        result.add(id);
+                    }
+                }
+                Collections.sort(result);
+                return result;
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * 输入联想：书名或作者匹配 query，前缀匹配优先，其次书名更短的优先。
+     */
+    public List<Suggestion> suggest(String query, int limit) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+        return (List<Suggestion>) queryCache.get(generation + "|s|" + normalized + "|" + limit, key -> {
+            ensureLoaded();
+            lock.readLock().lock();
+            try {
+                Set<Long> ids = new HashSet<>(candidates(titleGrams, normalized));
+                ids.addAll(candidates(authorGrams, normalized));
+                // 只保留前 limit 个（堆顶为当前最差的一个），不对全部候选排序
+                PriorityQueue<Suggestion> top = new PriorityQueue<>(limit + 1, SUGGESTION_ORDER.reversed());
+                for (Long id : ids) {
+                    Entry entry = entries.get(id);
+                    int rank = rank(entry, normalized);
+                    if (rank < 0) {
+                        continue;
+                    }
+                    top.add(new Suggestion(entry.id, entry.title, entry.author, entry.category, rank));
+                    if (top.size() > limit) {
+                        top.poll();
+                    }
+                }
+                List<Suggestion> suggestions = new ArrayList<>(top);
+                suggestions.sort(SUGGESTION_ORDER);
+                return suggestions;
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    // 书籍新增、修改、删除后调用；在事务中时提交后才重新加载，其他节点读到的是已提交的数据
+    public void bookChanged(Long id) {
+        if (id != null) {
+            booksChanged(List.of(id));
+        }
+    }
+
+    // 批量变更（如批量导入）只查询一次数据库、广播一条消息
+    public void booksChanged(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<Long> changed = new ArrayList<>(ids);
+        AfterCommit.run(() -> {
+            if (loaded) {
+                reload(changed);
+            }
+            StringBuilder message = new StringBuilder(nodeId).append(':');
+            for (int i = 0; i < changed.size(); i++) {
+                message.append(i == 0 ? "" : ",").append(changed.get(i));
+            }
+            stringRedisTemplate.convertAndSend(REFRESH_CHANNEL, message.toString());
+        });
+    }
+
+    // ============= 索引维护 =============
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loadLock.lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            List<Book> books = bookMapper.selectSearchFields();
+            lock.writeLock().lock();
+            try {
+                for (Book book : books) {
+                    add(new Entry(book));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            loaded = true;
+            log.info("书名检索索引已加载 {} 本, 用时 {} ms", books.size(), System.currentTimeMillis() - start);
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private void reload(List<Long> ids) {
+        Map<Long, Book> books = new HashMap<>();
+        for (Book book : bookMapper.selectByIds(ids)) {
+            books.put(book.getId(), book);
+        }
+        lock.writeLock().lock();
+        try {
+            for (Long id : ids) {
+                Entry old = entries.get(id);
+                if (old != null) {
+                    remove(old);
+                }
+                Book book = books.get(id);
+                if (book != null) {
+                    add(new Entry(book));
+                }
+            }
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        queryCache.invalidateAll();
+    }
+
+    private void add(Entry entry) {
+        entries.put(entry.id, entry);
+        for (String gram : grams(entry.titleKeys)) {
+            titleGrams.computeIfAbsent(gram, k -> new HashSet<>()).add(entry.id);
+        }
+        for (String gram : grams(entry.authorKeys)) {
+            authorGrams.computeIfAbsent(gram, k -> new HashSet<>()).add(entry.id);
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.id);
+        removePostings(titleGrams, grams(entry.titleKeys), entry.id);
+        removePostings(authorGrams, grams(entry.authorKeys), entry.id);
+    }
+
+    private static void removePostings(Map<String, Set<Long>> postings, Set<String> grams, Long id) {
+        for (String gram : grams) {
+            Set<Long> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    // ============= 查询辅助 =============
+
+    // 查询串的所有二元组（单字查询用单字）都命中的书
+    static Set<Long> candidates(Map<String, Set<Long>> postings, String query) {
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String gram : queryGrams(query)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids == null) {
+                return Set.of();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Long> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    private static Set<Long> intersect(Set<Long> a, Set<Long> b) {
+        Set<Long> result = new HashSet<>(a.size() < b.size() ? a : b);
+        result.retainAll(a.size() < b.size() ? b : a);
+        return result;
+    }
+
+    private static boolean matches(String[] keys, String query) {
+        if (query.isEmpty()) {
+            return true;
+        }
+        for (String key : keys) {
+            if (key.contains(query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 0 书名前缀，1 作者前缀，2 书名子串，3 作者子串，-1 不匹配
+    private static int rank(Entry entry, String query) {
+        for (String key : entry.titleKeys) {
+            if (key.startsWith(query)) {
+                return 0;
+            }
+        }
+        for (String key : entry.authorKeys) {
+            if (key.startsWith(query)) {
+                return 1;
+            }
+        }
+        if (matches(entry.titleKeys, query)) {
+            return 2;
+        }
+        return matches(entry.authorKeys, query) ? 3 : -1;
+    }
+
+    private static Set<String> grams(String[] keys) {
+        Set<String> grams = new HashSet<>();
+        for (String key : keys) {
+            for (int i = 0; i < key.length(); i++) {
+                grams.add(key.substring(i, i + 1));
+                if (i + 1 < key.length()) {
+                    grams.add(key.substring(i, i + 2));
+                }
+            }
+        }
+        return grams;
+    }
+
+    private static Set<String> queryGrams(String query) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (query.length() == 1) {
+            grams.add(query);
+        }
+        for (int i = 0; i + 1 < query.length(); i++) {
+            grams.add(query.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    // 查询结果缓存键：同义的输入（大小写、全半角、空白、标点不同）共用一个键
+    static String queryKey(String title, String author, String category) {
+        return normalize(title) + "|" + normalize(author) + "|" + (category == null ? "" : category);
+    }
+
+    /**
+     * 规范化：全角转半角、转小写、去掉空白和标点，只保留字母、数字和汉字。
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(folded.length());
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // 返回 {全拼, 首字母}；多音字取第一个读音
+    static String[] pinyin(String normalized) {
+        StringBuilder full = new StringBuilder();
+        StringBuilder initials = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            String reading = TextTokenizer.isCjk(c) ? PINYIN_CACHE.computeIfAbsent(c, CatalogSearchIndex::reading) : "";
+            if (!reading.isEmpty()) {
+                full.append(reading);
+                initials.append(reading.charAt(0));
+            } else {
+                full.append(c);
+                initials.append(c);
+            }
+        }
+        return new String[]{full.toString(), initials.toString()};
+    }
+
+    private static String reading(char c) {
+        try {
+            String[] readings = PinyinHelper.toHanyuPinyinStringArray(c, PINYIN_FORMAT);
+            return readings != null && readings.length > 0 ? readings[0] : "";
+        } catch (BadHanyuPinyinOutputFormatCombination e) {
+            return "";
+        }
+    }
+
+    private static String[] keys(String text) {
+        String normalized = normalize(text);
+        String[] pinyin = pinyin(normalized);
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(normalized);
+        keys.add(pinyin[0]);
+        keys.add(pinyin[1]);
+        return keys.toArray(new String[0]);
+    }
+
+    private static class Entry {
+        final Long id;
+        final String title;
+        final String author;
+        final String category;
+        final String[] titleKeys;
+        final String[] authorKeys;
+
+        Entry(Book book) {
+            this.id = book.getId();
+            this.title = book.getTitle();
+            this.author = book.getAuthor();
+            this.category = book.getCategory() == null ? null : book.getCategory().name();
+            this.titleKeys = keys(book.getTitle());
+            this.authorKeys = keys(book.getAuthor());
+        }
+    }
+
+    public static class Suggestion {
+        private final Long id;
+        private final String title;
+        private final String author;
+        private final String category;
+        private final int rank;
+
+        Suggestion(Long id, String title, String author, String category, int rank) {
+            this.id = id;
+            this.title = title;
+            this.author = author;
+            this.category = category;
+            this.rank = rank;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getAuthor() {
+            return author;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public int getRank() {
+            return rank;
+        }
+    }
+}
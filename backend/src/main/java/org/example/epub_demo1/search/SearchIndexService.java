@@ -0,0 +1,309 @@
+package org.example.epub_demo1.search;
+
+import jakarta.annotation.PostConstruct;
+import org.example.epub_demo1.epub.EpubArchive;
+import org.example.epub_demo1.epub.HtmlText;
+import org.example.epub_demo1.storage.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 全文检索服务。
+ * 每本书一个索引文件（以 EPUB 文件名为键）；内存中只常驻全库词典（词 -> 书 -> 词频），
+ * 命中书籍的倒排表按需加载并用 LRU 保留最近使用的若干本，正文不常驻，摘要从索引文件中按偏移读取。
+ * 启动时发现的旧版本（v1）索引文件在后台逐本重建。
+ */
+@Service
+public class SearchIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndexService.class);
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int HITS_PER_BOOK = 3;
+
+    @Value("${search.index-dir:index}")
+    private String indexDir;
+
+    @Value("${search.loaded-books:32}")
+    private int maxLoadedBooks;
+
+    // 单个 EPUB 条目解压后的大小上限（字节）
+    @Value("${epub.max-entry-size:67108864}")
+    private long maxEntrySize;
+
+    private Path indexLocation;
+
+    // 全库词典：词 -> (文件名 -> 词频)
+    private final Map<String, Map<String, Integer>> dictionary = new ConcurrentHashMap<>();
+    // 已建索引的书 -> 其词典中的词（用于删除）
+    private final Map<String, Set<String>> bookTerms = new ConcurrentHashMap<>();
+
+    private Map<String, BookSearchIndex> loadedIndexes;
+    // 替换/删除索引文件与更新词典作为一步完成，避免同一本书的重建与删除交错
+    private final ReentrantLock registryLock = new ReentrantLock();
+
+    @PostConstruct
+    public void init() {
+        indexLocation = Paths.get(indexDir);
+        loadedIndexes = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BookSearchIndex> eldest) {
+                return size() > maxLoadedBooks;
+            }
+        });
+        try {
+            Files.createDirectories(indexLocation);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not initialize search index storage", e);
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(indexLocation, "*" + INDEX_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String fileName = BlobStore.unflatten(name.substring(0, name.length() - INDEX_SUFFIX.length()));
+                try {
+                    register(fileName, BookSearchIndex.readDictionary(file));
+                } catch (IOException e) {
+                    log.warn("跳过无法读取的索引文件 {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not load search index", e);
+        }
+        log.info("全文索引已加载 {} 本书, {} 个词", bookTerms.size(), dictionary.size());
+    }
+
+    // ============= 建立/删除索引 =============
+
+    /**
+     * 为已保存的 EPUB 建立索引。只按阅读顺序读取章节条目，不会整本加载。
+     */
+    public void indexBook(String fileName, Path epubFile) throws IOException {
+        List<String> hrefs = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        try (EpubArchive archive = EpubArchive.open(epubFile, maxEntrySize)) {
+            for (EpubArchive.ManifestItem item : archive.getSpine()) {
+                if (!item.getMediaType().contains("html")) {
+                    continue;
+                }
+                hrefs.add(item.getHref());
+                texts.add(HtmlText.extract(archive.readEntry(item.getHref())));
+            }
+        }
+
+        replace(fileName, BookSearchIndex.build(hrefs, texts));
+    }
+
+    public void removeBook(String fileName) {
+        if (fileName == null) {
+            return;
+        }
+        registryLock.lock();
+        try {
+            unregister(fileName);
+            loadedIndexes.remove(fileName);
+            Files.deleteIfExists(indexFile(fileName));
+        } catch (IOException e) {
+            log.warn("删除索引文件失败 {}: {}", fileName, e.getMessage());
+        } finally {
+            registryLock.unlock();
+        }
+    }
+
+    /**
+     * 写出新建的索引并替换原文件、更新词典。刚建立的索引带有全部正文，不放入 LRU，首次检索时再从文件加载。
+     */
+    private void replace(String fileName, BookSearchIndex index) throws IOException {
+        Path temp = Files.createTempFile(indexLocation, "build", ".tmp");
+        try {
+            index.writeTo(temp);
+            registryLock.lock();
+            try {
+                Files.move(temp, indexFile(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                unregister(fileName);
+                register(fileName, index.termFrequencies());
+                loadedIndexes.remove(fileName);
+            } finally {
+                registryLock.unlock();
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public boolean isIndexed(String fileName) {
+        return bookTerms.containsKey(fileName);
+    }
+
+    // ============= 查询 =============
+
+    /**
+     * 全库检索：先用内存词典给书打分，再只加载得分最高的几本书的倒排表生成章节命中和摘要。
+     */
+    public List<SearchHit> searchLibrary(String query, int limit) {
+        List<String> queryTerms = queryTerms(query);
+        if (queryTerms.isEmpty()) {
+            return List.of();
+        }
+
+        List<List<String>> groups = new ArrayList<>();
+        Map<String, Double> bookScores = null;
+        int totalBooks = Math.max(1, bookTerms.size());
+        for (String term : queryTerms) {
+            Map<String, Integer> groupFreqs = dictionary.getOrDefault(term, Map.of());
+            if (groupFreqs.isEmpty()) {
+                return List.of();
+            }
+            groups.add(List.of(term));
+
+            double idf = Math.log(1 + (double) totalBooks / groupFreqs.size());
+            Map<String, Double> scores = new HashMap<>();
+            for (Map.Entry<String, Integer> entry : groupFreqs.entrySet()) {
+                if (bookScores == null || bookScores.containsKey(entry.getKey())) {
+                    double previous = bookScores == null ? 0 : bookScores.get(entry.getKey());
+                    scores.put(entry.getKey(), previous + (1 + Math.log(entry.getValue())) * idf);
+                }
+            }
+            bookScores = scores;
+            if (bookScores.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        List<Map.Entry<String, Double>> rankedBooks = new ArrayList<>(bookScores.entrySet());
+        rankedBooks.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+
+        List<SearchHit> hits = new ArrayList<>();
+        for (Map.Entry<String, Double> book : rankedBooks) {
+            if (hits.size() >= limit) {
+                break;
+            }
+            BookSearchIndex index = load(book.getKey());
+            if (index == null) {
+                continue;
+            }
+            for (BookSearchIndex.ChapterHit hit : index.search(groups, HITS_PER_BOOK)) {
+                if (hits.size() >= limit) {
+                    break;
+                }
+                hits.add(new SearchHit(book.getKey(), book.getValue(), hit));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 书内检索。
+     */
+    public List<SearchHit> searchBook(String fileName, String query, int limit) {
+        BookSearchIndex index = load(fileName);
+        if (index == null) {
+            return List.of();
+        }
+        List<List<String>> groups = new ArrayList<>();
+        for (String term : queryTerms(query)) {
+            groups.add(List.of(term));
+        }
+        List<SearchHit> hits = new ArrayList<>();
+        for (BookSearchIndex.ChapterHit hit : index.search(groups, limit)) {
+            hits.add(new SearchHit(fileName, hit.getScore(), hit));
+        }
+        return hits;
+    }
+
+    // ============= 辅助方法 =============
+
+    private List<String> queryTerms(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (TextTokenizer.Token token : TextTokenizer.tokenize(query == null ? "" : query)) {
+            terms.add(token.getTerm());
+        }
+        return new ArrayList<>(terms);
+    }
+
+    private BookSearchIndex load(String fileName) {
+        if (!bookTerms.containsKey(fileName)) {
+            return null;
+        }
+        BookSearchIndex index = loadedIndexes.get(fileName);
+        if (index != null) {
+            return index;
+        }
+        try {
+            index = BookSearchIndex.read(indexFile(fileName));
+            loadedIndexes.put(fileName, index);
+            return index;
+        } catch (IOException e) {
+            log.warn("加载索引失败 {}: {}", fileName, e.getMessage());
+            return null;
+        }
+    }
+
+    private void register(String fileName, Map<String, Integer> termFrequencies) {
+        for (Map.Entry<String, Integer> entry : termFrequencies.entrySet()) {
+            dictionary.computeIfAbsent(entry.getKey(), k -> new ConcurrentHashMap<>())
+                    .put(fileName, entry.getValue());
+        }
+        bookTerms.put(fileName, termFrequencies.keySet());
+    }
+
+    private void unregister(String fileName) {
+        Set<String> terms = bookTerms.remove(fileName);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            dictionary.computeIfPresent(term, (k, books) -> {
+                books.remove(fileName);
+                return books.isEmpty() ? null : books;
+            });
+        }
+    }
+
+    private Path indexFile(String fileName) {
+        // 内容寻址的文件名带分片目录，索引文件平铺存放
+        return indexLocation.resolve(BlobStore.flatten(fileName) + INDEX_SUFFIX);
+    }
+
+    public static class SearchHit {
+        private final String fileName;
+        private final double bookScore;
+        private final BookSearchIndex.ChapterHit chapterHit;
+
+        SearchHit(String fileName, double bookScore, BookSearchIndex.ChapterHit chapterHit) {
+            this.fileName = fileName;
+            this.bookScore = bookScore;
+            this.chapterHit = chapterHit;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public double getBookScore() {
+            return bookScore;
+        }
+
+        public BookSearchIndex.ChapterHit getChapterHit() {
+            return chapterHit;
+        }
+    }
+}
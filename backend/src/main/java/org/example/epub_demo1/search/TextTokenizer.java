@@ -0,0 +1,109 @@
+package org.example.epub_demo1.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 分词器：拉丁文字按单词切分并转小写，中日韩文字按二元组（bigram）切分。
+ * 查询时孤立的单个汉字作为一元词输出；建索引时每个汉字都另外输出一元词，单字查询可以直接命中。
+ */
+public final class TextTokenizer {
+
+    // 超长的“单词”（如 base64 残留）不入索引
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private TextTokenizer() {
+    }
+
+    // 查询分词
+    public static List<Token> tokenize(String text) {
+        return tokenize(text, false);
+    }
+
+    // 建索引分词：在查询分词的基础上，每个中日韩字符都输出一元词
+    public static List<Token> tokenizeForIndex(String text) {
+        return tokenize(text, true);
+    }
+
+    private static List<Token> tokenize(String text, boolean unigrams) {
+        List<Token> tokens = new ArrayList<>();
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            int cp = text.codePointAt(i);
+            if (isCjk(cp)) {
+                int runStart = i;
+                int runEnd = i;
+                while (runEnd < n && isCjk(text.codePointAt(runEnd))) {
+                    runEnd += Character.charCount(text.codePointAt(runEnd));
+                }
+                emitCjkRun(text, runStart, runEnd, unigrams, tokens);
+                i = runEnd;
+            } else if (Character.isLetterOrDigit(cp)) {
+                int start = i;
+                while (i < n) {
+                    int c = text.codePointAt(i);
+                    if (!Character.isLetterOrDigit(c) || isCjk(c)) {
+                        break;
+                    }
+                    i += Character.charCount(c);
+                }
+                if (i - start <= MAX_TERM_LENGTH) {
+                    tokens.add(new Token(text.substring(start, i).toLowerCase(Locale.ROOT), start));
+                }
+            } else {
+                i += Character.charCount(cp);
+            }
+        }
+        return tokens;
+    }
+
+    private static void emitCjkRun(String text, int start, int end, boolean unigrams, List<Token> tokens) {
+        int first = start;
+        int second = first + Character.charCount(text.codePointAt(first));
+        if (second >= end) {
+            tokens.add(new Token(text.substring(first, second), first));
+            return;
+        }
+        while (second < end) {
+            int third = second + Character.charCount(text.codePointAt(second));
+            if (unigrams) {
+                tokens.add(new Token(text.substring(first, second), first));
+            }
+            tokens.add(new Token(text.substring(first, third), first));
+            first = second;
+            second = third;
+        }
+        if (unigrams) {
+            tokens.add(new Token(text.substring(first, second), first));
+        }
+    }
+
+    public static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    public static class Token {
+        private final String term;
+        private final int offset;
+
+        public Token(String term, int offset) {
+            this.term = term;
+            this.offset = offset;
+        }
+
+        public String getTerm() {
+            return term;
+        }
+
+        // 在原文中的字符偏移
+        public int getOffset() {
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.epub_demo1.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.example.epub_demo1.entity.User;
+import org.example.epub_demo1.mapper.UserMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 登录会话中只有用户名，按用户相关的数据（阅读进度、书签）以用户 ID 为键。
+ * 用户名到 ID 的映射缓存在内存中，翻页等高频请求不查 users 表。
+ */
+@Component
+public class CurrentUser {
+
+    @Autowired
+    private UserMapper userMapper;
+
+    private final Cache<String, Integer> ids = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    /**
+     * @return 当前登录用户的 ID；未登录或用户已不存在时为 null
+     */
+    public Integer id(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        // 不存在的用户名不缓存（Caffeine 不保存 null）
+        return ids.get(authentication.getName(), username -> {
+            User user = userMapper.findByUsername(username);
+            return user == null ? null : user.getId();
+        });
+    }
+}
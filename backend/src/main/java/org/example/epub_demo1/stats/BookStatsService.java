@@ -0,0 +1,159 @@
+package org.example.epub_demo1.stats;
+
+import org.example.epub_demo1.cache.AfterCommit;
+import org.example.epub_demo1.entity.enums.BookCategory;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 书籍统计：每个分类的数量保存在 Redis 哈希中，书籍增删改时用 HINCRBY 增量维护，
+ * 读取只需一次 HGETALL；定时任务用 GROUP BY 结果校正计数，修复进程崩溃等造成的偏差。
+ * 哈希不存在（过期、被清除、Redis 重启）时不做增量，而是从数据库重建，避免留下只有部分分类的哈希。
+ */
+@Service
+public class BookStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(BookStatsService.class);
+    private static final String COUNTS_KEY = "books:stats:counts";
+    // 分类为空的书
+    private static final String NO_CATEGORY = "_NONE";
+    private static final String OTHER_NAME = "其他分类";
+
+    // 哈希存在时才递增，返回 0 表示需要重建
+    private static final RedisScript<Long> INCREMENT_IF_EXISTS = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end "
+                    + "redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2]) "
+                    + "return 1",
+            Long.class);
+
+    private static final Map<BookCategory, String> CATEGORY_NAMES = new EnumMap<>(BookCategory.class);
+
+    static {
+        for (BookCategory category : BookCategory.values()) {
+            CATEGORY_NAMES.put(category, category.getChineseName());
+        }
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    // 虚拟线程等待时不占住载体线程
+    private final ReentrantLock reconcileLock = new ReentrantLock();
+
+    // 统计信息：{total, categories: [{name, count}]}
+    public Map<String, Object> getStats() {
+        HashOperations<String, String, String> hash = stringRedisTemplate.opsForHash();
+        Map<String, String> counts = hash.entries(COUNTS_KEY);
+        if (counts.isEmpty()) {
+            counts = reconcile();
+        }
+
+        int total = 0;
+        List<Map<String, Object>> categories = new ArrayList<>();
+        for (BookCategory category : BookCategory.values()) {
+            total += addCategory(categories, CATEGORY_NAMES.get(category), counts.get(category.name()));
+        }
+        total += addCategory(categories, OTHER_NAME, counts.get(NO_CATEGORY));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("total", total);
+        stats.put("categories", categories);
+        return stats;
+    }
+
+    // 计数在事务提交后更新，回滚不会造成偏差
+    public void bookAdded(BookCategory category) {
+        AfterCommit.run(() -> increment(category, 1));
+    }
+
+    public void bookDeleted(BookCategory category) {
+        AfterCommit.run(() -> increment(category, -1));
+    }
+
+    public void categoryChanged(BookCategory from, BookCategory to) {
+        if (from != to) {
+            bookDeleted(from);
+            bookAdded(to);
+        }
+    }
+
+    /**
+     * 以数据库为准重建计数。先写临时键再 RENAME，读者不会看到写了一半的哈希。
+     */
+    @Scheduled(fixedDelayString = "${stats.reconcile-interval-ms:600000}",
+            initialDelayString = "${stats.reconcile-interval-ms:600000}")
+    public Map<String, String> reconcile() {
+        reconcileLock.lock();
+        try {
+            return rebuild();
+        } finally {
+            reconcileLock.unlock();
+        }
+    }
+
+    private Map<String, String> rebuild() {
+        Map<String, String> counts = new HashMap<>();
+        for (BookCategory category : BookCategory.values()) {
+            counts.put(category.name(), "0");
+        }
+        counts.put(NO_CATEGORY, "0");
+        for (Map<String, Object> row : bookMapper.countBooksByCategory()) {
+            Object category = row.get("category");
+            String field = category == null ? NO_CATEGORY : category.toString();
+            counts.put(field, String.valueOf(((Number) row.get("count")).longValue()));
+        }
+
+        String tempKey = COUNTS_KEY + ":rebuild";
+        stringRedisTemplate.delete(tempKey);
+        stringRedisTemplate.opsForHash().putAll(tempKey, counts);
+        stringRedisTemplate.rename(tempKey, COUNTS_KEY);
+        log.debug("统计计数已校正: {}", counts);
+        return counts;
+    }
+
+    // ============= 辅助方法 =============
+
+    // 提交后执行，数据库中已包含本次变更，重建结果无需再递增
+    private void increment(BookCategory category, int delta) {
+        try {
+            Long applied = stringRedisTemplate.execute(INCREMENT_IF_EXISTS, List.of(COUNTS_KEY),
+                    field(category), String.valueOf(delta));
+            if (!Long.valueOf(1).equals(applied)) {
+                reconcile();
+            }
+        } catch (RuntimeException e) {
+            log.warn("更新统计计数失败，等待定时校正: {}", e.getMessage());
+        }
+    }
+
+    private static int addCategory(List<Map<String, Object>> categories, String name, String value) {
+        int count = value == null ? 0 : Integer.parseInt(value);
+        if (count > 0) {
+            categories.add(Map.of("name", name, "count", count));
+        }
+        return Math.max(count, 0);
+    }
+
+    private static String field(BookCategory category) {
+        return category == null ? NO_CATEGORY : category.name();
+    }
+}
@@ -0,0 +1,393 @@
+package org.example.epub_demo1.storage;
+
+import jakarta.annotation.PostConstruct;
+import org.example.epub_demo1.epub.BookLocationsService;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.example.epub_demo1.search.SearchIndexService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * EPUB 和封面的内容寻址存储：文件按 SHA-256 命名，存放在 ab/cd/&lt;hash&gt;.ext，
+ * 相同内容只保存一份。引用计数以 books 表为准（epub_file_name / cover_image_path 的行数），
+ * 删除书籍后不再被引用的文件被回收。
+ * <p>
+ * 上传和入库是两个请求，中间文件暂时无人引用；写入后宽限期内的文件不会被回收。
+ * 重复上传命中时不改动文件本身（其修改时间是下载的 Last-Modified），而是在 .pending/ 下
+ * 写一个同名标记文件，宽限期从标记的修改时间重新算起。上传后一直未入库的文件由定时清理回收。
+ */
+@Service
+public class BlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobStore.class);
+
+    private static final Pattern BLOB_NAME = Pattern.compile("[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}\\.[a-z0-9]+");
+    private static final Pattern FLAT_BLOB_NAME = Pattern.compile("[0-9a-f]{64}\\.[a-z0-9]+");
+    private static final String TEMP_PREFIX = ".blob-";
+    // 重复上传的标记文件目录（平铺文件名），不对外提供下载
+    private static final String PENDING_DIR = ".pending";
+    private static final int LOCK_STRIPES = 64;
+
+    public record Blob(String name, boolean created) {
+    }
+
+    @Value("${file.upload-dir:uploads}")
+    private String uploadDir;
+
+    @Value("${cover.upload-dir:covers}")
+    private String coverDir;
+
+    @Value("${storage.gc-grace-minutes:30}")
+    private long gcGraceMinutes;
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    @Autowired
+    private StaticFileService staticFileService;
+
+    @Autowired
+    private CoverThumbnailService coverThumbnailService;
+
+    @Autowired
+    private BookLocationsService bookLocationsService;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    // 同一文件名的写入、刷新和回收互斥；持锁期间有磁盘和数据库 I/O，
+    // 用 ReentrantLock 而不是 synchronized，虚拟线程阻塞时不会占住载体线程
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    private Path uploadLocation;
+    private Path coverLocation;
+
+    @PostConstruct
+    public void init() {
+        uploadLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
+        coverLocation = Paths.get(coverDir).toAbsolutePath().normalize();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        try {
+            Files.createDirectories(uploadLocation);
+            Files.createDirectories(coverLocation);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not initialize blob storage", e);
+        }
+    }
+
+    /**
+     * 上传临时文件的路径（与存储目录在同一文件系统，存入时只需重命名）。文件本身不创建。
+     */
+    public Path newUploadTempPath() {
+        return uploadLocation.resolve(TEMP_PREFIX + UUID.randomUUID() + ".tmp");
+    }
+
+    /**
+     * 存入已落盘的 EPUB：计算哈希后移动到最终位置；内容已存在时删除临时文件。
+     */
+    public Blob storeEpub(Path tempFile) throws IOException {
+        return commit(uploadLocation, tempFile, hash(tempFile), ".epub");
+    }
+
+    // 边读边计算哈希，数据只写一次
+    public Blob storeEpub(InputStream in) throws IOException {
+        return store(uploadLocation, in, ".epub");
+    }
+
+    public Blob storeCover(InputStream in, String extension) throws IOException {
+        return store(coverLocation, in, extension);
+    }
+
+    /**
+     * 上传目录中的 EPUB 文件。name 可能来自客户端提交的书籍记录，规范化后越出上传目录时抛出 IllegalArgumentException。
+     */
+    public Path epubPath(String name) {
+        if (!isValidEpubName(name)) {
+            throw new IllegalArgumentException("非法的 EPUB 文件名: " + name);
+        }
+        return uploadLocation.resolve(name).normalize();
+    }
+
+    // 规范化后仍在上传目录内（且不是目录本身）
+    public boolean isValidEpubName(String name) {
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+        Path file = uploadLocation.resolve(name).normalize();
+        return file.startsWith(uploadLocation) && !file.equals(uploadLocation);
+    }
+
+    /**
+     * 书籍删除或更换文件后调用（事务提交后）。不被引用且超过宽限期的内容寻址文件会被删除，
+     * 旧的 UUID 文件名不动。派生数据（全文索引、位置表、缩略图）随文件一起删除，调用方无需处理。
+     *
+     * @return 文件是否已被删除；仍被引用或在宽限期内时为 false
+     */
+    public boolean releaseEpub(String name) {
+        return release(uploadLocation, name);
+    }
+
+    public boolean releaseCover(String name) {
+        return release(coverLocation, name);
+    }
+
+    // 平铺形式（全文索引文件名用）：ab/cd/<hash>.epub -> <hash>.epub
+    public static String flatten(String name) {
+        return isBlobName(name) ? name.substring(6) : name;
+    }
+
+    public static String unflatten(String flatName) {
+        if (!FLAT_BLOB_NAME.matcher(flatName).matches()) {
+            return flatName;
+        }
+        return flatName.substring(0, 2) + "/" + flatName.substring(2, 4) + "/" + flatName;
+    }
+
+    public static boolean isBlobName(String name) {
+        return name != null && BLOB_NAME.matcher(name).matches();
+    }
+
+    // 内容寻址文件名中的 SHA-256：ab/cd/<hash>.epub -> <hash>
+    public static String hashOf(String name) {
+        return name.substring(6, 70);
+    }
+
+    /**
+     * 回收不被引用的文件和残留的临时文件（进程在上传中途退出时留下）。
+     */
+    @Scheduled(fixedDelayString = "${storage.gc-interval-ms:3600000}",
+            initialDelayString = "${storage.gc-interval-ms:3600000}")
+    public void sweep() {
+        Set<String> referenced = new HashSet<>(bookMapper.selectReferencedFileNames());
+        int removed = sweep(uploadLocation, referenced) + sweep(coverLocation, referenced);
+        sweepPending(uploadLocation);
+        sweepPending(coverLocation);
+        if (removed > 0) {
+            log.info("存储清理完成: 删除 {} 个未引用文件", removed);
+        }
+    }
+
+    // ============= 辅助方法 =============
+
+    private Blob store(Path root, InputStream in, String extension) throws IOException {
+        MessageDigest digest = sha256();
+        Path temp = Files.createTempFile(root, TEMP_PREFIX, ".tmp");
+        try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temp), digest)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return commit(root, temp, HexFormat.of().formatHex(digest.digest()), extension);
+    }
+
+    private Blob commit(Path root, Path temp, String hash, String extension) throws IOException {
+        String name = hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + extension;
+        Path target = root.resolve(name);
+        ReentrantLock lock = lockFor(name);
+        lock.lock();
+        try {
+            if (Files.exists(target)) {
+                // 已有相同内容：不重写数据，记下本次上传，避免在入库前刚好被回收
+                touchPending(root, name);
+                Files.deleteIfExists(temp);
+                return new Blob(name, false);
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            staticFileService.invalidate(target);
+            return new Blob(name, true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean release(Path root, String name) {
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+        ReentrantLock lock = lockFor(name);
+        lock.lock();
+        try {
+            if (bookMapper.countFileReferences(name) > 0 || !isBlobName(name)
+                    || !deleteBlobIfExpired(root, name)) {
+                return false;
+            }
+            deleted(root, name);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int sweep(Path root, Set<String> referenced) {
+        int removed = 0;
+        try (Stream<Path> files = Files.walk(root, 3)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!Files.isRegularFile(file)) {
+                    continue;
+                }
+                String name = root.relativize(file).toString().replace('\\', '/');
+                if (name.startsWith(TEMP_PREFIX)) {
+                    removed += deleteIfExpired(file) ? 1 : 0;
+                } else if (isBlobName(name) && !referenced.contains(name)) {
+                    ReentrantLock lock = lockFor(name);
+                    lock.lock();
+                    try {
+                        // 加锁后复查，期间可能有新书引用了它
+                        if (bookMapper.countFileReferences(name) == 0 && deleteBlobIfExpired(root, name)) {
+                            deleted(root, name);
+                            removed++;
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("存储清理失败 {}: {}", root, e.getMessage());
+        }
+        return removed;
+    }
+
+    // 封面的缩略图随原图删除，EPUB 的位置表和全文索引随文件删除
+    private void deleted(Path root, String name) {
+        if (root.equals(coverLocation)) {
+            coverThumbnailService.deleteThumbnails(name);
+        } else {
+            bookLocationsService.remove(name);
+            searchIndexService.removeBook(name);
+        }
+    }
+
+    // 过期的标记文件不再有作用；对应的文件已被引用或已删除时也一样
+    private void sweepPending(Path root) {
+        Path pendingDir = root.resolve(PENDING_DIR);
+        if (!Files.isDirectory(pendingDir)) {
+            return;
+        }
+        try (Stream<Path> markers = Files.list(pendingDir)) {
+            for (Path marker : (Iterable<Path>) markers::iterator) {
+                ReentrantLock lock = lockFor(unflatten(marker.getFileName().toString()));
+                lock.lock();
+                try {
+                    if (expired(marker)) {
+                        Files.deleteIfExists(marker);
+                    }
+                } catch (IOException e) {
+                    log.warn("删除标记文件失败 {}: {}", marker, e.getMessage());
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("存储清理失败 {}: {}", pendingDir, e.getMessage());
+        }
+    }
+
+    // 调用方持有该文件名的锁
+    private void touchPending(Path root, String name) throws IOException {
+        Path marker = pendingMarker(root, name);
+        Files.createDirectories(marker.getParent());
+        if (Files.exists(marker)) {
+            Files.setLastModifiedTime(marker, FileTime.fromMillis(System.currentTimeMillis()));
+        } else {
+            Files.createFile(marker);
+        }
+    }
+
+    private static Path pendingMarker(Path root, String name) {
+        return root.resolve(PENDING_DIR).resolve(flatten(name));
+    }
+
+    // 写入后和最近一次重复上传后都已超过宽限期才删除，调用方持有该文件名的锁
+    private boolean deleteBlobIfExpired(Path root, String name) {
+        Path file = root.resolve(name);
+        Path marker = pendingMarker(root, name);
+        try {
+            if (!expired(file) || (Files.exists(marker) && !expired(marker))) {
+                return false;
+            }
+            Files.deleteIfExists(marker);
+            boolean deleted = Files.deleteIfExists(file);
+            staticFileService.invalidate(file);
+            return deleted;
+        } catch (IOException e) {
+            log.warn("删除文件失败 {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean deleteIfExpired(Path file) {
+        try {
+            if (!expired(file)) {
+                return false;
+            }
+            boolean deleted = Files.deleteIfExists(file);
+            staticFileService.invalidate(file);
+            return deleted;
+        } catch (IOException e) {
+            log.warn("删除文件失败 {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean expired(Path file) throws IOException {
+        long age = System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis();
+        return age >= TimeUnit.MINUTES.toMillis(gcGraceMinutes);
+    }
+
+    private ReentrantLock lockFor(String name) {
+        return locks[Math.floorMod(name.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
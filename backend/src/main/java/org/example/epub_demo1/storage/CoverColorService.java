@@ -0,0 +1,77 @@
+package org.example.epub_demo1.storage;
+
+import org.example.epub_demo1.cache.AfterCommit;
+import org.example.epub_demo1.controller.BookCacheService;
+import org.example.epub_demo1.entity.BookChange;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.example.epub_demo1.sync.BookChangeLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 书籍封面主色。新增/修改书籍时只取入库时算好的值（客户端回传或内存缓存），不在请求线程中解码图片；
+ * 取不到时先留空，提交后交给缩略图线程池计算，再回填数据库。
+ */
+@Service
+public class CoverColorService {
+
+    private static final Pattern COLOR = Pattern.compile("#[0-9a-f]{6}");
+
+    @Autowired
+    private CoverThumbnailService coverThumbnailService;
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    @Autowired
+    private BookChangeLog bookChangeLog;
+
+    @Autowired
+    private BookCacheService bookCacheService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 规范化客户端提交的主色（转为小写）。
+     *
+     * @return 规范化后的 #rrggbb；格式不对时为 null
+     */
+    public static String normalize(String color) {
+        if (color == null) {
+            return null;
+        }
+        String lower = color.toLowerCase(Locale.ROOT);
+        return COLOR.matcher(lower).matches() ? lower : null;
+    }
+
+    // 只读内存缓存，未命中时为 null
+    public String cached(String coverName) {
+        return coverThumbnailService.cachedColor(coverName);
+    }
+
+    /**
+     * 提交后在缩略图线程池中计算主色并回填；队列已满时放弃，主色保持为空。
+     */
+    public void fillLater(Long bookId, String coverName) {
+        if (bookId == null || coverName == null) {
+            return;
+        }
+        AfterCommit.run(() -> coverThumbnailService.colorAsync(coverName, color -> fill(bookId, coverName, color)));
+    }
+
+    // 在线程池中调用，变更日志要求与写入在同一事务中；封面已被再次更换或主色已填写时不覆盖
+    void fill(Long bookId, String coverName, String color) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (bookMapper.fillCoverColor(bookId, coverName, color) > 0) {
+                bookChangeLog.record(List.of(bookId), BookChange.Op.UPSERT);
+                bookCacheService.invalidateBooks(List.of(bookId));
+            }
+        });
+    }
+}
@@ -0,0 +1,393 @@
+package org.example.epub_demo1.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.epub_demo1.config.WorkerThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 封面缩略图：每张封面生成 120/240/480 像素宽的 JPEG，保存在 covers/_thumbs/&lt;宽度&gt;/ 下，
+ * 并计算主色作为图片加载前的占位背景。
+ * 入库时在上传/导入的工作线程中同步生成；请求到尚未生成的缩略图时先返回原图，
+ * 生成任务交给有界的图片处理线程池，队列满时丢弃（下次请求再提交）。
+ */
+@Service
+public class CoverThumbnailService {
+
+    private static final Logger log = LoggerFactory.getLogger(CoverThumbnailService.class);
+
+    public static final int[] WIDTHS = {120, 240, 480};
+    private static final String THUMB_DIR = "_thumbs";
+    // 计算主色时缩小到的边长
+    private static final int COLOR_SAMPLE_SIZE = 32;
+    // 无法解码的封面记为空串，不再重复尝试
+    private static final String UNSUPPORTED = "";
+
+    @Value("${cover.upload-dir:covers}")
+    private String coverDir;
+
+    @Value("${cover.thumbnail-workers:2}")
+    private int workers;
+
+    @Value("${cover.thumbnail-queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${cover.thumbnail-quality:0.8}")
+    private float quality;
+
+    // 封面来自上传的 EPUB，声明的尺寸不可信：超过此像素数的不解码
+    @Value("${cover.thumbnail-max-pixels:24000000}")
+    private long maxPixels;
+
+    @Autowired
+    private StaticFileService staticFileService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private WorkerThreads workerThreads;
+
+    // 封面内容不变（内容寻址），主色只需计算一次
+    private final Cache<String, String> colors = Caffeine.newBuilder().maximumSize(10_000).build();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private Path coverLocation;
+    private ThreadPoolExecutor executor;
+    private Timer generateTimer;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    public void init() {
+        coverLocation = Paths.get(coverDir).toAbsolutePath().normalize();
+        executor = new ThreadPoolExecutor(
+                workers, workers,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                workerThreads.factory("cover-thumbnail-"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        generateTimer = Timer.builder("cover.thumbnail.generate")
+                .description("封面缩略图生成耗时")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("cover.thumbnail.rejected")
+                .description("因队列已满未提交的缩略图任务")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 生成全部尺寸的缩略图并返回主色（#rrggbb）。已生成过时只读取最小的缩略图计算主色。
+     * 图片无法解码时返回 null。
+     */
+    public String generate(String coverName) {
+        Path original = originalPath(coverName);
+        if (original == null || !Files.isRegularFile(original)) {
+            return null;
+        }
+        String cached = colors.getIfPresent(coverName);
+        if (cached != null && (cached.equals(UNSUPPORTED) || thumbnailsExist(coverName))) {
+            return cached.equals(UNSUPPORTED) ? null : cached;
+        }
+        try {
+            String color = generateTimer.recordCallable(() -> doGenerate(coverName, original));
+            colors.put(coverName, color == null ? UNSUPPORTED : color);
+            return color;
+        } catch (Exception e) {
+            log.warn("生成封面缩略图失败 {}: {}", coverName, e.getMessage());
+            return null;
+        }
+    }
+
+    // 只读内存缓存中的主色，未命中或无法解码时为 null（不生成，可在请求线程中调用）
+    public String cachedColor(String coverName) {
+        String cached = coverName == null ? null : colors.getIfPresent(coverName);
+        return cached == null || cached.equals(UNSUPPORTED) ? null : cached;
+    }
+
+    /**
+     * 在图片处理线程池中生成缩略图，得到主色后回调；无法解码时不回调，队列已满时放弃。
+     */
+    public void colorAsync(String coverName, Consumer<String> callback) {
+        try {
+            executor.execute(() -> {
+                String color = generate(coverName);
+                if (color != null) {
+                    try {
+                        callback.accept(color);
+                    } catch (RuntimeException e) {
+                        log.warn("回填封面主色失败 {}: {}", coverName, e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+        }
+    }
+
+    /**
+     * 按请求宽度选择缩略图（不小于请求宽度的最小尺寸），返回相对封面目录的路径。
+     * 缩略图尚未生成时提交后台任务并返回 null，由调用方返回原图。
+     */
+    public String thumbnailPath(String coverName, int width) {
+        Path original = originalPath(coverName);
+        if (original == null) {
+            return null;
+        }
+        String relative = relativeThumbnail(coverName, nearestWidth(width));
+        if (Files.isRegularFile(coverLocation.resolve(relative))) {
+            return relative;
+        }
+        if (!UNSUPPORTED.equals(colors.getIfPresent(coverName)) && Files.isRegularFile(original)) {
+            submit(coverName);
+        }
+        return null;
+    }
+
+    public void deleteThumbnails(String coverName) {
+        colors.invalidate(coverName);
+        for (int width : WIDTHS) {
+            Path thumbnail = coverLocation.resolve(relativeThumbnail(coverName, width));
+            try {
+                Files.deleteIfExists(thumbnail);
+                staticFileService.invalidate(thumbnail);
+            } catch (IOException e) {
+                log.warn("删除封面缩略图失败 {}: {}", thumbnail, e.getMessage());
+            }
+        }
+    }
+
+    // ============= 辅助方法 =============
+
+    private void submit(String coverName) {
+        if (!pending.add(coverName)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(coverName);
+                } finally {
+                    pending.remove(coverName);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(coverName);
+            rejectedCounter.increment();
+        }
+    }
+
+    private String doGenerate(String coverName, Path original) throws IOException {
+        if (thumbnailsExist(coverName)) {
+            BufferedImage smallest = ImageIO.read(coverLocation.resolve(relativeThumbnail(coverName, WIDTHS[0])).toFile());
+            return smallest == null ? null : dominantColor(smallest);
+        }
+        BufferedImage image = decode(original, WIDTHS[WIDTHS.length - 1]);
+        if (image == null) {
+            // ImageIO 不支持的格式（如 WebP）或尺寸超限，只提供原图
+            return null;
+        }
+        // 从大到小逐级缩小，每一级都以上一级为源，缩放质量更好也更快
+        BufferedImage source = flatten(image);
+        for (int i = WIDTHS.length - 1; i >= 0; i--) {
+            source = scaleToWidth(source, WIDTHS[i]);
+            writeJpeg(source, coverLocation.resolve(relativeThumbnail(coverName, WIDTHS[i])));
+        }
+        return dominantColor(source);
+    }
+
+    /**
+     * 先只读文件头取得尺寸，超过像素上限时返回 null；否则按整数倍隔行隔列采样解码，
+     * 结果宽度不小于 minWidth，大图不必整张解码到内存。
+     */
+    BufferedImage decode(Path file, int minWidth) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (width <= 0 || height <= 0 || (long) width * height > maxPixels) {
+                    log.warn("封面尺寸超限，不生成缩略图 {}: {}x{}", file.getFileName(), width, height);
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, width / minWidth);
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private boolean thumbnailsExist(String coverName) {
+        for (int width : WIDTHS) {
+            if (!Files.isRegularFile(coverLocation.resolve(relativeThumbnail(coverName, width)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 缩略图统一为 JPEG：ab/cd/<hash>.png -> _thumbs/240/ab/cd/<hash>.jpg
+    private static String relativeThumbnail(String coverName, int width) {
+        int dot = coverName.lastIndexOf('.');
+        String base = dot > coverName.lastIndexOf('/') ? coverName.substring(0, dot) : coverName;
+        return THUMB_DIR + "/" + width + "/" + base + ".jpg";
+    }
+
+    private static int nearestWidth(int width) {
+        for (int candidate : WIDTHS) {
+            if (candidate >= width) {
+                return candidate;
+            }
+        }
+        return WIDTHS[WIDTHS.length - 1];
+    }
+
+    // 越界或指向缩略图目录本身的路径返回 null
+    private Path originalPath(String coverName) {
+        if (coverName == null || coverName.isEmpty() || coverName.startsWith(THUMB_DIR + "/")) {
+            return null;
+        }
+        Path original = coverLocation.resolve(coverName).normalize();
+        return original.startsWith(coverLocation) ? original : null;
+    }
+
+    // 透明背景铺白，统一为 RGB
+    private static BufferedImage flatten(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return rgb;
+    }
+
+    // 不放大；宽度超过两倍时先逐次减半，避免双线性插值一次缩小太多产生锯齿
+    private static BufferedImage scaleToWidth(BufferedImage image, int width) {
+        BufferedImage current = image;
+        while (current.getWidth() / 2 >= width) {
+            current = resize(current, current.getWidth() / 2, Math.max(1, current.getHeight() / 2));
+        }
+        if (current.getWidth() > width) {
+            int height = Math.max(1, (int) Math.round((double) current.getHeight() * width / current.getWidth()));
+            current = resize(current, width, height);
+        }
+        return current;
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".thumb-", ".tmp");
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(temp.toFile())) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            staticFileService.invalidate(target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 主色：缩小后按每通道 4 位量化统计，取出现最多的颜色桶内的平均色。
+     */
+    static String dominantColor(BufferedImage image) {
+        BufferedImage sample = resize(image, COLOR_SAMPLE_SIZE, COLOR_SAMPLE_SIZE);
+        Map<Integer, long[]> buckets = new HashMap<>();
+        long[] best = null;
+        for (int y = 0; y < COLOR_SAMPLE_SIZE; y++) {
+            for (int x = 0; x < COLOR_SAMPLE_SIZE; x++) {
+                int rgb = sample.getRGB(x, y);
+                int r = (rgb >> 16) & 0xFF;
+                int g = (rgb >> 8) & 0xFF;
+                int b = rgb & 0xFF;
+                long[] bucket = buckets.computeIfAbsent((r >> 4) << 8 | (g >> 4) << 4 | (b >> 4), k -> new long[4]);
+                bucket[0]++;
+                bucket[1] += r;
+                bucket[2] += g;
+                bucket[3] += b;
+                if (best == null || bucket[0] > best[0]) {
+                    best = bucket;
+                }
+            }
+        }
+        return String.format("#%02x%02x%02x", best[1] / best[0], best[2] / best[0], best[3] / best[0]);
+    }
+}
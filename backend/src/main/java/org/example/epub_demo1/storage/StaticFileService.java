@@ -0,0 +1,296 @@
+package org.example.epub_demo1.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 书籍和封面文件的下载服务。
+ * 文件元数据（大小、修改时间、ETag）缓存在内存中，条件请求命中时返回 304 不访问磁盘；
+ * 支持单区间 Range/If-Range，正文优先走 Tomcat sendfile，否则用 FileChannel.transferTo。
+ */
+@Service
+public class StaticFileService {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final MediaType EPUB = MediaType.parseMediaType("application/epub+zip");
+
+    // 小文件直接拷贝比 sendfile 更划算
+    private static final long SENDFILE_THRESHOLD = 48 * 1024;
+
+    @Value("${file.stat-cache-seconds:300}")
+    private long statCacheSeconds;
+
+    @Value("${file.stat-cache-size:10000}")
+    private int statCacheSize;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<Path, FileStat> statCache = new ConcurrentHashMap<>();
+
+    /**
+     * 输出 root 下的 relativePath；路径越界或文件不存在时返回 404。
+     *
+     * @param kind 指标标签（epub / cover / thumbnail），按类别统计输出字节数
+     */
+    public void serve(Path root, String relativePath, String kind, CacheControl cacheControl,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path base = root.toAbsolutePath().normalize();
+        Path file = base.resolve(relativePath).normalize();
+        FileStat stat = file.startsWith(base) && !file.equals(base) && !hidden(base.relativize(file))
+                ? stat(file, base.relativize(file).toString().replace('\\', '/'))
+                : FileStat.MISSING;
+        if (!stat.exists) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ETAG, stat.etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, stat.lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (notModified(request, stat)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = stat.size - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && ifRangeMatches(request, stat)) {
+            long[] parsed = parseRange(range, stat.size);
+            if (parsed == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + stat.size);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (parsed.length == 2) {
+                start = parsed[0];
+                end = parsed[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + stat.size);
+            }
+        }
+
+        long length = end - start + 1;
+        response.setContentType(contentType(file).toString());
+        response.setContentLengthLong(length);
+        if ("HEAD".equals(request.getMethod()) || length == 0) {
+            return;
+        }
+        // sendfile 在请求结束后才写出，按应答长度计
+        servedBytes(kind).increment(length);
+
+        if (length >= SENDFILE_THRESHOLD && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // 由 Tomcat 在请求结束后用 sendfile 直接从页缓存写入 socket
+            request.setAttribute(SENDFILE_FILENAME, file.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long written = channel.transferTo(position, remaining, out);
+                if (written <= 0) {
+                    break;
+                }
+                position += written;
+                remaining -= written;
+            }
+        } catch (NoSuchFileException e) {
+            // 文件在 stat 缓存有效期内被删除
+            invalidate(file);
+            throw e;
+        }
+    }
+
+    private Counter servedBytes(String kind) {
+        return Counter.builder("files.served.bytes")
+                .description("下载接口输出的文件字节数")
+                .baseUnit("bytes")
+                .tag("kind", kind)
+                .register(meterRegistry);
+    }
+
+    public void invalidate(Path file) {
+        statCache.remove(file.toAbsolutePath().normalize());
+    }
+
+    // ============= 辅助方法 =============
+
+    // 存储目录中以 . 开头的是内部文件（上传临时文件、重复上传标记）
+    private static boolean hidden(Path relative) {
+        for (Path part : relative) {
+            if (part.toString().startsWith(".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 内容寻址文件的 ETag 为文件名中的哈希，不随修改时间变化
+    private FileStat stat(Path file, String relativePath) {
+        long now = System.currentTimeMillis();
+        FileStat cached = statCache.get(file);
+        if (cached != null && cached.expiresAt > now) {
+            return cached;
+        }
+        FileStat stat;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                stat = FileStat.missing(now + 5_000);
+            } else {
+                long lastModified = attributes.lastModifiedTime().toMillis();
+                String etag = BlobStore.isBlobName(relativePath)
+                        ? "\"" + BlobStore.hashOf(relativePath) + "\""
+                        : "\"" + Long.toHexString(attributes.size()) + "-" + Long.toHexString(lastModified) + "\"";
+                stat = new FileStat(true, attributes.size(), lastModified, etag, now + statCacheSeconds * 1000);
+            }
+        } catch (IOException e) {
+            // 不存在的文件短暂缓存，防止 404 请求反复访问磁盘
+            stat = FileStat.missing(now + 5_000);
+        }
+        if (statCache.size() >= statCacheSize) {
+            statCache.clear();
+        }
+        statCache.put(file, stat);
+        return stat;
+    }
+
+    private static boolean notModified(HttpServletRequest request, FileStat stat) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return etagMatches(ifNoneMatch, stat.etag);
+        }
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && stat.lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    // If-Range 不匹配时忽略 Range，返回完整内容
+    private static boolean ifRangeMatches(HttpServletRequest request, FileStat stat) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(stat.etag);
+        }
+        long date = dateHeader(request, HttpHeaders.IF_RANGE);
+        return date >= 0 && stat.lastModified / 1000 == date / 1000;
+    }
+
+    private static boolean etagMatches(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || value.equals(etag) || value.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析单区间 Range。返回 {start, end}；多区间或格式不支持时返回空数组（按完整内容响应）；
+     * 区间不可满足时返回 null。
+     */
+    private static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? size - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), size - 1);
+            }
+            if (start >= size || start > end) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static MediaType contentType(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".epub")) {
+            return EPUB;
+        }
+        return MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    private static class FileStat {
+        static final FileStat MISSING = missing(0);
+
+        final boolean exists;
+        final long size;
+        final long lastModified;
+        final String etag;
+        final long expiresAt;
+
+        FileStat(boolean exists, long size, long lastModified, String etag, long expiresAt) {
+            this.exists = exists;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+        }
+
+        static FileStat missing(long expiresAt) {
+            return new FileStat(false, 0, 0, null, expiresAt);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.example.epub_demo1.sync;
+
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.entity.BookChange;
+import org.example.epub_demo1.mapper.BookChangeMapper;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 书籍变更日志：每次增删改在同一事务中追加一条带版本号的记录，客户端和镜像节点按版本号增量同步。
+ * 版本号由 book_change_seq 计数器行分配，写入者持有该行的锁直到提交，因此版本号按提交顺序递增且连续；
+ * 读到版本号 v 时，所有 <= v 的变更都已提交。
+ * 超过保留期的记录定期删除，客户端的版本号早于日志开头时返回全量。
+ */
+@Service
+public class BookChangeLog {
+
+    private static final Logger log = LoggerFactory.getLogger(BookChangeLog.class);
+    // 每次清理删除的行数
+    private static final int DELETE_BATCH = 5000;
+
+    @Value("${changes.page-size:1000}")
+    private int pageSize;
+
+    @Value("${changes.retention-days:30}")
+    private int retentionDays;
+
+    @Autowired
+    private BookChangeMapper bookChangeMapper;
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    /**
+     * 记录变更，必须在写 books 表的同一事务中调用（事务回滚时日志一起回滚）。
+     *
+     * @throws IllegalStateException 当前没有事务
+     */
+    public void record(Collection<Long> bookIds, BookChange.Op op) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("变更日志必须与书籍写入在同一事务中记录");
+        }
+        record(bookChangeMapper, bookIds, op);
+    }
+
+    /**
+     * 通过指定会话的 Mapper 记录变更（批量导入使用自己的 BATCH 会话，由调用方提交）。
+     */
+    public void record(BookChangeMapper mapper, Collection<Long> bookIds, BookChange.Op op) {
+        if (bookIds.isEmpty()) {
+            return;
+        }
+        long version = mapper.lockVersion();
+        LocalDateTime now = LocalDateTime.now();
+        List<BookChange> changes = new ArrayList<>(bookIds.size());
+        for (Long bookId : bookIds) {
+            changes.add(new BookChange(++version, bookId, op, now));
+        }
+        mapper.addChanges(changes);
+        mapper.setVersion(version);
+    }
+
+    /**
+     * since 之后的变更：同一本书的多次变更只保留最后一次，新增/修改返回当前书籍数据，删除只返回 ID。
+     * 每次最多处理 changes.page-size 条日志，hasMore 为 true 时以返回的 version 继续请求。
+     *
+     * @param since 上次同步返回的 version；0 表示首次同步
+     * @return {version, full, hasMore, books, deleted}；full 为 true 时 books 为全部书籍，客户端应替换本地数据
+     */
+    public Map<String, Object> changesSince(long since) {
+        long current = bookChangeMapper.currentVersion();
+        // 日志启用前已有的书不在日志中，首次同步和未知的版本号都返回全量
+        if (since <= 0 || since > current) {
+            return full(current);
+        }
+        if (since == current) {
+            return result(current, false, false, List.of(), List.of());
+        }
+
+        List<BookChange> changes = bookChangeMapper.selectSince(since, current, pageSize);
+        // 清理只删除日志开头的一段；查询之后最小版本号仍不大于 since + 1，说明查询时 since 之后的记录都在
+        Long min = bookChangeMapper.minVersion();
+        if (min == null || min > since + 1) {
+            return full(current);
+        }
+
+        Map<Long, BookChange.Op> latest = new LinkedHashMap<>();
+        for (BookChange change : changes) {
+            latest.remove(change.getBookId());
+            latest.put(change.getBookId(), change.getOp());
+        }
+        List<Long> upserted = new ArrayList<>();
+        List<Long> deleted = new ArrayList<>();
+        latest.forEach((bookId, op) -> (op == BookChange.Op.DELETE ? deleted : upserted).add(bookId));
+
+        // 直接查数据库：缓存在事务提交后才失效，可能还是旧数据
+        List<Book> books = upserted.isEmpty() ? List.of() : bookMapper.selectByIds(upserted);
+        if (books.size() < upserted.size()) {
+            // 查询前已被删除，对应的 DELETE 在之后的版本中，这里提前作为删除返回
+            Set<Long> found = new HashSet<>();
+            books.forEach(book -> found.add(book.getId()));
+            upserted.stream().filter(id -> !found.contains(id)).forEach(deleted::add);
+        }
+
+        long version = changes.isEmpty() ? current : changes.get(changes.size() - 1).getVersion();
+        return result(version, false, version < current, books, deleted);
+    }
+
+    // 先取版本号再查全表：之后提交的变更可能已包含在内，下次同步会再返回一次，客户端按 ID 覆盖即可
+    private Map<String, Object> full(long current) {
+        return result(current, true, false, bookMapper.getAll(null, null, null), List.of());
+    }
+
+    private static Map<String, Object> result(long version, boolean full, boolean hasMore,
+                                              List<Book> books, List<Long> deleted) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("version", version);
+        result.put("full", full);
+        result.put("hasMore", hasMore);
+        result.put("books", books);
+        result.put("deleted", deleted);
+        return result;
+    }
+
+    /**
+     * 删除超过 changes.retention-days 的日志。按版本号删除开头的一段，不会在日志中间留下空洞。
+     */
+    @Scheduled(fixedDelayString = "${changes.compact-interval-ms:3600000}",
+            initialDelayString = "${changes.compact-interval-ms:3600000}")
+    public void compact() {
+        Long upTo = bookChangeMapper.maxVersionBefore(LocalDateTime.now().minusDays(retentionDays));
+        if (upTo == null) {
+            return;
+        }
+        int removed = 0;
+        int deleted;
+        do {
+            deleted = bookChangeMapper.deleteUpTo(upTo, DELETE_BATCH);
+            removed += deleted;
+        } while (deleted == DELETE_BATCH);
+        if (removed > 0) {
+            log.info("变更日志清理完成: 删除 {} 条, 保留版本 {} 之后的记录", removed, upTo);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+-- 书架游标分页：WHERE (upload_time, id) < (?, ?) ORDER BY upload_time DESC, id DESC
+CREATE INDEX idx_books_upload_time_id ON books (upload_time, id);
+CREATE INDEX idx_books_category_upload_time_id ON books (category, upload_time, id);
+
+-- 内容寻址存储的引用计数：按文件名统计引用行数
+CREATE INDEX idx_books_epub_file_name ON books (epub_file_name);
+CREATE INDEX idx_books_cover_image_path ON books (cover_image_path);
+
+-- 封面主色（缩略图加载前的占位背景）
+ALTER TABLE books ADD COLUMN cover_color VARCHAR(7) NULL AFTER cover_image_path;
+
+-- 书籍变更日志（/books/changes 增量同步）
+-- 版本号计数器：写日志时 SELECT ... FOR UPDATE 锁住这一行直到事务提交，
+-- 版本号顺序与提交顺序一致，回滚时计数器一起回滚，版本号连续无空洞
+CREATE TABLE book_change_seq (
+    id      TINYINT PRIMARY KEY,
+    version BIGINT  NOT NULL
+);
+INSERT INTO book_change_seq (id, version) VALUES (1, 0);
+
+-- op: UPSERT（新增或修改）/ DELETE；超过保留期的记录由定时任务清理
+CREATE TABLE book_changes (
+    version    BIGINT     PRIMARY KEY,
+    book_id    BIGINT     NOT NULL,
+    op         VARCHAR(8) NOT NULL,
+    changed_at DATETIME   NOT NULL,
+    INDEX idx_book_changes_changed_at (changed_at)
+);
+
+-- 字数和预计阅读时长（入库时由位置表统计）
+ALTER TABLE books ADD COLUMN word_count INT NULL AFTER upload_time;
+ALTER TABLE books ADD COLUMN reading_minutes INT NULL AFTER word_count;
+
+-- 阅读进度：翻页时只写 Redis，定时合并后批量 upsert 到这里（每个用户每本书一行）
+-- updated_at 为毫秒时间戳，upsert 时只接受更新的记录
+CREATE TABLE reading_progress (
+    user_id       INT          NOT NULL,
+    book_id       BIGINT       NOT NULL,
+    cfi           VARCHAR(512) NOT NULL,
+    percentage    DOUBLE       NULL,
+    chapter_index INT          NULL,
+    updated_at    BIGINT       NOT NULL,
+    PRIMARY KEY (user_id, book_id),
+    INDEX idx_reading_progress_user_updated (user_id, updated_at)
+);
+
+-- 书签
+CREATE TABLE bookmarks (
+    id         BIGINT AUTO_INCREMENT PRIMARY KEY,
+    user_id    INT          NOT NULL,
+    book_id    BIGINT       NOT NULL,
+    cfi        VARCHAR(512) NOT NULL,
+    label      VARCHAR(255) NULL,
+    created_at DATETIME     NOT NULL,
+    INDEX idx_bookmarks_user_book (user_id, book_id, created_at)
+);
+
+-- 划线和笔记：阅读器每次只加载当前章节，按 (user_id, book_id, chapter_idx, start_offset) 索引查询
+-- client_id 为客户端生成的 ID，离线同步重复提交时按它去重；
+-- 删除只做标记（deleted = 1），离线同步按 updated_at 比较修改和删除，较早的修改不会使已删除的划线复活
+CREATE TABLE annotations (
+    id           BIGINT AUTO_INCREMENT PRIMARY KEY,
+    user_id      INT           NOT NULL,
+    book_id      BIGINT        NOT NULL,
+    chapter_idx  INT           NOT NULL,
+    start_offset INT           NOT NULL,
+    cfi_range    VARCHAR(1024) NOT NULL,
+    type         VARCHAR(16)   NOT NULL,
+    color        VARCHAR(16)   NULL,
+    note         TEXT          NULL,
+    quote        VARCHAR(1000) NULL,
+    client_id    VARCHAR(64)   NULL,
+    created_at   DATETIME      NOT NULL,
+    updated_at   BIGINT        NOT NULL,
+    deleted      TINYINT(1)    NOT NULL DEFAULT 0,
+    INDEX idx_annotations_chapter (user_id, book_id, chapter_idx, start_offset),
+    UNIQUE KEY uk_annotations_client (user_id, client_id)
+);
@@ -0,0 +1,175 @@
+package org.example.epub_demo1.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.entity.enums.BookCategory;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookCodecTest {
+
+    @Test
+    void roundTripsSingleBook() {
+        Book book = book(42L, "三体Ⅱ：黑暗森林", "刘慈欣", "“宇宙就是一座黑暗森林”🌲");
+        Book decoded = (Book) BookCodec.decode(BookCodec.encode(book));
+        assertBookEquals(book, decoded);
+    }
+
+    @Test
+    void roundTripsBookWithOnlyNullFields() {
+        // 空对象用于缓存穿透保护，必须原样保留
+        Book decoded = (Book) BookCodec.decode(BookCodec.encode(new Book()));
+        assertNull(decoded.getId());
+        assertNull(decoded.getTitle());
+        assertNull(decoded.getCategory());
+        assertNull(decoded.getUploadTime());
+    }
+
+    @Test
+    void roundTripsListsAndCompressesLargeOnes() {
+        List<Book> books = library(500);
+        byte[] bytes = BookCodec.encodeList(books);
+        assertEquals(1, bytes[3] & 1, "large lists should be LZ4 compressed");
+
+        List<Book> decoded = (List<Book>) BookCodec.decode(bytes);
+        assertEquals(books.size(), decoded.size());
+        for (int i = 0; i < books.size(); i++) {
+            assertBookEquals(books.get(i), decoded.get(i));
+        }
+
+        byte[] small = BookCodec.encodeList(library(1));
+        assertEquals(0, small[3] & 1, "small lists should not be compressed");
+        assertEquals(0, ((List<?>) BookCodec.decode(BookCodec.encodeList(List.of()))).size());
+    }
+
+    @Test
+    void skipsFieldsAddedByNewerWriters() {
+        Book book = book(7L, "活着", "余华", "简介");
+        byte[] bytes = BookCodec.encode(book);
+
+        // 模拟新版本在记录末尾追加一个字段：记录长度 +2，位图置第 20 位，末尾追加两个字节
+        int recordLength = bytes[4];
+        byte[] fields = Arrays.copyOfRange(bytes, 5, 5 + recordLength);
+        byte[] mask = Arrays.copyOfRange(fields, 0, 2);
+        assertTrue((mask[0] & 0x80) != 0, "mask of a fully populated book spans two bytes");
+        byte[] extended = new byte[4 + 1 + recordLength + 1 + 2];
+        System.arraycopy(bytes, 0, extended, 0, 4);
+        extended[4] = (byte) (recordLength + 1 + 2);
+        extended[5] = mask[0];
+        extended[6] = (byte) (mask[1] | 0x80);
+        extended[7] = 0x40;
+        System.arraycopy(fields, 2, extended, 8, recordLength - 2);
+        extended[extended.length - 2] = 0x01;
+        extended[extended.length - 1] = 0x02;
+
+        assertBookEquals(book, (Book) BookCodec.decode(extended));
+    }
+
+    @Test
+    void rejectsUnknownVersionAndTruncatedData() {
+        byte[] bytes = BookCodec.encode(book(1L, "t", "a", "d"));
+        byte[] future = bytes.clone();
+        future[1] = (byte) (BookCodec.VERSION + 1);
+        assertThrows(IllegalArgumentException.class, () -> BookCodec.decode(future));
+        assertThrows(IllegalArgumentException.class,
+                () -> BookCodec.decode(Arrays.copyOf(bytes, bytes.length - 3)));
+    }
+
+    @Test
+    void serializerUsesCodecForBooksAndJsonForEverythingElse() {
+        BookRedisSerializer serializer = new BookRedisSerializer(json());
+
+        byte[] list = serializer.serialize(library(3));
+        assertTrue(BookCodec.isEncoded(list));
+        List<?> books = (List<?>) serializer.deserialize(list);
+        assertInstanceOf(Book.class, books.get(0));
+
+        byte[] stats = serializer.serialize(Map.of("total", 3));
+        assertEquals('{', stats[0]);
+        assertEquals(Map.of("total", 3), serializer.deserialize(stats));
+
+        // 升级前写入的 JSON 列表仍能读出
+        byte[] legacy = json().serialize(List.of(Map.of("id", 1)));
+        assertInstanceOf(List.class, serializer.deserialize(legacy));
+
+        byte[] corrupt = Arrays.copyOf(list, 6);
+        assertThrows(SerializationException.class, () -> serializer.deserialize(corrupt));
+    }
+
+    @Test
+    void binaryIsSmallerThanJson() {
+        List<Book> books = library(200);
+        byte[] binary = BookCodec.encodeList(books);
+        byte[] json = json().serialize(books);
+        assertTrue(binary.length * 2 < json.length,
+                "binary " + binary.length + " bytes vs json " + json.length + " bytes");
+        assertArrayEquals(binary, BookCodec.encodeList((List<Book>) BookCodec.decode(binary)));
+    }
+
+    // ============= 测试数据 =============
+
+    static List<Book> library(int size) {
+        BookCategory[] categories = BookCategory.values();
+        List<Book> books = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Book book = book((long) i + 1, "书名 " + i, "作者 " + (i % 37),
+                    "这是第 " + i + " 本书的简介，内容较长，用于模拟真实的书籍描述文本。".repeat(3));
+            book.setCategory(categories[i % categories.length]);
+            books.add(book);
+        }
+        return books;
+    }
+
+    static Book book(Long id, String title, String author, String description) {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle(title);
+        book.setAuthor(author);
+        book.setDescription(description);
+        book.setCategory(BookCategory.FICTION);
+        book.setCoverImagePath("cover_" + id + ".jpg");
+        book.setCoverColor("#3a5f8c");
+        book.setEpubFileName(id + "_book.epub");
+        book.setUploadUserId(3L);
+        book.setUploadTime(LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123_000_000));
+        book.setWordCount(215_000);
+        book.setReadingMinutes(717);
+        return book;
+    }
+
+    static Jackson2JsonRedisSerializer<Object> json() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        return new Jackson2JsonRedisSerializer<>(mapper, Object.class);
+    }
+
+    private static void assertBookEquals(Book expected, Book actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getAuthor(), actual.getAuthor());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.getCoverImagePath(), actual.getCoverImagePath());
+        assertEquals(expected.getCoverColor(), actual.getCoverColor());
+        assertEquals(expected.getEpubFileName(), actual.getEpubFileName());
+        assertEquals(expected.getUploadUserId(), actual.getUploadUserId());
+        assertEquals(expected.getUploadTime(), actual.getUploadTime());
+        assertEquals(expected.getWordCount(), actual.getWordCount());
+        assertEquals(expected.getReadingMinutes(), actual.getReadingMinutes());
+    }
+}
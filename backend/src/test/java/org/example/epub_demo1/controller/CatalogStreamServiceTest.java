@@ -0,0 +1,76 @@
+package org.example.epub_demo1.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogStreamServiceTest {
+
+    private CatalogStreamService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new CatalogStreamService();
+        ReflectionTestUtils.setField(service, "maxConcurrent", 1);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        service.init();
+    }
+
+    @Test
+    void permitIsReleasedWhenRequestCompletes() throws Exception {
+        MockHttpServletRequest request = asyncRequest();
+        assertTrue(service.tryAcquire(request));
+        assertFalse(service.tryAcquire(asyncRequest()));
+
+        WebAsyncManager manager = startAsync(request, Runnable::run);
+        manager.startCallableProcessing(() -> "done");
+        request.getAsyncContext().complete();
+
+        assertTrue(service.tryAcquire(asyncRequest()));
+    }
+
+    @Test
+    void permitIsReleasedWhenBodyNeverRuns() throws Exception {
+        MockHttpServletRequest request = asyncRequest();
+        assertTrue(service.tryAcquire(request));
+
+        WebAsyncManager manager = startAsync(request, task -> {
+            throw new TaskRejectedException("queue full");
+        });
+        Callable<Object> body = () -> {
+            throw new AssertionError("body must not run");
+        };
+        manager.startCallableProcessing(body);
+        request.getAsyncContext().complete();
+
+        assertTrue(service.tryAcquire(asyncRequest()));
+    }
+
+    private static MockHttpServletRequest asyncRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/getall/stream");
+        request.setAsyncSupported(true);
+        return request;
+    }
+
+    private static WebAsyncManager startAsync(MockHttpServletRequest request, AsyncTaskExecutor executor) {
+        WebAsyncManager manager = WebAsyncUtils.getAsyncManager(request);
+        manager.setAsyncWebRequest(new StandardServletAsyncWebRequest(request, new MockHttpServletResponse()));
+        manager.setTaskExecutor(executor);
+        return manager;
+    }
+}
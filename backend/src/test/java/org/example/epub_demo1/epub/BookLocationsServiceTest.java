@@ -0,0 +1,49 @@
+package org.example.epub_demo1.epub;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookLocationsServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private Path epub;
+    private BookLocationsService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        epub = BookLocationsTest.epub(dir, "<html><body><p>正文</p></body></html>");
+        service = new BookLocationsService();
+        ReflectionTestUtils.setField(service, "locationsDir", dir.resolve("locations").toString());
+        ReflectionTestUtils.setField(service, "charsPerAnchor", 1024);
+        ReflectionTestUtils.setField(service, "wordsPerMinute", 300);
+        ReflectionTestUtils.setField(service, "cachedBooks", 8);
+        ReflectionTestUtils.setField(service, "maxEntrySize", EpubArchive.DEFAULT_MAX_ENTRY_SIZE);
+        service.init();
+    }
+
+    @Test
+    void storesLocationsUnderLocationsDir() throws IOException {
+        service.build("legacy-name.epub", epub);
+
+        assertTrue(Files.isRegularFile(dir.resolve("locations").resolve("legacy-name.epub.loc")));
+    }
+
+    @Test
+    void rejectsFileNamesEscapingLocationsDir() {
+        assertThrows(IOException.class, () -> service.build("../escaped.epub", epub));
+        assertThrows(IOException.class, () -> service.get("../../escaped.epub", epub));
+        assertFalse(Files.exists(dir.resolve("escaped.epub.loc")));
+    }
+}
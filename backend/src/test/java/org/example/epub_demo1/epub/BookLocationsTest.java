@@ -0,0 +1,123 @@
+package org.example.epub_demo1.epub;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BookLocationsTest {
+
+    // head 中的文字不计；<br> 为没有斜杠的空元素，<a/> 为自闭合的非空元素；&amp; 在 DOM 中只占一个字符
+    private static final String CHAPTER = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <!DOCTYPE html>
+            <html xmlns="http://www.w3.org/1999/xhtml">
+            <head><title>第一章</title><style>p { margin: 0 }</style></head>
+            <body>
+            <h1>第一章</h1>
+            <p>Hello <b>big</b> world&amp;you<br>again<a id="n1"/>end</p>
+            <p>尾</p>
+            </body>
+            </html>
+            """;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void scanCountsCharsAndWords() {
+        BookLocations.Chapter chapter = BookLocations.scan("c1.xhtml", "c1", CHAPTER, 4);
+
+        // 第一章 3 + Hello 5 + big 3 + world 5 + & 1 + you 3 + again 5 + end 3 + 尾 1
+        assertEquals(29, chapter.getChars());
+        // 中日韩字符每字一词；<br> 是块级元素，again 与 you 分开；<a/> 不是，againend 为一个词
+        assertEquals(9, chapter.getWords());
+        assertEquals(8, chapter.getAnchorCount());
+    }
+
+    @Test
+    void anchorsAreExactCfis() throws IOException {
+        BookLocations locations;
+        try (EpubArchive archive = EpubArchive.open(epub(dir, CHAPTER))) {
+            locations = BookLocations.build(archive, 4);
+        }
+
+        List<String> anchors = new ArrayList<>();
+        for (int i = 0; i < locations.getChapters().get(0).getAnchorCount(); i++) {
+            anchors.add(locations.cfi(0, i));
+        }
+        assertEquals(List.of(
+                // body 为 html 的第二个子元素（/4），h1 为 body 的第一个子元素（/2），其中第一个文本节点（/1）
+                "epubcfi(/6/2[c1]!/4/2/1:0)",
+                // 第 5 个字是 Hello 的 e
+                "epubcfi(/6/2[c1]!/4/4/1:1)",
+                // <b> 内的文本
+                "epubcfi(/6/2[c1]!/4/4/2/1:0)",
+                // <b> 之后的文本节点为 /3：" world&amp;you" 中的 o
+                "epubcfi(/6/2[c1]!/4/4/3:2)",
+                // & 的偏移按解码后计：" world" 之后为 6
+                "epubcfi(/6/2[c1]!/4/4/3:6)",
+                // <br> 占 /4，之后的文本为 /5
+                "epubcfi(/6/2[c1]!/4/4/5:0)",
+                "epubcfi(/6/2[c1]!/4/4/5:4)",
+                // 空元素和自闭合元素没有打乱深度，第二个 p 为 /6
+                "epubcfi(/6/2[c1]!/4/6/1:0)"
+        ), anchors);
+        assertEquals(29, locations.totalChars());
+        assertEquals(9, locations.totalWords());
+    }
+
+    @Test
+    void writeAndReadRoundTrip() throws IOException {
+        BookLocations locations;
+        try (EpubArchive archive = EpubArchive.open(epub(dir, CHAPTER))) {
+            locations = BookLocations.build(archive, 4);
+        }
+        Path file = dir.resolve("book.loc");
+        locations.writeTo(file);
+
+        BookLocations read = BookLocations.read(file);
+        assertEquals(locations.toResponse(), read.toResponse());
+    }
+
+    static Path epub(Path dir, String chapter) throws IOException {
+        Path file = dir.resolve("book.epub");
+        try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+            put(zip, "mimetype", "application/epub+zip");
+            put(zip, "META-INF/container.xml", """
+                    <?xml version="1.0"?>
+                    <container version="1.0" xmlns="urn:oasis:names:tc:opendocument:xmlns:container">
+                      <rootfiles>
+                        <rootfile full-path="OEBPS/content.opf" media-type="application/oebps-package+xml"/>
+                      </rootfiles>
+                    </container>
+                    """);
+            put(zip, "OEBPS/content.opf", """
+                    <?xml version="1.0" encoding="UTF-8"?>
+                    <package xmlns="http://www.idpf.org/2007/opf" version="3.0" unique-identifier="id">
+                      <metadata xmlns:dc="http://purl.org/dc/elements/1.1/"><dc:title>Test</dc:title></metadata>
+                      <manifest><item id="c1" href="c1.xhtml" media-type="application/xhtml+xml"/></manifest>
+                      <spine><itemref idref="c1"/></spine>
+                    </package>
+                    """);
+            put(zip, "OEBPS/c1.xhtml", chapter);
+        }
+        return file;
+    }
+
+    private static void put(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.epub_demo1.epub;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EpubArchiveTest {
+
+    private static final String CHAPTER = "<html xmlns=\"http://www.w3.org/1999/xhtml\"><body><p>"
+            + "x".repeat(10_000) + "</p></body></html>";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void entryLargerThanLimitIsRejected() throws IOException {
+        try (EpubArchive archive = EpubArchive.open(BookLocationsTest.epub(dir, CHAPTER), 4096)) {
+            assertThrows(IOException.class, () -> archive.readEntry("OEBPS/c1.xhtml"));
+        }
+    }
+
+    @Test
+    void understatedEntrySizeIsCaughtWhileReading() throws IOException {
+        Path file = BookLocationsTest.epub(dir, CHAPTER);
+        // 中央目录中声明解压后只有 100 字节
+        understateSize(file, "OEBPS/c1.xhtml", 100);
+
+        try (EpubArchive archive = EpubArchive.open(file, 4096)) {
+            assertEquals(100, archive.getEntry("OEBPS/c1.xhtml").getSize());
+            assertThrows(IOException.class, () -> archive.readEntry("OEBPS/c1.xhtml"));
+        }
+    }
+
+    // 改写中央目录文件头（签名 PK\1\2）中的解压后大小，偏移 24，文件名从偏移 46 开始
+    private static void understateSize(Path file, String name, int size) throws IOException {
+        byte[] zip = Files.readAllBytes(file);
+        ByteBuffer buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] expected = name.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i + 46 < zip.length; i++) {
+            if (buffer.getInt(i) == 0x02014b50 && buffer.getShort(i + 28) == expected.length
+                    && new String(zip, i + 46, expected.length, StandardCharsets.UTF_8).equals(name)) {
+                buffer.putInt(i + 24, size);
+                Files.write(file, zip);
+                return;
+            }
+        }
+        throw new IllegalStateException("找不到条目 " + name);
+    }
+}
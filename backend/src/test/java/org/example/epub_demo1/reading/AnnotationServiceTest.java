@@ -0,0 +1,77 @@
+package org.example.epub_demo1.reading;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.epub_demo1.entity.Annotation;
+import org.example.epub_demo1.mapper.AnnotationMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AnnotationServiceTest {
+
+    private AnnotationMapper mapper;
+    private StringRedisTemplate redis;
+    private AnnotationService service;
+
+    @BeforeEach
+    void setUp() {
+        mapper = mock(AnnotationMapper.class);
+        redis = mock(StringRedisTemplate.class);
+        service = new AnnotationService();
+        ReflectionTestUtils.setField(service, "annotationMapper", mapper);
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "cacheTtlMinutes", 30);
+        ReflectionTestUtils.setField(service, "syncBatchSize", 200);
+    }
+
+    @Test
+    void clientIdOfAnotherBookIsRejected() {
+        when(mapper.lockByClientIds(1, Set.of("a"))).thenReturn(List.of(annotation(20L, "a", 3)));
+
+        assertThrows(IllegalStateException.class,
+                () -> service.sync(1, 10L, List.of(annotation(10L, "a", 1)), List.of()));
+        verify(mapper, never()).upsertAll(anyList());
+        verify(redis, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+
+    @Test
+    void deletionsCarryTimestampAndInvalidateOldChapter() {
+        List<AnnotationService.Deletion> deleted = List.of(new AnnotationService.Deletion("a", 500L));
+        when(mapper.lockByClientIds(1, Set.of("a"))).thenReturn(List.of(annotation(10L, "a", 3)));
+
+        assertEquals(List.of(), service.sync(1, 10L, List.of(), deleted));
+
+        verify(mapper).markDeleted(1, 10L, deleted);
+        // 没有事务时立即失效：TTL 之后为删除前所在的章节
+        verify(redis).execute(any(RedisScript.class), eq(List.of("annotations:1:10")), eq("1800"), eq("c:3"));
+        verify(mapper, never()).selectByClientIds(anyInt(), anyLong(), any());
+    }
+
+    private static Annotation annotation(Long bookId, String clientId, int chapter) {
+        Annotation annotation = new Annotation();
+        annotation.setUserId(1);
+        annotation.setBookId(bookId);
+        annotation.setClientId(clientId);
+        annotation.setChapterIdx(chapter);
+        annotation.setUpdatedAt(100L);
+        return annotation;
+    }
+}
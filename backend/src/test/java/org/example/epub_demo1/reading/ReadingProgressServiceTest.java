@@ -0,0 +1,186 @@
+package org.example.epub_demo1.reading;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.epub_demo1.entity.ReadingProgress;
+import org.example.epub_demo1.mapper.ReadingProgressMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReadingProgressServiceTest {
+
+    private ReadingProgressMapper mapper;
+    private ReadingProgressService service;
+    // 每次 upsertAll 收到的行（复制一份，调用方传入的是 subList）
+    private final List<List<ReadingProgress>> written = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // Redis 不可用：所有写入都进入本节点缓冲区
+        StringRedisTemplate redis = mock(StringRedisTemplate.class, invocation -> {
+            throw new RedisConnectionFailureException("down");
+        });
+        mapper = mock(ReadingProgressMapper.class);
+        doAnswer(invocation -> {
+            written.add(new ArrayList<>(invocation.<List<ReadingProgress>>getArgument(0)));
+            return written.get(written.size() - 1).size();
+        }).when(mapper).upsertAll(anyList());
+
+        service = new ReadingProgressService();
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(service, "readingProgressMapper", mapper);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "batchSize", 500);
+        ReflectionTestUtils.setField(service, "bufferSize", 2);
+        ReflectionTestUtils.setField(service, "ttlDays", 30);
+        ReflectionTestUtils.setField(service, "processingTimeoutSeconds", 60);
+        service.init();
+    }
+
+    @Test
+    void bufferKeepsNewestUpdatePerBook() {
+        service.save(progress(1, 10L, "/4/2:0", 200));
+        // 离线补传的旧位置不覆盖较新的位置
+        service.save(progress(1, 10L, "/4/2:5", 100));
+
+        assertEquals(200L, service.get(1, 10L).getUpdatedAt());
+        assertEquals(1, service.flush(1));
+        assertEquals(1, written.size());
+        assertEquals("/4/2:0", written.get(0).get(0).getCfi());
+    }
+
+    @Test
+    void getReturnsNewerOfBufferAndDatabase() {
+        service.save(progress(1, 10L, "/4/2:0", 100));
+        when(mapper.selectOne(1, 10L)).thenReturn(progress(1, 10L, "/4/8:0", 300));
+        assertEquals("/4/8:0", service.get(1, 10L).getCfi());
+
+        when(mapper.selectOne(1, 10L)).thenReturn(progress(1, 10L, "/4/6:0", 50));
+        assertEquals("/4/2:0", service.get(1, 10L).getCfi());
+    }
+
+    @Test
+    void failedWriteReturnsRowsToBufferWithoutOverwritingNewerOnes() {
+        service.save(progress(1, 10L, "/4/2:0", 200));
+        doAnswer(invocation -> {
+            throw new IllegalStateException("db down");
+        }).when(mapper).upsertAll(anyList());
+        assertEquals(0, service.flush(1));
+
+        // 放回缓冲区后到达的旧位置不覆盖，新位置覆盖
+        service.save(progress(1, 10L, "/4/2:1", 150));
+        assertEquals(200L, service.get(1, 10L).getUpdatedAt());
+        service.save(progress(1, 10L, "/4/2:9", 250));
+        assertEquals("/4/2:9", service.get(1, 10L).getCfi());
+    }
+
+    @Test
+    void flushWritesRowsInPrimaryKeyOrder() {
+        service.save(progress(2, 1L, "/4/2:0", 100));
+        service.save(progress(1, 7L, "/4/2:0", 100));
+
+        assertEquals(2, service.flush(1));
+        List<ReadingProgress> rows = written.get(0);
+        assertEquals(List.of(1, 2), rows.stream().map(ReadingProgress::getUserId).toList());
+    }
+
+    @Test
+    void fullBufferRejectsNewBooksButAcceptsUpdates() {
+        service.save(progress(1, 1L, "/4/2:0", 100));
+        service.save(progress(1, 2L, "/4/2:0", 100));
+
+        assertThrows(IllegalStateException.class, () -> service.save(progress(1, 3L, "/4/2:0", 100)));
+        service.save(progress(1, 2L, "/4/4:0", 200));
+        assertEquals("/4/4:0", service.get(1, 2L).getCfi());
+    }
+
+    @Test
+    void bufferedRowsReplaceStaleRedisPositionAfterWrite() {
+        service.save(progress(1, 10L, "/4/2:0", 200));
+        // Redis 恢复后仍有故障前的旧位置
+        Map<String, String> stale = new HashMap<>(Map.of("cfi", "/4/2:0", "updatedAt", "100"));
+        StringRedisTemplate redis = mock(StringRedisTemplate.class, RETURNS_DEEP_STUBS);
+        when(redis.<String, String>opsForHash().entries("progress:1:10")).thenReturn(stale);
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenAnswer(invocation -> {
+            if (invocation.<RedisScript<?>>getArgument(0).getScriptAsString().contains("'cfi'")) {
+                stale.put("cfi", invocation.getArgument(3));
+                stale.put("updatedAt", invocation.getArgument(2));
+                return 1L;
+            }
+            return invocation.<RedisScript<?>>getArgument(0).getResultType() == List.class ? List.of() : 0L;
+        });
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", redis);
+
+        assertEquals(1, service.flush(1));
+        assertEquals(200L, service.get(1, 10L).getUpdatedAt());
+    }
+
+    @Test
+    void bufferedRowsStayBufferedWhileRedisIsDown() {
+        service.save(progress(1, 10L, "/4/2:0", 200));
+
+        assertEquals(1, service.flush(1));
+        // Redis 中的位置没能更新，仍由缓冲区提供，下次再写一次
+        assertEquals(200L, service.get(1, 10L).getUpdatedAt());
+        assertEquals(1, service.flush(1));
+        assertEquals(2, written.size());
+    }
+
+    @Test
+    void claimedKeysAreRemovedFromProcessingOnlyAfterTheWrite() {
+        List<String> calls = new ArrayList<>();
+        StringRedisTemplate redis = mock(StringRedisTemplate.class, invocation -> {
+            if (invocation.getMethod().getName().equals("executePipelined")) {
+                calls.add("load");
+                return List.of(Map.of("cfi", "/4/2:0", "updatedAt", "100"));
+            }
+            if (!invocation.getMethod().getName().equals("execute")
+                    || !(invocation.getArgument(0) instanceof RedisScript<?> script)) {
+                throw new RedisConnectionFailureException("unexpected " + invocation.getMethod().getName());
+            }
+            String lua = script.getScriptAsString();
+            if (lua.contains("SPOP")) {
+                calls.add("claim");
+                return calls.contains("write") ? List.of() : List.of("1:10");
+            }
+            calls.add(lua.contains("ZRANGEBYSCORE") ? "recover" : "ack");
+            return 1L;
+        });
+        doAnswer(invocation -> {
+            calls.add("write");
+            return 1;
+        }).when(mapper).upsertAll(anyList());
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(service, "batchSize", 1);
+
+        assertEquals(1, service.flush(5));
+        // 崩溃恢复在取出之前；删除处理中记录在写库之后
+        assertEquals(List.of("recover", "claim", "load", "write", "ack", "claim"), calls);
+    }
+
+    private static ReadingProgress progress(int userId, long bookId, String cfi, long updatedAt) {
+        ReadingProgress progress = new ReadingProgress();
+        progress.setUserId(userId);
+        progress.setBookId(bookId);
+        progress.setCfi(cfi);
+        progress.setUpdatedAt(updatedAt);
+        return progress;
+    }
+}
@@ -0,0 +1,94 @@
+package org.example.epub_demo1.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookSearchIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void ranksHigherTermFrequencyFirst() {
+        BookSearchIndex index = BookSearchIndex.build(
+                List.of("a.xhtml", "b.xhtml", "c.xhtml"),
+                List.of("apple banana cherry date",
+                        "apple apple apple banana",
+                        "cherry date elder fig"));
+        List<BookSearchIndex.ChapterHit> hits = index.search(List.of(List.of("apple")), 10);
+        assertEquals(List.of(1, 0), chapters(hits));
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+    }
+
+    @Test
+    void ranksShorterChapterFirstForSameFrequency() {
+        BookSearchIndex index = BookSearchIndex.build(
+                List.of("long.xhtml", "short.xhtml", "other.xhtml"),
+                List.of("whale " + "filler ".repeat(50),
+                        "whale sea",
+                        "nothing here"));
+        assertEquals(List.of(1, 0), chapters(index.search(List.of(List.of("whale")), 10)));
+    }
+
+    @Test
+    void requiresEveryGroupAndHonoursLimit() {
+        BookSearchIndex index = BookSearchIndex.build(
+                List.of("a", "b", "c"),
+                List.of("red green", "red blue", "red green blue"));
+        assertEquals(List.of(2), chapters(index.search(List.of(List.of("green"), List.of("blue")), 10)));
+        assertEquals(List.of(1, 2), sorted(chapters(index.search(List.of(List.of("blue", "missing")), 10))));
+        assertEquals(1, index.search(List.of(List.of("red")), 1).size());
+        assertTrue(index.search(List.of(List.of("purple")), 10).isEmpty());
+    }
+
+    @Test
+    void findsSingleCharacterAtEndOfRun() {
+        BookSearchIndex index = BookSearchIndex.build(List.of("a", "b"), List.of("黑暗森林", "大海"));
+        List<BookSearchIndex.ChapterHit> hits = index.search(List.of(List.of("林")), 10);
+        assertEquals(List.of(0), chapters(hits));
+        assertEquals(3, hits.get(0).getOffset());
+    }
+
+    @Test
+    void readsPostingsFromFileAndSnippetsFromDisk() throws IOException {
+        String first = "开头".repeat(30) + "黑暗森林法则" + "结尾".repeat(60);
+        String second = "第二章\n没有匹配";
+        BookSearchIndex built = BookSearchIndex.build(List.of("c1.xhtml", "c2.xhtml"), List.of(first, second));
+        Path file = dir.resolve("book.idx");
+        built.writeTo(file);
+
+        Map<String, Integer> dictionary = BookSearchIndex.readDictionary(file);
+        assertEquals(built.termFrequencies(), dictionary);
+
+        BookSearchIndex read = BookSearchIndex.read(file);
+        assertEquals(2, read.getChapterCount());
+        List<List<String>> query = List.of(List.of("森林"));
+        BookSearchIndex.ChapterHit expected = built.search(query, 10).get(0);
+        BookSearchIndex.ChapterHit actual = read.search(query, 10).get(0);
+        assertEquals("c1.xhtml", actual.getHref());
+        assertEquals(62, actual.getOffset());
+        assertEquals(expected.getScore(), actual.getScore(), 1e-9);
+        assertEquals(expected.getSnippet(), actual.getSnippet());
+        assertEquals("..." + first.substring(22, 142) + "...", actual.getSnippet());
+
+        // 第二章的摘要在正文段中的偏移依赖第一章的长度
+        BookSearchIndex.ChapterHit secondHit = read.search(List.of(List.of("匹配")), 10).get(0);
+        assertEquals("第二章 没有匹配", secondHit.getSnippet());
+    }
+
+    private static List<Integer> chapters(List<BookSearchIndex.ChapterHit> hits) {
+        return hits.stream().map(BookSearchIndex.ChapterHit::getChapterIndex).toList();
+    }
+
+    private static List<Integer> sorted(List<Integer> values) {
+        return values.stream().sorted().toList();
+    }
+}
@@ -0,0 +1,99 @@
+package org.example.epub_demo1.search;
+
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.entity.enums.BookCategory;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CatalogSearchIndexTest {
+
+    private CatalogSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        BookMapper bookMapper = mock(BookMapper.class);
+        when(bookMapper.selectSearchFields()).thenReturn(List.of(
+                book(1L, "三体", "刘慈欣", BookCategory.FICTION),
+                book(2L, "三体Ⅱ：黑暗森林", "刘慈欣", BookCategory.FICTION),
+                book(3L, "Effective Java", "Joshua Bloch", BookCategory.TECHNOLOGY),
+                book(4L, "明朝那些事儿", "当年明月", BookCategory.HISTORY)));
+        index = new CatalogSearchIndex();
+        ReflectionTestUtils.setField(index, "bookMapper", bookMapper);
+    }
+
+    @Test
+    void normalizesWidthCaseWhitespaceAndPunctuation() {
+        assertEquals("helloworld", CatalogSearchIndex.normalize("  Ｈｅｌｌｏ，World！ "));
+        assertEquals("三体ii黑暗森林", CatalogSearchIndex.normalize("三体Ⅱ：黑暗森林"));
+        assertEquals("", CatalogSearchIndex.normalize("!!! ，。"));
+        assertEquals("", CatalogSearchIndex.normalize(null));
+    }
+
+    @Test
+    void buildsFullPinyinAndInitials() {
+        assertArrayEquals(new String[]{"santi", "st"}, CatalogSearchIndex.pinyin("三体"));
+        assertArrayEquals(new String[]{"liucixin", "lcx"}, CatalogSearchIndex.pinyin("刘慈欣"));
+        // 非汉字原样保留
+        assertArrayEquals(new String[]{"santiii", "stii"}, CatalogSearchIndex.pinyin("三体ii"));
+    }
+
+    @Test
+    void intersectsBigramPostings() {
+        Map<String, Set<Long>> postings = Map.of(
+                "ab", Set.of(1L, 2L),
+                "bc", Set.of(2L, 3L),
+                "a", Set.of(1L, 2L, 4L));
+        assertEquals(Set.of(2L), CatalogSearchIndex.candidates(postings, "abc"));
+        assertEquals(Set.of(1L, 2L, 4L), CatalogSearchIndex.candidates(postings, "a"));
+        // 任一二元组没有倒排表时没有候选
+        assertEquals(Set.of(), CatalogSearchIndex.candidates(postings, "abd"));
+    }
+
+    @Test
+    void matchesSubstringsPinyinAndInitials() {
+        assertEquals(List.of(1L, 2L), index.search("三体", null, null));
+        assertEquals(List.of(2L), index.search("黑暗森林", null, null));
+        assertEquals(List.of(1L, 2L), index.search("SanTi", null, null));
+        assertEquals(List.of(2L), index.search("stiihasl", null, null));
+        assertEquals(List.of(4L), index.search("mcnxs", null, null));
+        assertEquals(List.of(1L, 2L), index.search(null, "lcx", null));
+        assertEquals(List.of(3L), index.search("effective  JAVA", null, null));
+        assertEquals(List.of(), index.search("森林三体", null, null));
+    }
+
+    @Test
+    void combinesTitleAuthorAndCategory() {
+        assertEquals(List.of(2L), index.search("森林", "刘慈欣", null));
+        assertEquals(List.of(), index.search("三体", "bloch", null));
+        assertEquals(List.of(1L, 2L), index.search(null, null, "FICTION"));
+        assertEquals(List.of(3L), index.search("java", null, "TECHNOLOGY"));
+        assertEquals(List.of(), index.search("java", null, "HISTORY"));
+    }
+
+    @Test
+    void punctuationOnlyQueryMatchesNothing() {
+        assertEquals(List.of(), index.search("!!!", null, null));
+        assertEquals(List.of(), index.search(null, "  ，", null));
+        assertEquals(List.of(), index.search("？", null, "FICTION"));
+    }
+
+    private static Book book(Long id, String title, String author, BookCategory category) {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle(title);
+        book.setAuthor(author);
+        book.setCategory(category);
+        return book;
+    }
+}
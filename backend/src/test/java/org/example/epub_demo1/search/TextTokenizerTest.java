@@ -0,0 +1,54 @@
+package org.example.epub_demo1.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TextTokenizerTest {
+
+    @Test
+    void splitsLatinWordsAndLowercases() {
+        assertEquals(List.of("hello", "world", "42"), terms(TextTokenizer.tokenize("Hello, WORLD! 42")));
+        assertEquals(List.of(0, 7, 14), offsets(TextTokenizer.tokenize("Hello, WORLD! 42")));
+    }
+
+    @Test
+    void splitsCjkRunsIntoBigramsForQueries() {
+        assertEquals(List.of("黑暗", "暗森", "森林"), terms(TextTokenizer.tokenize("黑暗森林")));
+        assertEquals(List.of("林"), terms(TextTokenizer.tokenize("林")));
+    }
+
+    @Test
+    void indexesEveryCjkCharacterAsUnigram() {
+        List<TextTokenizer.Token> tokens = TextTokenizer.tokenizeForIndex("黑暗森林");
+        assertEquals(List.of("黑", "黑暗", "暗", "暗森", "森", "森林", "林"), terms(tokens));
+        // 最后一个字只出现在前一个二元词的末尾，必须单独输出
+        assertEquals(List.of(0, 0, 1, 1, 2, 2, 3), offsets(tokens));
+        assertEquals(List.of("林"), terms(TextTokenizer.tokenizeForIndex("林")));
+    }
+
+    @Test
+    void separatesMixedScriptsAndSkipsOverlongWords() {
+        assertEquals(List.of("三体", "epub", "阅读", "读器"), terms(TextTokenizer.tokenize("三体EPUB阅读器")));
+        String base64 = "A".repeat(65);
+        assertEquals(List.of("ok"), terms(TextTokenizer.tokenize(base64 + " ok")));
+    }
+
+    @Test
+    void keepsSupplementaryCharactersWhole() {
+        // 扩展 B 区汉字占两个 char
+        List<TextTokenizer.Token> tokens = TextTokenizer.tokenizeForIndex("𠀀字");
+        assertEquals(List.of("𠀀", "𠀀字", "字"), terms(tokens));
+        assertEquals(List.of(0, 0, 2), offsets(tokens));
+    }
+
+    private static List<String> terms(List<TextTokenizer.Token> tokens) {
+        return tokens.stream().map(TextTokenizer.Token::getTerm).toList();
+    }
+
+    private static List<Integer> offsets(List<TextTokenizer.Token> tokens) {
+        return tokens.stream().map(TextTokenizer.Token::getOffset).toList();
+    }
+}
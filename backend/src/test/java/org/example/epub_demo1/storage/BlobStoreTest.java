@@ -0,0 +1,93 @@
+package org.example.epub_demo1.storage;
+
+import org.example.epub_demo1.epub.BookLocationsService;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.example.epub_demo1.search.SearchIndexService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class BlobStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private SearchIndexService searchIndexService;
+    private BookLocationsService bookLocationsService;
+    private BlobStore store;
+
+    @BeforeEach
+    void setUp() {
+        searchIndexService = mock(SearchIndexService.class);
+        bookLocationsService = mock(BookLocationsService.class);
+        store = new BlobStore();
+        ReflectionTestUtils.setField(store, "uploadDir", dir.resolve("uploads").toString());
+        ReflectionTestUtils.setField(store, "coverDir", dir.resolve("covers").toString());
+        ReflectionTestUtils.setField(store, "gcGraceMinutes", 30L);
+        ReflectionTestUtils.setField(store, "bookMapper", mock(BookMapper.class));
+        ReflectionTestUtils.setField(store, "staticFileService", mock(StaticFileService.class));
+        ReflectionTestUtils.setField(store, "coverThumbnailService", mock(CoverThumbnailService.class));
+        ReflectionTestUtils.setField(store, "bookLocationsService", bookLocationsService);
+        ReflectionTestUtils.setField(store, "searchIndexService", searchIndexService);
+        store.init();
+    }
+
+    @Test
+    void releaseWithinGracePeriodKeepsFileAndIndex() throws IOException {
+        String name = store.storeEpub(epub("book")).name();
+
+        assertFalse(store.releaseEpub(name));
+
+        assertTrue(Files.isRegularFile(store.epubPath(name)));
+        verify(searchIndexService, never()).removeBook(anyString());
+        verify(bookLocationsService, never()).remove(anyString());
+    }
+
+    @Test
+    void releaseAfterGracePeriodDeletesFileAndDerivedData() throws IOException {
+        String name = store.storeEpub(epub("book")).name();
+        ReflectionTestUtils.setField(store, "gcGraceMinutes", 0L);
+
+        assertTrue(store.releaseEpub(name));
+
+        assertFalse(Files.exists(store.epubPath(name)));
+        verify(searchIndexService).removeBook(name);
+        verify(bookLocationsService).remove(name);
+    }
+
+    @Test
+    void duplicateUploadKeepsMtimeButRestartsGracePeriod() throws IOException {
+        String name = store.storeEpub(epub("book")).name();
+        Path file = store.epubPath(name);
+        // 文件早已写入，宽限期已过
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2));
+        Files.setLastModifiedTime(file, old);
+
+        assertFalse(store.storeEpub(epub("book")).created());
+
+        assertEquals(old, Files.getLastModifiedTime(file));
+        assertFalse(store.releaseEpub(name));
+        assertTrue(Files.isRegularFile(file));
+    }
+
+    private static ByteArrayInputStream epub(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.epub_demo1.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CoverThumbnailServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private CoverThumbnailService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new CoverThumbnailService();
+        ReflectionTestUtils.setField(service, "maxPixels", 24_000_000L);
+    }
+
+    @Test
+    void oversizedImageIsNotDecoded() throws IOException {
+        // 只有几十字节的 PNG，文件头声明 50000x50000
+        Path file = dir.resolve("huge.png");
+        Files.write(file, withDimensions(png(2, 2), 50_000, 50_000));
+
+        assertNull(service.decode(file, 480));
+    }
+
+    @Test
+    void largeImageIsSubsampled() throws IOException {
+        Path file = dir.resolve("cover.png");
+        Files.write(file, png(2000, 3000));
+
+        BufferedImage image = service.decode(file, 480);
+
+        // 每 4 个像素取 1 个：宽 500 不小于最大缩略图宽度
+        assertEquals(500, image.getWidth());
+        assertEquals(750, image.getHeight());
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+    // 改写 IHDR 中的宽高并重算 CRC：签名 8 字节，之后为长度(4)、类型(4)、宽(4)、高(4)
+    private static byte[] withDimensions(byte[] png, int width, int height) {
+        ByteBuffer buffer = ByteBuffer.wrap(png);
+        buffer.putInt(16, width);
+        buffer.putInt(20, height);
+        CRC32 crc = new CRC32();
+        crc.update(png, 12, 17);
+        buffer.putInt(29, (int) crc.getValue());
+        return png;
+    }
+}
@@ -0,0 +1,189 @@
+package org.example.epub_demo1.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StaticFileServiceTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path dir;
+
+    private Path root;
+    private StaticFileService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        root = Files.createDirectories(dir.resolve("uploads"));
+        Files.write(root.resolve("book.epub"), CONTENT);
+        Files.writeString(dir.resolve("secret.txt"), "secret");
+        service = new StaticFileService();
+        ReflectionTestUtils.setField(service, "statCacheSeconds", 300L);
+        ReflectionTestUtils.setField(service, "statCacheSize", 100);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+    }
+
+    @Test
+    void servesWholeFileWithValidators() throws IOException {
+        MockHttpServletResponse response = serve("book.epub", request());
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(CONTENT, response.getContentAsByteArray());
+        assertEquals("application/epub+zip", response.getContentType());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(10, response.getContentLengthLong());
+    }
+
+    @Test
+    void servesSingleRange() throws IOException {
+        MockHttpServletResponse response = serve("book.epub", request("bytes=2-5"));
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("2345", response.getContentAsString());
+
+        // 结束位置超出文件时截断到末尾
+        response = serve("book.epub", request("bytes=7-100"));
+        assertEquals("bytes 7-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("789", response.getContentAsString());
+
+        response = serve("book.epub", request("bytes=8-"));
+        assertEquals("bytes 8-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("89", response.getContentAsString());
+    }
+
+    @Test
+    void servesSuffixRange() throws IOException {
+        MockHttpServletResponse response = serve("book.epub", request("bytes=-3"));
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 7-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("789", response.getContentAsString());
+
+        // 后缀长度超过文件大小时返回整个文件
+        response = serve("book.epub", request("bytes=-50"));
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 0-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void rejectsUnsatisfiableRanges() throws IOException {
+        for (String range : new String[]{"bytes=10-", "bytes=5-2", "bytes=-0"}) {
+            MockHttpServletResponse response = serve("book.epub", request(range));
+            assertEquals(416, response.getStatus(), range);
+            assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE), range);
+        }
+    }
+
+    @Test
+    void ignoresUnsupportedRanges() throws IOException {
+        for (String range : new String[]{"bytes=0-1,4-5", "items=0-1", "bytes=a-b", "bytes=3"}) {
+            MockHttpServletResponse response = serve("book.epub", request(range));
+            assertEquals(200, response.getStatus(), range);
+            assertArrayEquals(CONTENT, response.getContentAsByteArray(), range);
+        }
+    }
+
+    @Test
+    void honoursIfRange() throws IOException {
+        String etag = serve("book.epub", request()).getHeader(HttpHeaders.ETAG);
+
+        MockHttpServletRequest matching = request("bytes=0-1");
+        matching.addHeader(HttpHeaders.IF_RANGE, etag);
+        MockHttpServletResponse response = serve("book.epub", matching);
+        assertEquals(206, response.getStatus());
+        assertEquals("01", response.getContentAsString());
+
+        // ETag 不匹配（文件已变化）时忽略 Range，返回完整内容
+        MockHttpServletRequest stale = request("bytes=0-1");
+        stale.addHeader(HttpHeaders.IF_RANGE, "\"stale\"");
+        response = serve("book.epub", stale);
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(CONTENT, response.getContentAsByteArray());
+    }
+
+    @Test
+    void returnsNotModifiedForMatchingEtag() throws IOException {
+        String etag = serve("book.epub", request()).getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", " + etag);
+        MockHttpServletResponse response = serve("book.epub", request);
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void rejectsPathsOutsideRoot() throws IOException {
+        for (String path : new String[]{"../secret.txt", "a/../../secret.txt", dir.resolve("secret.txt").toString(),
+                "", ".", "missing.epub"}) {
+            MockHttpServletResponse response = serve(path, request());
+            assertEquals(404, response.getStatus(), path);
+            assertEquals(0, response.getContentAsByteArray().length, path);
+        }
+    }
+
+    @Test
+    void blobEtagIsContentHash() throws IOException {
+        String hash = "ab".repeat(32);
+        String name = "ab/ab/" + hash + ".epub";
+        Path blob = Files.createDirectories(root.resolve("ab/ab")).resolve(hash + ".epub");
+        Files.write(blob, CONTENT);
+        assertEquals("\"" + hash + "\"", serve(name, request()).getHeader(HttpHeaders.ETAG));
+
+        // 修改时间变化后 ETag 不变
+        Files.setLastModifiedTime(blob, FileTime.fromMillis(0));
+        service.invalidate(blob);
+        assertEquals("\"" + hash + "\"", serve(name, request()).getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void hidesInternalFiles() throws IOException {
+        Files.write(Files.createDirectories(root.resolve(".pending")).resolve("marker.epub"), CONTENT);
+        Files.write(root.resolve(".blob-1.tmp"), CONTENT);
+        for (String path : new String[]{".pending/marker.epub", ".blob-1.tmp"}) {
+            assertEquals(404, serve(path, request()).getStatus(), path);
+        }
+    }
+
+    @Test
+    void headRequestSendsNoBody() throws IOException {
+        MockHttpServletRequest request = request("bytes=0-3");
+        request.setMethod("HEAD");
+        MockHttpServletResponse response = serve("book.epub", request);
+        assertEquals(206, response.getStatus());
+        assertEquals(4, response.getContentLengthLong());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    private MockHttpServletResponse serve(String path, MockHttpServletRequest request) throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        service.serve(root, path, "epub", CacheControl.noCache(), request, response);
+        return response;
+    }
+
+    private static MockHttpServletRequest request() {
+        return new MockHttpServletRequest("GET", "/uploads/book.epub");
+    }
+
+    private static MockHttpServletRequest request(String range) {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.RANGE, range);
+        return request;
+    }
+}
@@ -0,0 +1,131 @@
+package org.example.epub_demo1.sync;
+
+import org.example.epub_demo1.entity.Book;
+import org.example.epub_demo1.entity.BookChange;
+import org.example.epub_demo1.mapper.BookChangeMapper;
+import org.example.epub_demo1.mapper.BookMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BookChangeLogTest {
+
+    private BookChangeMapper changeMapper;
+    private BookMapper bookMapper;
+    private BookChangeLog changeLog;
+
+    @BeforeEach
+    void setUp() {
+        changeMapper = mock(BookChangeMapper.class);
+        bookMapper = mock(BookMapper.class);
+        when(bookMapper.getAll(null, null, null)).thenReturn(List.of(book(1L), book(2L)));
+        changeLog = new BookChangeLog();
+        ReflectionTestUtils.setField(changeLog, "bookChangeMapper", changeMapper);
+        ReflectionTestUtils.setField(changeLog, "bookMapper", bookMapper);
+        ReflectionTestUtils.setField(changeLog, "pageSize", 1000);
+    }
+
+    @Test
+    void gapAfterCompactionReturnsFullCatalog() {
+        when(changeMapper.currentVersion()).thenReturn(10L);
+        // 版本 4、5 已被清理，日志从 6 开始
+        when(changeMapper.selectSince(3, 10, 1000)).thenReturn(List.of(
+                change(6, 1L, BookChange.Op.UPSERT), change(10, 2L, BookChange.Op.UPSERT)));
+        when(changeMapper.minVersion()).thenReturn(6L);
+
+        Map<String, Object> result = changeLog.changesSince(3);
+
+        assertEquals(10L, result.get("version"));
+        assertEquals(true, result.get("full"));
+        assertEquals(List.of(1L, 2L), ids(result));
+        assertEquals(List.of(), result.get("deleted"));
+    }
+
+    @Test
+    void sinceAheadOfCurrentReturnsFullCatalog() {
+        // 客户端的版本号来自另一套数据库（重建、恢复备份）
+        when(changeMapper.currentVersion()).thenReturn(10L);
+
+        Map<String, Object> result = changeLog.changesSince(42);
+
+        assertEquals(10L, result.get("version"));
+        assertEquals(true, result.get("full"));
+        assertEquals(false, result.get("hasMore"));
+        assertEquals(List.of(1L, 2L), ids(result));
+        verify(changeMapper, never()).selectSince(anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    void upsertThenDeleteCollapsesToTombstone() {
+        when(changeMapper.currentVersion()).thenReturn(7L);
+        when(changeMapper.selectSince(4, 7, 1000)).thenReturn(List.of(
+                change(5, 7L, BookChange.Op.UPSERT),
+                change(6, 8L, BookChange.Op.UPSERT),
+                change(7, 7L, BookChange.Op.DELETE)));
+        when(changeMapper.minVersion()).thenReturn(1L);
+        when(bookMapper.selectByIds(List.of(8L))).thenReturn(List.of(book(8L)));
+
+        Map<String, Object> result = changeLog.changesSince(4);
+
+        assertEquals(7L, result.get("version"));
+        assertEquals(false, result.get("full"));
+        assertEquals(false, result.get("hasMore"));
+        assertEquals(List.of(8L), ids(result));
+        assertEquals(List.of(7L), result.get("deleted"));
+    }
+
+    @Test
+    void upsertOfRowDeletedBeforeQueryIsReportedAsDeleted() {
+        // 版本 6 的 DELETE 还不在本页（page-size 为 1），但书已不在 books 表中
+        ReflectionTestUtils.setField(changeLog, "pageSize", 1);
+        when(changeMapper.currentVersion()).thenReturn(6L);
+        when(changeMapper.selectSince(4, 6, 1)).thenReturn(List.of(change(5, 7L, BookChange.Op.UPSERT)));
+        when(changeMapper.minVersion()).thenReturn(1L);
+        when(bookMapper.selectByIds(List.of(7L))).thenReturn(List.of());
+
+        Map<String, Object> result = changeLog.changesSince(4);
+
+        assertEquals(5L, result.get("version"));
+        assertEquals(true, result.get("hasMore"));
+        assertEquals(List.of(), ids(result));
+        assertEquals(List.of(7L), result.get("deleted"));
+    }
+
+    @Test
+    void upToDateClientGetsEmptyResult() {
+        when(changeMapper.currentVersion()).thenReturn(10L);
+
+        Map<String, Object> result = changeLog.changesSince(10);
+
+        assertEquals(10L, result.get("version"));
+        assertEquals(false, result.get("full"));
+        assertEquals(List.of(), result.get("books"));
+        verify(bookMapper, never()).getAll(null, null, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Long> ids(Map<String, Object> result) {
+        return ((List<Book>) result.get("books")).stream().map(Book::getId).toList();
+    }
+
+    private static BookChange change(long version, Long bookId, BookChange.Op op) {
+        return new BookChange(version, bookId, op, null);
+    }
+
+    private static Book book(Long id) {
+        Book book = new Book();
+        book.setId(id);
+        return book;
+    }
+}